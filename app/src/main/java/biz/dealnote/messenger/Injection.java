@@ -18,7 +18,9 @@ import biz.dealnote.messenger.domain.impl.BlacklistRepository;
 import biz.dealnote.messenger.media.gif.AppGifPlayerFactory;
 import biz.dealnote.messenger.media.gif.IGifPlayerFactory;
 import biz.dealnote.messenger.media.voice.IVoicePlayerFactory;
+import biz.dealnote.messenger.media.voice.IVoicePrefetcher;
 import biz.dealnote.messenger.media.voice.VoicePlayerFactory;
+import biz.dealnote.messenger.media.voice.VoicePrefetcher;
 import biz.dealnote.messenger.push.IDevideIdProvider;
 import biz.dealnote.messenger.push.IPushRegistrationResolver;
 import biz.dealnote.messenger.push.PushRegistrationResolver;
@@ -55,7 +57,21 @@ public class Injection {
     private static volatile IPushRegistrationResolver resolver;
 
     public static IVoicePlayerFactory provideVoicePlayerFactory(){
-        return new VoicePlayerFactory(provideApplicationContext(), provideProxySettings(), provideSettings().other());
+        return new VoicePlayerFactory(provideApplicationContext(), provideProxySettings(), provideSettings().other(), provideSettings().main());
+    }
+
+    private static volatile IVoicePrefetcher voicePrefetcher;
+
+    public static IVoicePrefetcher provideVoicePrefetcher(){
+        if(isNull(voicePrefetcher)){
+            synchronized (Injection.class){
+                if(isNull(voicePrefetcher)){
+                    voicePrefetcher = new VoicePrefetcher(provideApplicationContext(), provideProxySettings(), provideSettings().main());
+                }
+            }
+        }
+
+        return voicePrefetcher;
     }
 
     public static IPushRegistrationResolver providePushRegistrationResolver(){
@@ -65,6 +65,7 @@ import biz.dealnote.messenger.util.Utils;
 import biz.dealnote.messenger.util.ViewUtils;
 import biz.dealnote.messenger.view.WaveFormView;
 import biz.dealnote.messenger.view.emoji.EmojiconTextView;
+import biz.dealnote.messenger.view.emoji.PreparedTextCache;
 import io.reactivex.disposables.CompositeDisposable;
 
 import static biz.dealnote.messenger.util.Objects.isNull;
@@ -340,12 +341,13 @@ public class AttachmentsViewBinder {
 
                 holder.bodyView.setVisibility(isEmpty(copy.getText()) ? View.GONE : View.VISIBLE);
                 holder.bodyView.setOnHashTagClickListener(mOnHashTagClickListener);
-                holder.bodyView.setText(OwnerLinkSpanFactory.withSpans(text, true, false, new LinkActionAdapter() {
+                OwnerLinkSpanFactory.setActionListener(holder.bodyView, new LinkActionAdapter() {
                     @Override
                     public void onOwnerClick(int ownerId) {
                         mAttachmentsActionCallback.onOpenOwner(ownerId);
                     }
-                }));
+                });
+                holder.bodyView.setText(PreparedTextCache.obtainPostText(mContext, copy, text));
 
                 holder.ivAvatar.setOnClickListener(v -> mAttachmentsActionCallback.onOpenOwner(copy.getAuthorId()));
                 ViewUtils.displayAvatar(holder.ivAvatar, mAvatarTransformation, copy.getAuthorPhoto(), Constants.PICASSO_TAG);
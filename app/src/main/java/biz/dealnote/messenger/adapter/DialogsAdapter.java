@@ -14,6 +14,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.squareup.picasso.Transformation;
@@ -88,7 +89,6 @@ public class DialogsAdapter extends RecyclerView.Adapter<DialogsAdapter.DialogVi
     @Override
     public void onBindViewHolder(DialogViewHolder holder, int position) {
         final Dialog dialog = mDialogs.get(position);
-        Dialog previous = position == 0 ? null : mDialogs.get(position - 1);
 
         holder.mDialogTitle.setText(dialog.getDisplayTitle(mContext));
 
@@ -160,6 +160,60 @@ public class DialogsAdapter extends RecyclerView.Adapter<DialogsAdapter.DialogVi
         holder.tvUnreadCount.setText(AppTextUtils.getCounterWithK(dialog.getUnreadCount()));
         holder.tvUnreadCount.setVisibility(counterVisible ? View.VISIBLE : View.INVISIBLE);
 
+        long lastMessageJavaTime = dialog.getLastMessageDate() * 1000;
+        bindHeader(holder, position);
+
+        DATE.setTime(lastMessageJavaTime);
+        holder.tvDate.setText(lastMessageJavaTime >= mStartOfToday ? DF_TODAY.format(DATE) : DF_OLD.format(DATE));
+
+        ViewUtils.displayAvatar(holder.ivAvatar, mTransformation, dialog.getImageUrl(), PICASSO_TAG);
+
+        holder.mContentRoot.setOnClickListener(v -> {
+            if (mClickListener != null) {
+                mClickListener.onDialogClick(dialog);
+            }
+        });
+
+        holder.mContentRoot.setOnLongClickListener(v -> mClickListener != null && mClickListener.onDialogLongClick(dialog));
+
+        holder.ivAvatar.setOnClickListener(view -> {
+            if (Objects.nonNull(mClickListener)) {
+                mClickListener.onAvatarClick(dialog);
+            }
+        });
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull DialogViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (isHeaderOnly(payloads)) {
+            bindHeader(holder, position);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private static boolean isHeaderOnly(List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return false;
+        }
+
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_HEADER) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Заголовок дня зависит от предыдущего диалога, поэтому меняется при вставке,
+     * удалении и перемещении соседей, даже если сам диалог не изменился
+     */
+    private void bindHeader(DialogViewHolder holder, int position) {
+        Dialog dialog = mDialogs.get(position);
+        Dialog previous = position == 0 ? null : mDialogs.get(position - 1);
+
         long lastMessageJavaTime = dialog.getLastMessageDate() * 1000;
         int headerStatus = getDivided(lastMessageJavaTime, previous == null ? null : previous.getLastMessageDate() * 1000);
 
@@ -184,28 +238,40 @@ public class DialogsAdapter extends RecyclerView.Adapter<DialogsAdapter.DialogVi
                 holder.mHeaderTitle.setText(R.string.dialog_day_ten_days);
                 break;
         }
+    }
 
-        DATE.setTime(lastMessageJavaTime);
-        holder.tvDate.setText(lastMessageJavaTime >= mStartOfToday ? DF_TODAY.format(DATE) : DF_OLD.format(DATE));
-
-        ViewUtils.displayAvatar(holder.ivAvatar, mTransformation, dialog.getImageUrl(), PICASSO_TAG);
-
-        holder.mContentRoot.setOnClickListener(v -> {
-            if (mClickListener != null) {
-                mClickListener.onDialogClick(dialog);
-            }
-        });
+    public static final String PICASSO_TAG = "dialogs.adapter.tag";
 
-        holder.mContentRoot.setOnLongClickListener(v -> mClickListener != null && mClickListener.onDialogLongClick(dialog));
+    /**
+     * Payload для notifyItemRangeChanged: перерисовать только заголовок дня
+     */
+    public static final Object PAYLOAD_HEADER = new Object();
+
+    /**
+     * Сравнение диалогов по тому, что отображается в списке
+     */
+    public static final DiffUtil.ItemCallback<Dialog> DIFF_CALLBACK = new DiffUtil.ItemCallback<Dialog>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Dialog oldItem, @NonNull Dialog newItem) {
+            return oldItem.getPeerId() == newItem.getPeerId();
+        }
 
-        holder.ivAvatar.setOnClickListener(view -> {
-            if (Objects.nonNull(mClickListener)) {
-                mClickListener.onAvatarClick(dialog);
-            }
-        });
-    }
+        @Override
+        public boolean areContentsTheSame(@NonNull Dialog oldItem, @NonNull Dialog newItem) {
+            return oldItem.getLastMessageId() == newItem.getLastMessageId()
+                    && oldItem.getUnreadCount() == newItem.getUnreadCount()
+                    && oldItem.getInRead() == newItem.getInRead()
+                    && oldItem.getOutRead() == newItem.getOutRead()
+                    && Objects.safeEquals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.safeEquals(oldItem.getImageUrl(), newItem.getImageUrl())
+                    && Objects.safeEquals(oldItem.getLastMessageBody(), newItem.getLastMessageBody())
+                    && isOnline(oldItem) == isOnline(newItem);
+        }
 
-    public static final String PICASSO_TAG = "dialogs.adapter.tag";
+        private boolean isOnline(Dialog dialog) {
+            return dialog.getInterlocutor() instanceof User && ((User) dialog.getInterlocutor()).isOnline();
+        }
+    };
 
     private int getTextStyle(boolean out, boolean read) {
         return read || out ? Typeface.NORMAL : Typeface.BOLD;
@@ -259,6 +325,13 @@ public class DialogsAdapter extends RecyclerView.Adapter<DialogsAdapter.DialogVi
         notifyDataSetChanged();
     }
 
+    /**
+     * Перерисовать заголовки дней у всех видимых диалогов (после вставки, удаления или перемещения)
+     */
+    public void notifyHeadersChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_HEADER);
+    }
+
     public interface ClickListener extends EventListener {
         void onDialogClick(Dialog dialog);
 
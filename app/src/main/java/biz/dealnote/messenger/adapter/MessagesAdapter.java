@@ -13,7 +13,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.airbnb.lottie.LottieAnimationView;
@@ -42,6 +44,7 @@ import biz.dealnote.messenger.util.ViewUtils;
 import biz.dealnote.messenger.view.BubbleLinearLayout;
 import biz.dealnote.messenger.view.OnlineView;
 import biz.dealnote.messenger.view.emoji.EmojiconTextView;
+import biz.dealnote.messenger.view.emoji.PreparedTextCache;
 
 import static biz.dealnote.messenger.util.AppTextUtils.getDateFromUnixTime;
 import static biz.dealnote.messenger.util.Objects.nonNull;
@@ -61,6 +64,35 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
 
     private static final int ENCRYPTED_MESSAGE_BUBBLE_ALPHA = 150;
 
+    /**
+     * Payload для notifyItemRangeChanged: изменился только lastReadId, перерисовать подсветку непрочитанных
+     */
+    public static final Object PAYLOAD_READ_STATE = new Object();
+
+    /**
+     * Сравнение сообщений по тому, что отображается в списке.
+     * Состояние прочтения зависит от {@link LastReadId} и обновляется отдельно
+     */
+    public static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK = new DiffUtil.ItemCallback<Message>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getStatus() == newItem.getStatus()
+                    && oldItem.isDeleted() == newItem.isDeleted()
+                    && oldItem.isDeletedForAll() == newItem.isDeletedForAll()
+                    && oldItem.isImportant() == newItem.isImportant()
+                    && oldItem.isSelected() == newItem.isSelected()
+                    && oldItem.getUpdateTime() == newItem.getUpdateTime()
+                    && oldItem.getCryptStatus() == newItem.getCryptStatus()
+                    && TextUtils.equals(oldItem.getBody(), newItem.getBody())
+                    && TextUtils.equals(oldItem.getDecryptedBody(), newItem.getDecryptedBody());
+        }
+    };
+
     private Context context;
     private AttachmentsViewBinder attachmentsViewBinder;
     private Transformation avatarTransformation;
@@ -122,6 +154,32 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
         }
     }
 
+    @Override
+    protected void onBindItemViewHolder(RecyclerView.ViewHolder viewHolder, int position, int type, @NonNull List<Object> payloads) {
+        if (viewHolder instanceof BaseMessageHolder && isReadStateOnly(payloads)) {
+            bindReadState(viewHolder.itemView, getItem(position));
+        } else {
+            onBindItemViewHolder(viewHolder, position, type);
+        }
+    }
+
+    private static boolean isReadStateOnly(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_READ_STATE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Перерисовать подсветку непрочитанных у всех видимых сообщений
+     */
+    public void notifyReadStateChanged() {
+        notifyItemRangeChanged(getHeadersCount(), getRealItemCount(), PAYLOAD_READ_STATE);
+    }
+
     private void bindStickerHolder(StickerMessageHolder holder, final Message message) {
         bindBaseMessageHolder(holder, message);
 
@@ -147,7 +205,8 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
         bindBaseMessageHolder(holder, message);
 
         holder.message.setVisibility(TextUtils.isEmpty(message.getBody()) ? View.GONE : View.VISIBLE);
-        holder.message.setText(OwnerLinkSpanFactory.withSpans(message.getBody(), true, false, ownerLinkAdapter));
+        OwnerLinkSpanFactory.setActionListener(holder.message, ownerLinkAdapter);
+        holder.message.setText(PreparedTextCache.obtainMessageText(context, message, message.getBody()));
         GiftItem giftItem = message.getAttachments().getGifts().get(0);
 
         PicassoInstance.with()
@@ -194,14 +253,17 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
         root.getBackground().setAlpha(60);
     }
 
+    private void bindReadState(View root, Message message) {
+        boolean read = message.isOut() ? lastReadId.getOutgoing() >= message.getId() : lastReadId.getIncoming() >= message.getId();
+        bindReadState(root, message.getStatus() == MessageStatus.SENT && read);
+    }
+
     private void bindBaseMessageHolder(BaseMessageHolder holder, Message message) {
         holder.important.setVisibility(message.isImportant() ? View.VISIBLE : View.GONE);
 
         bindStatusText(holder.status, message.getStatus(), message.getDate(), message.getUpdateTime());
 
-        boolean read = message.isOut() ? lastReadId.getOutgoing() >= message.getId() : lastReadId.getIncoming() >= message.getId();
-
-        bindReadState(holder.itemView, message.getStatus() == MessageStatus.SENT && read);
+        bindReadState(holder.itemView, message);
 
         if (message.isSelected()) {
             holder.avatar.setBackground(selectedDrawable);
@@ -214,19 +276,35 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
         }
 
         holder.avatar.setOnClickListener(v -> {
-            if (nonNull(onMessageActionListener)) {
-                onMessageActionListener.onAvatarClick(message, message.getSenderId());
+            Message bound = findBoundMessage(holder);
+            if (nonNull(onMessageActionListener) && nonNull(bound)) {
+                onMessageActionListener.onAvatarClick(bound, bound.getSenderId());
             }
         });
 
         holder.itemView.setOnClickListener(v -> {
-            if (nonNull(onMessageActionListener)) {
-                onMessageActionListener.onMessageClicked(message);
+            Message bound = findBoundMessage(holder);
+            if (nonNull(onMessageActionListener) && nonNull(bound)) {
+                onMessageActionListener.onMessageClicked(bound);
             }
         });
 
-        holder.itemView.setOnLongClickListener(v -> nonNull(onMessageActionListener)
-                && onMessageActionListener.onMessageLongClick(message));
+        holder.itemView.setOnLongClickListener(v -> {
+            Message bound = findBoundMessage(holder);
+            return nonNull(onMessageActionListener) && nonNull(bound)
+                    && onMessageActionListener.onMessageLongClick(bound);
+        });
+    }
+
+    /**
+     * Сообщение, которое сейчас находится на позиции элемента. После замены списка через
+     * {@link #DIFF_CALLBACK} элемент с тем же содержимым не перепривязывается, и сообщение,
+     * захваченное при привязке, может уже не принадлежать списку
+     */
+    @Nullable
+    private Message findBoundMessage(RecyclerView.ViewHolder holder) {
+        int position = holder.getAdapterPosition() - getHeadersCount();
+        return position >= 0 && position < getRealItemCount() ? getItem(position) : null;
     }
 
     private void bindNormalMessage(final MessageHolder holder, final Message message) {
@@ -258,7 +336,8 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
                 break;
         }
 
-        holder.body.setText(OwnerLinkSpanFactory.withSpans(displayedBody, true, false, ownerLinkAdapter));
+        OwnerLinkSpanFactory.setActionListener(holder.body, ownerLinkAdapter);
+        holder.body.setText(PreparedTextCache.obtainMessageText(context, message, displayedBody));
         holder.encryptedView.setVisibility(message.getCryptStatus() == CryptStatus.NO_ENCRYPTION ? View.GONE : View.VISIBLE);
 
         boolean hasAttachments = Utils.nonEmpty(message.getFwd()) || (nonNull(message.getAttachments()) && message.getAttachments().size() > 0);
@@ -278,8 +357,9 @@ public class MessagesAdapter extends RecyclerBindableAdapter<Message, RecyclerVi
     private void bindDeletedHolder(final DeletedMessageHolder holder, final Message message) {
         holder.buttonRestore.setVisibility(message.isDeletedForAll() ? View.GONE : View.VISIBLE);
         holder.buttonRestore.setOnClickListener(v -> {
-            if (onMessageActionListener != null) {
-                onMessageActionListener.onRestoreClick(message, holder.getAdapterPosition());
+            Message bound = findBoundMessage(holder);
+            if (onMessageActionListener != null && nonNull(bound)) {
+                onMessageActionListener.onRestoreClick(bound, holder.getAdapterPosition());
             }
         });
     }
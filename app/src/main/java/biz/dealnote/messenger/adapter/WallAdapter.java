@@ -28,6 +28,7 @@ import biz.dealnote.messenger.util.AppTextUtils;
 import biz.dealnote.messenger.util.ViewUtils;
 import biz.dealnote.messenger.view.CircleCounterButton;
 import biz.dealnote.messenger.view.emoji.EmojiconTextView;
+import biz.dealnote.messenger.view.emoji.PreparedTextCache;
 
 import static biz.dealnote.messenger.api.model.VkApiPostSource.Data.PROFILE_ACTIVITY;
 import static biz.dealnote.messenger.api.model.VkApiPostSource.Data.PROFILE_PHOTO;
@@ -109,7 +110,8 @@ public class WallAdapter extends RecyclerBindableAdapter<Post, RecyclerView.View
         holder.tvOwnerName.setText(post.getAuthorName());
 
         String reduced = AppTextUtils.reduceStringForPost(post.getText());
-        holder.tvText.setText(OwnerLinkSpanFactory.withSpans(reduced, true, false, mLinkActionAdapter));
+        OwnerLinkSpanFactory.setActionListener(holder.tvText, mLinkActionAdapter);
+        holder.tvText.setText(PreparedTextCache.obtainPostText(mContext, post, reduced));
 
         holder.tvShowMore.setVisibility(post.hasText() && post.getText().length() > 400 ? View.VISIBLE : View.GONE);
 
@@ -9,7 +9,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import androidx.annotation.LayoutRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 
@@ -152,6 +156,50 @@ public abstract class RecyclerBindableAdapter<T, VH extends RecyclerView.ViewHol
         }
     }
 
+    @Override
+    final public void onBindViewHolder(@NonNull RecyclerView.ViewHolder vh, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || isHeader(position) || isFooter(position)) {
+            onBindViewHolder(vh, position);
+        } else {
+            onBindItemViewHolder((VH) vh, position - headers.size(), getItemType(position), payloads);
+        }
+    }
+
+    /**
+     * Частичное обновление элемента (notifyItemChanged с payload).
+     * По умолчанию элемент привязывается полностью
+     */
+    protected void onBindItemViewHolder(VH viewHolder, int position, int type, @NonNull List<Object> payloads) {
+        onBindItemViewHolder(viewHolder, position, type);
+    }
+
+    /**
+     * Применить результат DiffUtil, рассчитанный по списку элементов (без учета заголовков)
+     */
+    public void dispatchUpdates(@NonNull DiffUtil.DiffResult result) {
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + getHeadersCount(), count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + getHeadersCount(), count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + getHeadersCount(), toPosition + getHeadersCount());
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                notifyItemRangeChanged(position + getHeadersCount(), count, payload);
+            }
+        });
+    }
+
     private void prepareHeaderFooter(HeaderFooterViewHolder vh, View view) {
         //if it's a staggered grid, span the whole layout
         if (manager instanceof StaggeredGridLayoutManager) {
@@ -3,14 +3,16 @@ package biz.dealnote.messenger.api;
 import android.os.SystemClock;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.IOException;
-import java.util.Random;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 import biz.dealnote.messenger.Injection;
 import biz.dealnote.messenger.api.model.Captcha;
 import biz.dealnote.messenger.api.model.Error;
-import biz.dealnote.messenger.api.model.response.VkReponse;
 import biz.dealnote.messenger.exception.UnauthorizedException;
 import biz.dealnote.messenger.service.ApiErrorCodes;
 import okhttp3.FormBody;
@@ -19,6 +21,7 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 import static biz.dealnote.messenger.util.Objects.isNull;
 import static biz.dealnote.messenger.util.Objects.nonNull;
@@ -40,8 +43,6 @@ abstract class AbsVkApiInterceptor implements Interceptor {
 
     protected abstract String getToken();
 
-    private static final Random RANDOM = new Random();
-
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request original = chain.request();
@@ -72,18 +73,16 @@ abstract class AbsVkApiInterceptor implements Interceptor {
                 .method("POST", formBuiler.build())
                 .build();
 
+        VkRateLimiter limiter = VkRateLimiter.forToken(token);
+
         Response response;
-        ResponseBody responseBody;
-        String responseBodyString;
 
         while (true) {
-            response = chain.proceed(request);
-            responseBody = response.body();
-            responseBodyString = responseBody.string();
+            limiter.acquire();
 
-            VkReponse vkReponse = gson.fromJson(responseBodyString, VkReponse.class);
+            response = chain.proceed(request);
 
-            Error error = isNull(vkReponse) ? null : vkReponse.error;
+            Error error = findError(response.body());
 
             if (nonNull(error)) {
                 switch (error.errorCode) {
@@ -97,11 +96,10 @@ abstract class AbsVkApiInterceptor implements Interceptor {
                 }
 
                 if (error.errorCode == ApiErrorCodes.TOO_MANY_REQUESTS_PER_SECOND) {
-                    synchronized (AbsVkApiInterceptor.class) {
-                        int sleepMs = 1000 + RANDOM.nextInt(500);
-                        SystemClock.sleep(sleepMs);
-                    }
+                    response.close();
 
+                    // повтор пойдет через лимитер этого же токена, остальные аккаунты не ждут
+                    limiter.onTooManyRequests();
                     continue;
                 }
 
@@ -128,6 +126,8 @@ abstract class AbsVkApiInterceptor implements Interceptor {
                     }
 
                     if (nonNull(code)) {
+                        response.close();
+
                         formBuiler.add("captcha_sid", captcha.getSid());
                         formBuiler.add("captcha_key", code);
 
@@ -142,9 +142,43 @@ abstract class AbsVkApiInterceptor implements Interceptor {
             break;
         }
 
-        Response.Builder builder = response.newBuilder()
-                .body(ResponseBody.create(responseBody.contentType(), responseBodyString));
+        // тело ответа уже целиком в буфере source, Retrofit прочитает его оттуда
+        return response;
+    }
+
+    /**
+     * Ищет объект error в ответе, не разбирая ответ целиком.
+     * VK возвращает либо {"error": {...}}, либо {"response": ...}, поэтому достаточно
+     * прочитать первое имя верхнего уровня. Тело буферизуется полностью и читается через peek(),
+     * так что данные остаются в source для конвертера Retrofit
+     */
+    private Error findError(ResponseBody body) throws IOException {
+        if (isNull(body)) {
+            return null;
+        }
 
-        return builder.build();
+        BufferedSource source = body.source();
+        source.request(Long.MAX_VALUE);
+
+        JsonReader reader = new JsonReader(new InputStreamReader(source.peek().inputStream(), StandardCharsets.UTF_8));
+
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+
+            reader.beginObject();
+
+            if (reader.hasNext() && "error".equals(reader.nextName())) {
+                return gson.fromJson(reader, Error.class);
+            }
+
+            return null;
+        } catch (IOException | RuntimeException ignored) {
+            // не JSON, пусть разбирается конвертер
+            return null;
+        } finally {
+            reader.close();
+        }
     }
 }
\ No newline at end of file
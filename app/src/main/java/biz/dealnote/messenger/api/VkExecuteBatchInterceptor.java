@@ -0,0 +1,374 @@
+package biz.dealnote.messenger.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import biz.dealnote.messenger.service.ApiErrorCodes;
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static biz.dealnote.messenger.util.Objects.isNull;
+import static biz.dealnote.messenger.util.Objects.nonNull;
+
+/**
+ * Объединяет запросы одного аккаунта, отправленные почти одновременно,
+ * в один вызов метода execute (не более {@link #MAX_BATCH_SIZE} методов).
+ * Результат execute разбирается обратно, и каждый исходный запрос получает
+ * собственный ответ вида {"response": ...} или {"error": ...}, так что Retrofit-сервисы
+ * и обработка ошибок в api/impl остаются без изменений.
+ * <p>
+ * Объединяются только методы из {@link #BATCHABLE_METHODS} - без побочных эффектов
+ * (при повторе execute они выполнились бы дважды) и обычно вызываемые пачкой.
+ * Пачка собирается, только если в этот момент уже выполняется другой такой запрос,
+ * одиночный запрос отправляется сразу, без ожидания.
+ * <p>
+ * Должен стоять в цепочке перед {@link AbsVkApiInterceptor}, чтобы запрос execute
+ * получил токен, версию и прошел через ограничитель частоты.
+ */
+class VkExecuteBatchInterceptor implements Interceptor {
+
+    private static final int MAX_BATCH_SIZE = 25;
+
+    /**
+     * Сколько ждать остальные запросы пачки после первого
+     */
+    private static final long BATCH_WINDOW_MS = 20;
+
+    private static final Set<String> BATCHABLE_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "users.get",
+            "groups.getById",
+            "messages.getById",
+            "messages.getConversationsById",
+            "messages.getChat",
+            "messages.getChatUsers",
+            "photos.getById",
+            "wall.getById",
+            "docs.getById",
+            "audio.getById",
+            "polls.getById",
+            "account.getCounters"
+    )));
+
+    private static final String EXECUTE_METHOD = "execute";
+
+    private static final Gson GSON = new Gson();
+
+    private final Object lock = new Object();
+
+    private Batch pending;
+
+    /**
+     * Сколько объединяемых запросов выполняется прямо сейчас
+     */
+    private int active;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+
+        String method = extractMethod(request.url());
+        if (!isBatchable(method, request)) {
+            return chain.proceed(request);
+        }
+
+        boolean alone;
+
+        synchronized (lock) {
+            alone = active == 0;
+            active++;
+        }
+
+        try {
+            if (alone) {
+                // объединять не с чем
+                return chain.proceed(request);
+            }
+
+            return interceptInBatch(chain, request, method);
+        } finally {
+            synchronized (lock) {
+                active--;
+            }
+        }
+    }
+
+    private Response interceptInBatch(Chain chain, Request request, String method) throws IOException {
+        Call call = new Call(request, method);
+
+        Batch batch;
+        boolean leader;
+
+        synchronized (lock) {
+            if (isNull(pending)) {
+                pending = new Batch();
+                leader = true;
+            } else {
+                leader = false;
+            }
+
+            batch = pending;
+            batch.calls.add(call);
+
+            if (batch.calls.size() >= MAX_BATCH_SIZE) {
+                pending = null;
+                lock.notifyAll();
+            }
+        }
+
+        if (leader) {
+            collect(batch);
+
+            if (batch.calls.size() == 1) {
+                // за время ожидания никто не присоединился, отправляем как есть
+                return chain.proceed(request);
+            }
+
+            execute(chain, batch);
+        } else {
+            // ожидание сбора пачки и самого execute
+            long timeout = BATCH_WINDOW_MS + chain.connectTimeoutMillis() + chain.writeTimeoutMillis() + chain.readTimeoutMillis();
+
+            if (!call.await(timeout)) {
+                // поток, отправлявший execute, завис или был остановлен до отправки
+                return chain.proceed(request);
+            }
+        }
+
+        if (nonNull(call.body)) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(call.source.protocol())
+                    .code(call.source.code())
+                    .message(call.source.message())
+                    .body(ResponseBody.create(call.contentType, call.body))
+                    .build();
+        }
+
+        // execute не удался (например, был отменен запрос, который его отправлял)
+        // или ошибку метода нужно обработать обычным образом - отправляем свой запрос отдельно
+        return chain.proceed(request);
+    }
+
+    private void collect(Batch batch) throws InterruptedIOException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + BATCH_WINDOW_MS;
+            long remaining = BATCH_WINDOW_MS;
+
+            try {
+                while (pending == batch && remaining > 0) {
+                    lock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                if (pending == batch) {
+                    pending = null;
+                }
+            }
+        }
+    }
+
+    private static void execute(Chain chain, Batch batch) {
+        try {
+            Request original = chain.request();
+
+            Request executeRequest = original.newBuilder()
+                    .url(original.url().newBuilder().setPathSegment(1, EXECUTE_METHOD).build())
+                    .post(new FormBody.Builder()
+                            .add("code", buildCode(batch.calls))
+                            .build())
+                    .build();
+
+            Response response = chain.proceed(executeRequest);
+            ResponseBody responseBody = response.body();
+            MediaType contentType = responseBody.contentType();
+            String json = responseBody.string();
+
+            List<String> bodies = split(json, batch.calls);
+
+            for (int i = 0; i < batch.calls.size(); i++) {
+                Call call = batch.calls.get(i);
+                call.source = response;
+                call.contentType = contentType;
+                call.body = bodies.get(i);
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // каждый запрос пачки будет отправлен отдельно
+        } finally {
+            for (Call call : batch.calls) {
+                call.latch.countDown();
+            }
+        }
+    }
+
+    private static String buildCode(List<Call> calls) {
+        StringBuilder code = new StringBuilder("return [");
+
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.get(i);
+
+            if (i > 0) {
+                code.append(",");
+            }
+
+            code.append("API.")
+                    .append(call.method)
+                    .append("(")
+                    .append(GSON.toJson(call.params))
+                    .append(")");
+        }
+
+        return code.append("];").toString();
+    }
+
+    /**
+     * Разбирает ответ execute на ответы отдельных методов.
+     * Упавшие методы возвращают false, их ошибки лежат в execute_errors в порядке вызова,
+     * поэтому k-я ошибка относится к k-му упавшему методу. Если число упавших методов
+     * и ошибок не совпадает (метод мог законно вернуть false), сопоставить их нельзя.
+     * <p>
+     * Вместо ответа возвращается null, если запрос нужно отправить отдельно:
+     * при ошибках {@link ApiErrorCodes#TOO_MANY_REQUESTS_PER_SECOND} и {@link ApiErrorCodes#CAPTCHA_NEED}
+     * (повтор и капчу обрабатывает {@link AbsVkApiInterceptor}) и при невозможности сопоставить ошибку
+     */
+    private static List<String> split(String json, List<Call> calls) {
+        List<String> bodies = new ArrayList<>(calls.size());
+
+        JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+
+        if (root.has("error")) {
+            for (int i = 0; i < calls.size(); i++) {
+                bodies.add(json);
+            }
+
+            return bodies;
+        }
+
+        JsonArray results = root.getAsJsonArray("response");
+        JsonArray errors = root.has("execute_errors") ? root.getAsJsonArray("execute_errors") : new JsonArray();
+
+        List<Integer> failed = new ArrayList<>(errors.size());
+        for (int i = 0; i < calls.size(); i++) {
+            if (isFailed(i < results.size() ? results.get(i) : null)) {
+                failed.add(i);
+            }
+        }
+
+        boolean matched = failed.size() == errors.size();
+
+        for (int i = 0; i < calls.size(); i++) {
+            int failedIndex = failed.indexOf(i);
+
+            if (failedIndex == -1) {
+                JsonObject single = new JsonObject();
+                single.add("response", results.get(i));
+                bodies.add(single.toString());
+                continue;
+            }
+
+            if (!matched || needsSeparateRetry(errors.get(failedIndex))) {
+                bodies.add(null);
+                continue;
+            }
+
+            JsonObject single = new JsonObject();
+            single.add("error", errors.get(failedIndex));
+            bodies.add(single.toString());
+        }
+
+        return bodies;
+    }
+
+    private static boolean isFailed(JsonElement result) {
+        return isNull(result) || result.isJsonNull()
+                || (result.isJsonPrimitive() && result.getAsJsonPrimitive().isBoolean() && !result.getAsBoolean());
+    }
+
+    private static boolean needsSeparateRetry(JsonElement error) {
+        JsonElement code = error.getAsJsonObject().get("error_code");
+        if (isNull(code) || code.isJsonNull()) {
+            return true;
+        }
+
+        int errorCode = code.getAsInt();
+        return errorCode == ApiErrorCodes.TOO_MANY_REQUESTS_PER_SECOND || errorCode == ApiErrorCodes.CAPTCHA_NEED;
+    }
+
+    private static String extractMethod(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        return segments.size() == 2 ? segments.get(1) : null;
+    }
+
+    private static boolean isBatchable(String method, Request request) {
+        if (isNull(method) || !(request.body() instanceof FormBody)) {
+            return false;
+        }
+
+        return BATCHABLE_METHODS.contains(method);
+    }
+
+    private static final class Batch {
+        final List<Call> calls = new ArrayList<>(MAX_BATCH_SIZE);
+    }
+
+    private static final class Call {
+
+        final String method;
+
+        final Map<String, String> params;
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        volatile Response source;
+
+        volatile MediaType contentType;
+
+        volatile String body;
+
+        Call(Request request, String method) {
+            this.method = method;
+
+            FormBody form = (FormBody) request.body();
+            this.params = new LinkedHashMap<>(form.size());
+
+            for (int i = 0; i < form.size(); i++) {
+                params.put(form.name(i), form.value(i));
+            }
+        }
+
+        /**
+         * @return false, если ответ не получен за отведенное время
+         */
+        boolean await(long timeoutMillis) throws InterruptedIOException {
+            try {
+                return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
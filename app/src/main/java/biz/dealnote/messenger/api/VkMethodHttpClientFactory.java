@@ -20,22 +20,28 @@ public class VkMethodHttpClientFactory implements IVkMethodHttpClientFactory {
 
     @Override
     public OkHttpClient createDefaultVkHttpClient(int accountId, Gson gson, ProxyConfig config) {
-        return createDefaultVkApiOkHttpClient(new DefaultVkApiInterceptor(accountId, ApiVersion.CURRENT, gson), config);
+        return createDefaultVkApiOkHttpClient(new DefaultVkApiInterceptor(accountId, ApiVersion.CURRENT, gson), config, true);
     }
 
     @Override
     public OkHttpClient createCustomVkHttpClient(int accountId, String token, Gson gson, ProxyConfig config) {
-        return createDefaultVkApiOkHttpClient(new CustomTokenVkApiInterceptor(token, ApiVersion.CURRENT, gson), config);
+        return createDefaultVkApiOkHttpClient(new CustomTokenVkApiInterceptor(token, ApiVersion.CURRENT, gson), config, false);
     }
 
     @Override
     public OkHttpClient createServiceVkHttpClient(Gson gson, ProxyConfig config) {
-        return createDefaultVkApiOkHttpClient(new CustomTokenVkApiInterceptor(Constants.SERVICE_TOKEN, ApiVersion.CURRENT, gson), config);
+        return createDefaultVkApiOkHttpClient(new CustomTokenVkApiInterceptor(Constants.SERVICE_TOKEN, ApiVersion.CURRENT, gson), config, false);
     }
 
-    private OkHttpClient createDefaultVkApiOkHttpClient(AbsVkApiInterceptor interceptor, ProxyConfig config) {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                .addInterceptor(interceptor)
+    private OkHttpClient createDefaultVkApiOkHttpClient(AbsVkApiInterceptor interceptor, ProxyConfig config, boolean batchRequests) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+
+        if (batchRequests) {
+            // должен идти до interceptor, execute подписывается токеном аккаунта
+            builder.addInterceptor(new VkExecuteBatchInterceptor());
+        }
+
+        builder.addInterceptor(interceptor)
                 .addInterceptor(HttpLogger.DEFAULT_LOGGING_INTERCEPTOR)
                 .readTimeout(25, TimeUnit.SECONDS)
                 .connectTimeout(25, TimeUnit.SECONDS)
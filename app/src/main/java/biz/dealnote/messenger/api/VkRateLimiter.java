@@ -0,0 +1,104 @@
+package biz.dealnote.messenger.api;
+
+import android.os.SystemClock;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import biz.dealnote.messenger.util.Logger;
+
+/**
+ * Ограничитель частоты запросов к VK API для одного токена.
+ * VK разрешает не более {@link #MAX_REQUESTS_PER_PERIOD} запросов в секунду,
+ * поэтому запрос откладывается заранее, а не после получения ошибки 6 (Too many requests per second).
+ * Ожидание блокирует только поток, отправляющий запрос с этим токеном,
+ * запросы других аккаунтов не задерживаются.
+ * <p>
+ * Количество отложенных и повторенных запросов пишется в лог (как и статистика {@link biz.dealnote.messenger.media.exo.MediaCache})
+ */
+final class VkRateLimiter {
+
+    private static final int MAX_REQUESTS_PER_PERIOD = 3;
+
+    private static final long PERIOD_MS = 1000;
+
+    private static final String TAG = VkRateLimiter.class.getSimpleName();
+
+    private static final Map<String, VkRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private static final AtomicLong THROTTLED_COUNT = new AtomicLong();
+
+    private static final AtomicLong RETRIED_COUNT = new AtomicLong();
+
+    /**
+     * Время отправки последних запросов (кольцевой буфер)
+     */
+    private final long[] sendTimes = new long[MAX_REQUESTS_PER_PERIOD];
+
+    private int position;
+
+    private VkRateLimiter() {
+
+    }
+
+    static VkRateLimiter forToken(String token) {
+        VkRateLimiter limiter = LIMITERS.get(token);
+        if (limiter == null) {
+            limiter = new VkRateLimiter();
+            VkRateLimiter existing = LIMITERS.putIfAbsent(token, limiter);
+            if (existing != null) {
+                limiter = existing;
+            }
+        }
+
+        return limiter;
+    }
+
+    /**
+     * Резервирует место в очереди и, если лимит исчерпан, ждет своей очереди
+     */
+    void acquire() throws InterruptedIOException {
+        long delay = reserve();
+        if (delay <= 0) {
+            return;
+        }
+
+        long throttled = THROTTLED_COUNT.incrementAndGet();
+        Logger.d(TAG, "Request delayed for " + delay + " ms, total delayed: " + throttled + ", retried after error 6: " + RETRIED_COUNT.get());
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rate limit");
+        }
+    }
+
+    /**
+     * Вызывается, если VK все-таки вернул ошибку 6.
+     * Следующие запросы с этим токеном будут отложены на целый период
+     */
+    synchronized void onTooManyRequests() {
+        long retried = RETRIED_COUNT.incrementAndGet();
+        Logger.d(TAG, "Too many requests per second, total retried: " + retried + ", delayed: " + THROTTLED_COUNT.get());
+
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < sendTimes.length; i++) {
+            sendTimes[i] = Math.max(sendTimes[i], now);
+        }
+    }
+
+    private synchronized long reserve() {
+        long now = SystemClock.elapsedRealtime();
+
+        // самый старый из последних MAX_REQUESTS_PER_PERIOD запросов
+        long oldest = sendTimes[position];
+        long sendAt = oldest == 0 ? now : Math.max(now, oldest + PERIOD_MS);
+
+        sendTimes[position] = sendAt;
+        position = (position + 1) % sendTimes.length;
+        return sendAt - now;
+    }
+}
@@ -30,6 +30,7 @@ public class LongpollUpdatesAdapter extends AbsAdapter implements JsonDeserializ
 
         updates.failed = optInt(root, "failed");
         updates.ts = optLong(root, "ts");
+        updates.pts = optLong(root, "pts");
 
         JsonArray array = root.getAsJsonArray("updates");
 
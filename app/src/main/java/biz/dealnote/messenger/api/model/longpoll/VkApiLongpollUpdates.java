@@ -20,6 +20,7 @@ public final class VkApiLongpollUpdates {
     //{"ts":1841741106,"updates":[[5,1200880,51,26632922,1528116889,"и тд",{"title":""},{},1000771599]]}
 
     public long ts;
+    public long pts;
     public int failed;
 
     public List<WriteTextInDialogUpdate> write_text_in_dialog_updates;
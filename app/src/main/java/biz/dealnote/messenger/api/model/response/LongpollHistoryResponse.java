@@ -22,6 +22,12 @@ public class LongpollHistoryResponse {
     @SerializedName("messages")
     public Messages messages;
 
+    /**
+     * 1, если событий больше, чем было запрошено
+     */
+    @SerializedName("more")
+    public int more;
+
     public static class Messages {
 
         @SerializedName("items")
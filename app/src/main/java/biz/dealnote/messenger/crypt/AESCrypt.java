@@ -8,6 +8,8 @@ import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -34,6 +36,43 @@ public final class AESCrypt {
     //togglable log option (please turn off in live!)
     public static boolean DEBUG_LOG_ENABLED = false;
 
+    private static final int MAX_CACHED_KEYS = 64;
+
+    /**
+     * Ключи, уже полученные из паролей (SHA-256), чтобы не считать хэш для каждого сообщения сессии
+     */
+    private static final Map<String, SecretKeySpec> KEYS_CACHE = new LinkedHashMap<String, SecretKeySpec>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SecretKeySpec> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    };
+
+    /**
+     * Сбрасывает полученные ключи. Вызывается при удалении ключей шифрования,
+     * чтобы удаленные ключи не продолжали работать из памяти
+     */
+    public static void clearKeysCache() {
+        synchronized (KEYS_CACHE) {
+            KEYS_CACHE.clear();
+        }
+    }
+
+    /**
+     * Cipher не потокобезопасен, а Cipher.getInstance довольно дорогой, поэтому у каждого потока свой
+     */
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<>();
+
+    private static Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(AES_MODE);
+            CIPHERS.set(cipher);
+        }
+
+        return cipher;
+    }
+
 
     /**
      * Generates SHA256 hash of the password which is used as key
@@ -42,6 +81,13 @@ public final class AESCrypt {
      * @return SHA256 of the password
      */
     private static SecretKeySpec generateKey(final String password) throws NoSuchAlgorithmException {
+        synchronized (KEYS_CACHE) {
+            SecretKeySpec cached = KEYS_CACHE.get(password);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         final MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
         byte[] bytes = password.getBytes(StandardCharsets.UTF_8);
         digest.update(bytes, 0, bytes.length);
@@ -50,6 +96,11 @@ public final class AESCrypt {
         log("SHA-256 key ", key);
 
         SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
+
+        synchronized (KEYS_CACHE) {
+            KEYS_CACHE.put(password, secretKeySpec);
+        }
+
         return secretKeySpec;
     }
 
@@ -95,7 +146,7 @@ public final class AESCrypt {
      */
     public static byte[] encrypt(final SecretKeySpec key, final byte[] iv, final byte[] message)
             throws GeneralSecurityException {
-        final Cipher cipher = Cipher.getInstance(AES_MODE);
+        final Cipher cipher = getCipher();
         IvParameterSpec ivSpec = new IvParameterSpec(iv);
         cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
         byte[] cipherText = cipher.doFinal(message);
@@ -152,7 +203,7 @@ public final class AESCrypt {
      */
     public static byte[] decrypt(final SecretKeySpec key, final byte[] iv, final byte[] decodedCipherText)
             throws GeneralSecurityException {
-        final Cipher cipher = Cipher.getInstance(AES_MODE);
+        final Cipher cipher = getCipher();
         IvParameterSpec ivSpec = new IvParameterSpec(iv);
         cipher.init(Cipher.DECRYPT_MODE, key, ivSpec);
         byte[] decryptedBytes = cipher.doFinal(decodedCipherText);
@@ -13,6 +13,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import biz.dealnote.messenger.crypt.AesKeyPair;
+import biz.dealnote.messenger.crypt.KeyLocationPolicy;
 import biz.dealnote.messenger.crypt.ver.Version;
 import biz.dealnote.messenger.db.column.AttachmentsColumns;
 import biz.dealnote.messenger.db.column.CommentsAttachmentsColumns;
@@ -34,6 +35,7 @@ import biz.dealnote.messenger.db.column.GroupLinksColumns;
 import biz.dealnote.messenger.db.column.GroupsDetColumns;
 import biz.dealnote.messenger.db.column.KeyColumns;
 import biz.dealnote.messenger.db.column.MessageColumns;
+import biz.dealnote.messenger.db.column.MessagesSearchColumns;
 import biz.dealnote.messenger.db.column.NewsColumns;
 import biz.dealnote.messenger.db.column.NotificationColumns;
 import biz.dealnote.messenger.db.column.PeersColumns;
@@ -54,7 +56,24 @@ public class DBHelper extends SQLiteOpenHelper {
 
     public static final String TAG = "DBHelper";
 
-    private static final int DATABASE_VERSION = 173;
+    private static final int DATABASE_VERSION = 175;
+
+    /**
+     * Последняя версия, при обновлении с которой пересоздаются все таблицы.
+     * Для более новых версий схема меняется без потери данных
+     */
+    private static final int LAST_DESTRUCTIVE_VERSION = 173;
+
+    /**
+     * Версия, начиная с которой создаются вторичные индексы (см. {@link #createIndexes(SQLiteDatabase)})
+     */
+    private static final int INDEXES_VERSION = 174;
+
+    /**
+     * Версия, начиная с которой есть полнотекстовый индекс сообщений
+     * (см. {@link #createMessagesSearchIndex(SQLiteDatabase)})
+     */
+    private static final int SEARCH_INDEX_VERSION = 175;
 
     private static volatile Map<Integer, DBHelper> dbHelperMap = new ConcurrentHashMap<>();
 
@@ -72,10 +91,18 @@ public class DBHelper extends SQLiteOpenHelper {
     public static void removeDatabaseFor(Context context, int aid) {
         dbHelperMap.remove(aid);
         context.deleteDatabase(DBHelper.getDatabaseFileName(aid));
+
+        // ключи шифрования аккаунта удалены вместе с базой, через deleteAll их не удалить -
+        // запрос к провайдеру снова создал бы базу
+        Stores.getInstance().keys(KeyLocationPolicy.PERSIST).onAccountRemoved(aid);
+        Stores.getInstance().keys(KeyLocationPolicy.RAM).onAccountRemoved(aid);
     }
 
     private DBHelper(Context context, int aid) {
         super(context, getDatabaseFileName(aid), null, DATABASE_VERSION);
+
+        // чтение истории не блокируется записью из longpoll
+        setWriteAheadLoggingEnabled(true);
     }
 
     private static String getDatabaseFileName(int aid) {
@@ -92,9 +119,18 @@ public class DBHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int old, int i2) {
-        if (old < DATABASE_VERSION) {
+        if (old < LAST_DESTRUCTIVE_VERSION) {
             dropAllTables(db);
             onCreate(db);
+        } else {
+            if (old < INDEXES_VERSION) {
+                createIndexes(db);
+            }
+
+            if (old < SEARCH_INDEX_VERSION) {
+                // уже сохраненные сообщения индексируются порциями, см. MessagesStorage.indexForSearch
+                createMessagesSearchIndex(db);
+            }
         }
 
         if (old < 114) {
@@ -157,6 +193,7 @@ public class DBHelper extends SQLiteOpenHelper {
 
         createMessagesTable(db);
         createZeroMessageProtectionTriggers(db);
+        createMessagesSearchIndex(db);
 
         createAttachmentsTable(db);
         createDialogTable(db);
@@ -192,6 +229,8 @@ public class DBHelper extends SQLiteOpenHelper {
         createFeedListsTable(db);
         createFriendListsTable(db);
 
+        createIndexes(db);
+
         //Triggers.createInsertPeerWithUserTrigger(db);
         //Triggers.createUpdateDialogWithUserTitleTrigger(db);
         //Triggers.createUpdatedGroupToPeerTrigger(db);
@@ -204,6 +243,42 @@ public class DBHelper extends SQLiteOpenHelper {
         createKeysTableIfNotExist(db);
     }
 
+    /**
+     * Создание вторичных индексов под основные выборки
+     * MessagesStorage, AttachmentsStorage, DialogsStorage и WallStorage
+     *
+     * @param db БД
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        // история переписки: peer_id = ? AND attach_to = 0 AND _id < ?
+        createIndex(db, MessageColumns.TABLENAME, "idx_messages_peer", MessageColumns.PEER_ID, MessageColumns.ATTACH_TO, MessageColumns._ID);
+        // пересланные сообщения и каскадное удаление
+        createIndex(db, MessageColumns.TABLENAME, "idx_messages_attach_to", MessageColumns.ATTACH_TO);
+        // неотправленные сообщения и черновики
+        createIndex(db, MessageColumns.TABLENAME, "idx_messages_status", MessageColumns.STATUS, MessageColumns.PEER_ID);
+
+        createIndex(db, AttachmentsColumns.TABLENAME, "idx_attachments_message", AttachmentsColumns.MESSAGE_ID);
+        createIndex(db, CommentsAttachmentsColumns.TABLENAME, "idx_comments_attachments_comment", CommentsAttachmentsColumns.C_ID);
+        createIndex(db, PostAttachmentsColumns.TABLENAME, "idx_posts_attachments_post", PostAttachmentsColumns.P_ID);
+
+        createIndex(db, DialogsColumns.TABLENAME, "idx_dialogs_last_message", DialogsColumns.LAST_MESSAGE_ID);
+        createIndex(db, PostsColumns.TABLENAME, "idx_posts_owner", PostsColumns.OWNER_ID, PostsColumns.POST_ID);
+    }
+
+    private static void createIndex(SQLiteDatabase db, String table, String name, String... columns) {
+        StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS [" + name + "] ON [" + table + "] (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append("[").append(columns[i]).append("]");
+        }
+
+        sql.append(");");
+        db.execSQL(sql.toString());
+    }
+
     private void createKeysTableIfNotExist(SQLiteDatabase db) {
         String sql = "CREATE TABLE IF NOT EXISTS [" + KeyColumns.TABLENAME + "] (\n" +
                 "  [" + KeyColumns._ID + "] INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -245,6 +320,10 @@ public class DBHelper extends SQLiteOpenHelper {
         //messages
         db.execSQL("DROP TRIGGER IF EXISTS zero_msg_upd");
         db.execSQL("DROP TRIGGER IF EXISTS zero_msg_del");
+        db.execSQL("DROP TRIGGER IF EXISTS t_messages_fts_insert");
+        db.execSQL("DROP TRIGGER IF EXISTS t_messages_fts_update");
+        db.execSQL("DROP TRIGGER IF EXISTS t_messages_fts_delete");
+        db.execSQL("DROP TABLE IF EXISTS " + MessagesSearchColumns.TABLENAME);
         db.execSQL("DROP TABLE IF EXISTS " + MessageColumns.TABLENAME);
 
         db.execSQL("DROP TABLE IF EXISTS news_attachments");
@@ -293,6 +372,49 @@ public class DBHelper extends SQLiteOpenHelper {
         db.execSQL(sqlDelete);
     }
 
+    /**
+     * Полнотекстовый индекс по тексту сообщений и триггеры, которые держат его в актуальном состоянии.
+     * Индексируются только незашифрованные сообщения верхнего уровня (не пересланные).
+     * <p>
+     * Вставка с ON CONFLICT REPLACE не вызывает триггер удаления, поэтому
+     * при вставке запись индекса тоже заменяется (INSERT OR REPLACE по docid)
+     */
+    private void createMessagesSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS [" + MessagesSearchColumns.TABLENAME + "] " +
+                "USING fts4([" + MessagesSearchColumns.BODY + "], tokenize=unicode61);");
+
+        String insert = "INSERT OR REPLACE INTO " + MessagesSearchColumns.TABLENAME +
+                " (" + MessagesSearchColumns.DOCID + ", " + MessagesSearchColumns.BODY + ")" +
+                " SELECT NEW." + MessageColumns._ID + ", NEW." + MessageColumns.BODY +
+                " WHERE " + getMessageSearchableCondition("NEW.") + ";";
+
+        String deleteOld = "DELETE FROM " + MessagesSearchColumns.TABLENAME +
+                " WHERE " + MessagesSearchColumns.DOCID + " = OLD." + MessageColumns._ID + ";";
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS t_messages_fts_insert AFTER INSERT ON " + MessageColumns.TABLENAME +
+                " FOR EACH ROW BEGIN " + insert + " END;");
+
+        // статус, прочитанность и т.п. меняются часто, индекс нужно трогать только при смене текста или ID
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS t_messages_fts_update AFTER UPDATE OF " +
+                MessageColumns._ID + ", " + MessageColumns.BODY + ", " + MessageColumns.ENCRYPTED + ", " + MessageColumns.ATTACH_TO +
+                " ON " + MessageColumns.TABLENAME + " FOR EACH ROW BEGIN " + deleteOld + " " + insert + " END;");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS t_messages_fts_delete AFTER DELETE ON " + MessageColumns.TABLENAME +
+                " FOR EACH ROW BEGIN " + deleteOld + " END;");
+    }
+
+    /**
+     * Условие, при котором сообщение попадает в полнотекстовый индекс
+     *
+     * @param prefix префикс колонок, например "NEW." в триггере
+     */
+    public static String getMessageSearchableCondition(String prefix) {
+        return prefix + MessageColumns.ATTACH_TO + " = " + MessageColumns.DONT_ATTACH +
+                " AND " + prefix + MessageColumns.ENCRYPTED + " = 0" +
+                " AND " + prefix + MessageColumns.BODY + " IS NOT NULL" +
+                " AND " + prefix + MessageColumns.BODY + " != ''";
+    }
+
     private void createStickerSetTable(SQLiteDatabase db) {
         String sql = "CREATE TABLE [" + StikerSetColumns.TABLENAME + "] (\n" +
                 " [" + StikerSetColumns._ID + "] INTEGER NOT NULL UNIQUE ON CONFLICT REPLACE, " +
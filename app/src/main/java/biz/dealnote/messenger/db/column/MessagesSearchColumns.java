@@ -0,0 +1,18 @@
+package biz.dealnote.messenger.db.column;
+
+/**
+ * Полнотекстовый индекс (FTS4) по тексту сохраненных сообщений.
+ * docid записи совпадает с {@link MessageColumns#_ID} сообщения,
+ * индекс поддерживается триггерами на таблице сообщений
+ */
+public final class MessagesSearchColumns {
+
+    private MessagesSearchColumns() {}
+
+    public static final String TABLENAME = "messages_fts";
+
+    public static final String DOCID = "docid";
+    public static final String BODY = "body";
+
+    public static final String FULL_DOCID = TABLENAME + "." + DOCID;
+}
@@ -22,6 +22,7 @@ import biz.dealnote.messenger.db.interfaces.IStorages;
 import biz.dealnote.messenger.db.model.entity.AttachmentsEntity;
 import biz.dealnote.messenger.db.model.entity.EntitiesWrapper;
 import biz.dealnote.messenger.db.model.entity.EntityWrapper;
+import biz.dealnote.messenger.db.serialize.AttachmentsCodec;
 import biz.dealnote.messenger.db.serialize.AttachmentsDboAdapter;
 import biz.dealnote.messenger.db.serialize.EntitiesWrapperAdapter;
 import biz.dealnote.messenger.db.serialize.EntityWrapperAdapter;
@@ -42,6 +43,8 @@ public class AbsStorage implements IStorage {
             .serializeSpecialFloatingPointValues() // for test
             .create();
 
+    static final AttachmentsCodec ATTACHMENTS_CODEC = new AttachmentsCodec(GSON);
+
     private final AppStorages mRepositoryContext;
 
     public AbsStorage(@NonNull AppStorages base) {
@@ -1,5 +1,6 @@
 package biz.dealnote.messenger.db.impl;
 
+import android.annotation.SuppressLint;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.ContentValues;
@@ -7,7 +8,10 @@ import android.database.Cursor;
 import android.net.Uri;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import biz.dealnote.messenger.db.AttachToType;
@@ -25,6 +29,7 @@ import io.reactivex.Completable;
 import io.reactivex.Single;
 
 import static biz.dealnote.messenger.util.Objects.nonNull;
+import static biz.dealnote.messenger.util.Utils.join;
 import static biz.dealnote.messenger.util.Utils.safeCountOf;
 
 /**
@@ -55,7 +60,7 @@ class AttachmentsStorage extends AbsStorage implements IAttachmentsStorage {
         ContentValues cv = new ContentValues();
 
         cv.put(typeColumnFor(attachToType), AttachmentsTypes.typeForInstance(entity));
-        cv.put(dataColumnFor(attachToType), GSON.toJson(entity));
+        cv.put(dataColumnFor(attachToType), serializeDbo(entity));
 
         operations.add(ContentProviderOperation.newInsert(uriForType(attachToType, accountId))
                 .withValues(cv)
@@ -128,13 +133,20 @@ class AttachmentsStorage extends AbsStorage implements IAttachmentsStorage {
         throw new IllegalArgumentException();
     }
 
-    private static String serializeDbo(Entity entity) {
-        return GSON.toJson(entity);
+    private static byte[] serializeDbo(Entity entity) {
+        return ATTACHMENTS_CODEC.encode(entity);
     }
 
-    private static Entity deserializeDbo(int type, String json) {
-        Class<? extends Entity> dboClass = AttachmentsTypes.classForType(type);
-        return GSON.fromJson(json, dboClass);
+    /**
+     * Записи, сохраненные до перехода на бинарный формат, лежат в базе текстом JSON.
+     * Они читаются как раньше и заменяются бинарными при следующем сохранении вложений
+     */
+    private static Entity deserializeDbo(Cursor cursor, int typeIndex, int dataIndex) {
+        if (cursor.getType(dataIndex) == Cursor.FIELD_TYPE_BLOB) {
+            return ATTACHMENTS_CODEC.decode(cursor.getBlob(dataIndex));
+        }
+
+        return ATTACHMENTS_CODEC.decodeJson(cursor.getInt(typeIndex), cursor.getString(dataIndex));
     }
 
     @Override
@@ -170,15 +182,17 @@ class AttachmentsStorage extends AbsStorage implements IAttachmentsStorage {
             final List<Pair<Integer, Entity>> dbos = new ArrayList<>(safeCountOf(cursor));
 
             if (nonNull(cursor)) {
+                final int idIndex = cursor.getColumnIndex(idColumnFor(attachToType));
+                final int typeIndex = cursor.getColumnIndex(typeColumnFor(attachToType));
+                final int dataIndex = cursor.getColumnIndex(dataColumnFor(attachToType));
+
                 while (cursor.moveToNext()) {
                     if (emitter.isDisposed()) {
                         break;
                     }
 
-                    final int id = cursor.getInt(cursor.getColumnIndex(idColumnFor(attachToType)));
-                    final int type = cursor.getInt(cursor.getColumnIndex(typeColumnFor(attachToType)));
-                    final String json = cursor.getString(cursor.getColumnIndex(dataColumnFor(attachToType)));
-                    final Entity entity = deserializeDbo(type, json);
+                    final int id = cursor.getInt(idIndex);
+                    final Entity entity = deserializeDbo(cursor, typeIndex, dataIndex);
 
                     dbos.add(Pair.Companion.create(id, entity));
                 }
@@ -203,15 +217,15 @@ class AttachmentsStorage extends AbsStorage implements IAttachmentsStorage {
         final List<Entity> entities = new ArrayList<>(safeCountOf(cursor));
 
         if (nonNull(cursor)) {
+            final int typeIndex = cursor.getColumnIndex(typeColumnFor(attachToType));
+            final int dataIndex = cursor.getColumnIndex(dataColumnFor(attachToType));
+
             while (cursor.moveToNext()) {
                 if (cancelable.isOperationCancelled()) {
                     break;
                 }
 
-                int type = cursor.getInt(cursor.getColumnIndex(typeColumnFor(attachToType)));
-                String json = cursor.getString(cursor.getColumnIndex(dataColumnFor(attachToType)));
-
-                entities.add(deserializeDbo(type, json));
+                entities.add(deserializeDbo(cursor, typeIndex, dataIndex));
             }
 
             cursor.close();
@@ -220,6 +234,44 @@ class AttachmentsStorage extends AbsStorage implements IAttachmentsStorage {
         return entities;
     }
 
+    @Override
+    public Map<Integer, List<Entity>> getAttachmentsDbosSync(int accountId, int attachToType, @NonNull Collection<Integer> attachToDbids, @NonNull Cancelable cancelable) {
+        @SuppressLint("UseSparseArrays")
+        final Map<Integer, List<Entity>> result = new HashMap<>(attachToDbids.size());
+
+        if (attachToDbids.isEmpty()) {
+            return result;
+        }
+
+        final String attachToColumn = attachToIdColumnFor(attachToType);
+        final String[] projection = {attachToColumn, typeColumnFor(attachToType), dataColumnFor(attachToType)};
+        final String where = attachToColumn + " IN (" + join(",", attachToDbids) + ")";
+
+        Cursor cursor = getContentResolver().query(uriForType(attachToType, accountId), projection, where, null, idColumnFor(attachToType));
+
+        if (nonNull(cursor)) {
+            while (cursor.moveToNext()) {
+                if (cancelable.isOperationCancelled()) {
+                    break;
+                }
+
+                int attachTo = cursor.getInt(0);
+
+                List<Entity> entities = result.get(attachTo);
+                if (entities == null) {
+                    entities = new ArrayList<>(1);
+                    result.put(attachTo, entities);
+                }
+
+                entities.add(deserializeDbo(cursor, 1, 2));
+            }
+
+            cursor.close();
+        }
+
+        return result;
+    }
+
     @Override
     public Completable remove(int accountId, @AttachToType int attachToType, int attachToDbid, int generatedAttachmentId) {
         return Completable.create(e -> {
@@ -6,17 +6,22 @@ import android.database.Cursor;
 import android.net.Uri;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import androidx.annotation.NonNull;
 import biz.dealnote.messenger.db.MessengerContentProvider;
 import biz.dealnote.messenger.db.column.CountriesColumns;
 import biz.dealnote.messenger.db.interfaces.IDatabaseStore;
+import biz.dealnote.messenger.db.model.MessagePatch;
+import biz.dealnote.messenger.db.model.PeerPatch;
+import biz.dealnote.messenger.db.model.UserPatch;
 import biz.dealnote.messenger.db.model.entity.CountryEntity;
 import biz.dealnote.messenger.util.Objects;
 import io.reactivex.Completable;
 import io.reactivex.Single;
 
+import static biz.dealnote.messenger.util.Utils.nonEmpty;
 import static biz.dealnote.messenger.util.Utils.safeCountOf;
 
 /**
@@ -52,6 +57,22 @@ public class DatabaseStorage extends AbsStorage implements IDatabaseStore {
         });
     }
 
+    @Override
+    public Completable applyPatches(int accountId, @NonNull Collection<MessagePatch> messagePatches,
+                                    @NonNull Collection<PeerPatch> peerPatches, @NonNull Collection<UserPatch> userPatches) {
+        return Completable.create(emitter -> {
+            ArrayList<ContentProviderOperation> operations = MessagesStorage.createPatchOperations(accountId, messagePatches);
+            operations.addAll(DialogsStorage.createPatchOperations(accountId, peerPatches));
+            operations.addAll(OwnersStorage.createPatchOperations(accountId, userPatches));
+
+            if (nonEmpty(operations)) {
+                getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, operations);
+            }
+
+            emitter.onComplete();
+        });
+    }
+
     @Override
     public Single<List<CountryEntity>> getCountries(int accountId) {
         return Single.create(emitter -> {
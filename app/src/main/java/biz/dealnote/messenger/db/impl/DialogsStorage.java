@@ -82,18 +82,20 @@ class DialogsStorage extends AbsStorage implements IDialogsStorage {
 
             Uri uri = MessengerContentProvider.getDialogsContentUriFor(criteria.getAccountId());
 
-            Cursor cursor = getContext().getContentResolver().query(uri, null, null,
+            Cursor cursor = getContext().getContentResolver().query(uri, DIALOG.columns(), null,
                     null, DialogsColumns.LAST_MESSAGE_ID + " DESC");
 
             List<DialogEntity> dbos = new ArrayList<>(safeCountOf(cursor));
 
             if (nonNull(cursor)) {
+                Projection.Row row = DIALOG.bind(cursor);
+
                 while (cursor.moveToNext()) {
                     if (e.isDisposed()) {
                         break;
                     }
 
-                    dbos.add(mapEntity(cursor));
+                    dbos.add(mapEntity(row));
                 }
 
                 cursor.close();
@@ -327,67 +329,73 @@ class DialogsStorage extends AbsStorage implements IDialogsStorage {
     @Override
     public Completable applyPatches(int accountId, @NonNull List<PeerPatch> patches) {
         return Completable.create(emitter -> {
-            Uri dialogsUri = MessengerContentProvider.getDialogsContentUriFor(accountId);
-            Uri peersUri = MessengerContentProvider.getPeersContentUriFor(accountId);
+            ArrayList<ContentProviderOperation> operations = createPatchOperations(accountId, patches);
 
-            ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size() * 2);
+            if (nonEmpty(operations)) {
+                getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, operations);
+            }
 
-            for (PeerPatch patch : patches) {
-                ContentValues dialogscv = new ContentValues();
-                ContentValues peerscv = new ContentValues();
+            emitter.onComplete();
+        });
+    }
 
-                if (nonNull(patch.getInRead())) {
-                    dialogscv.put(DialogsColumns.IN_READ, patch.getInRead().getId());
-                    peerscv.put(PeersColumns.IN_READ, patch.getInRead().getId());
-                }
+    static ArrayList<ContentProviderOperation> createPatchOperations(int accountId, @NonNull Collection<PeerPatch> patches) {
+        Uri dialogsUri = MessengerContentProvider.getDialogsContentUriFor(accountId);
+        Uri peersUri = MessengerContentProvider.getPeersContentUriFor(accountId);
 
-                if (nonNull(patch.getUnread())) {
-                    dialogscv.put(DialogsColumns.UNREAD, patch.getUnread().getCount());
-                    peerscv.put(PeersColumns.UNREAD, patch.getUnread().getCount());
-                }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size() * 2);
 
-                if (nonNull(patch.getOutRead())) {
-                    dialogscv.put(DialogsColumns.OUT_READ, patch.getOutRead().getId());
-                    peerscv.put(PeersColumns.OUT_READ, patch.getOutRead().getId());
-                }
+        for (PeerPatch patch : patches) {
+            ContentValues dialogscv = new ContentValues();
+            ContentValues peerscv = new ContentValues();
 
-                if (nonNull(patch.getLastMessage())) {
-                    dialogscv.put(DialogsColumns.LAST_MESSAGE_ID, patch.getLastMessage().getId());
-                    peerscv.put(PeersColumns.LAST_MESSAGE_ID, patch.getLastMessage().getId());
-                }
+            if (nonNull(patch.getInRead())) {
+                dialogscv.put(DialogsColumns.IN_READ, patch.getInRead().getId());
+                peerscv.put(PeersColumns.IN_READ, patch.getInRead().getId());
+            }
 
-                if (nonNull(patch.getPin())) {
-                    peerscv.put(PeersColumns.PINNED, serializeJson(patch.getPin().getPinned()));
-                }
+            if (nonNull(patch.getUnread())) {
+                dialogscv.put(DialogsColumns.UNREAD, patch.getUnread().getCount());
+                peerscv.put(PeersColumns.UNREAD, patch.getUnread().getCount());
+            }
 
-                if (nonNull(patch.getTitle())) {
-                    peerscv.put(PeersColumns.TITLE, patch.getTitle().getTitle());
-                    dialogscv.put(DialogsColumns.TITLE, patch.getTitle().getTitle());
-                }
+            if (nonNull(patch.getOutRead())) {
+                dialogscv.put(DialogsColumns.OUT_READ, patch.getOutRead().getId());
+                peerscv.put(PeersColumns.OUT_READ, patch.getOutRead().getId());
+            }
 
-                String[] args = {String.valueOf(patch.getId())};
+            if (nonNull(patch.getLastMessage())) {
+                dialogscv.put(DialogsColumns.LAST_MESSAGE_ID, patch.getLastMessage().getId());
+                peerscv.put(PeersColumns.LAST_MESSAGE_ID, patch.getLastMessage().getId());
+            }
 
-                if (dialogscv.size() > 0) {
-                    operations.add(ContentProviderOperation.newUpdate(dialogsUri)
-                            .withSelection(DialogsColumns._ID + " = ?", args)
-                            .withValues(dialogscv)
-                            .build());
-                }
+            if (nonNull(patch.getPin())) {
+                peerscv.put(PeersColumns.PINNED, serializeJson(patch.getPin().getPinned()));
+            }
 
-                if (peerscv.size() > 0) {
-                    operations.add(ContentProviderOperation.newUpdate(peersUri)
-                            .withSelection(PeersColumns._ID + " = ?", args)
-                            .withValues(peerscv)
-                            .build());
-                }
+            if (nonNull(patch.getTitle())) {
+                peerscv.put(PeersColumns.TITLE, patch.getTitle().getTitle());
+                dialogscv.put(DialogsColumns.TITLE, patch.getTitle().getTitle());
             }
 
-            if (nonEmpty(operations)) {
-                getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, operations);
+            String[] args = {String.valueOf(patch.getId())};
+
+            if (dialogscv.size() > 0) {
+                operations.add(ContentProviderOperation.newUpdate(dialogsUri)
+                        .withSelection(DialogsColumns._ID + " = ?", args)
+                        .withValues(dialogscv)
+                        .build());
             }
 
-            emitter.onComplete();
-        });
+            if (peerscv.size() > 0) {
+                operations.add(ContentProviderOperation.newUpdate(peersUri)
+                        .withSelection(PeersColumns._ID + " = ?", args)
+                        .withValues(peerscv)
+                        .build());
+            }
+        }
+
+        return operations;
     }
 
     @Override
@@ -421,36 +429,56 @@ class DialogsStorage extends AbsStorage implements IDialogsStorage {
         });
     }
 
-    private DialogEntity mapEntity(@NonNull Cursor cursor) {
+    private static final Projection DIALOG = new Projection();
+    private static final int DIALOG_ID = DIALOG.add(DialogsColumns._ID);
+    private static final int DIALOG_LAST_MESSAGE_ID = DIALOG.add(DialogsColumns.LAST_MESSAGE_ID);
+    private static final int DIALOG_MESSAGE_ACTION = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_ACTION);
+    private static final int DIALOG_MESSAGE_ENCRYPTED = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_ENCRYPTED);
+    private static final int DIALOG_MESSAGE_FROM_ID = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_FROM_ID);
+    private static final int DIALOG_MESSAGE_BODY = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_BODY);
+    private static final int DIALOG_MESSAGE_DATE = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_DATE);
+    private static final int DIALOG_MESSAGE_OUT = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_OUT);
+    private static final int DIALOG_MESSAGE_HAS_ATTACHMENTS = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_HAS_ATTACHMENTS);
+    private static final int DIALOG_MESSAGE_FWD_COUNT = DIALOG.add(DialogsColumns.FOREIGN_MESSAGE_FWD_COUNT);
+    private static final int DIALOG_IN_READ = DIALOG.add(DialogsColumns.IN_READ);
+    private static final int DIALOG_OUT_READ = DIALOG.add(DialogsColumns.OUT_READ);
+    private static final int DIALOG_TITLE = DIALOG.add(DialogsColumns.TITLE);
+    private static final int DIALOG_PHOTO_50 = DIALOG.add(DialogsColumns.PHOTO_50);
+    private static final int DIALOG_PHOTO_100 = DIALOG.add(DialogsColumns.PHOTO_100);
+    private static final int DIALOG_PHOTO_200 = DIALOG.add(DialogsColumns.PHOTO_200);
+    private static final int DIALOG_UNREAD = DIALOG.add(DialogsColumns.UNREAD);
+    private static final int DIALOG_ACL = DIALOG.add(DialogsColumns.ACL);
+
+    private static DialogEntity mapEntity(@NonNull Projection.Row row) {
         @ChatAction
-        int action = cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_ACTION));
+        int action = row.getInt(DIALOG_MESSAGE_ACTION);
 
-        boolean encrypted = cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_ENCRYPTED)) == 1;
+        boolean encrypted = row.getBoolean(DIALOG_MESSAGE_ENCRYPTED);
 
-        int messageId = cursor.getInt(cursor.getColumnIndex(DialogsColumns.LAST_MESSAGE_ID));
-        int peerId = cursor.getInt(cursor.getColumnIndex(DialogsColumns._ID));
-        int fromId = cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_FROM_ID));
+        int messageId = row.getInt(DIALOG_LAST_MESSAGE_ID);
+        int peerId = row.getInt(DIALOG_ID);
+        int fromId = row.getInt(DIALOG_MESSAGE_FROM_ID);
 
         MessageEntity message = new MessageEntity(messageId, peerId, fromId)
-                .setBody(cursor.getString(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_BODY)))
-                .setDate(cursor.getLong(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_DATE)))
-                .setOut(cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_OUT)) == 1)
-                .setHasAttachmens(cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_HAS_ATTACHMENTS)) == 1)
-                .setForwardCount(cursor.getInt(cursor.getColumnIndex(DialogsColumns.FOREIGN_MESSAGE_FWD_COUNT)))
+                .setBody(row.getString(DIALOG_MESSAGE_BODY))
+                .setDate(row.getLong(DIALOG_MESSAGE_DATE))
+                .setOut(row.getBoolean(DIALOG_MESSAGE_OUT))
+                .setHasAttachmens(row.getBoolean(DIALOG_MESSAGE_HAS_ATTACHMENTS))
+                .setForwardCount(row.getInt(DIALOG_MESSAGE_FWD_COUNT))
                 .setAction(action)
                 .setEncrypted(encrypted);
 
         return new DialogEntity(peerId)
                 .setMessage(message)
-                .setInRead(cursor.getInt(cursor.getColumnIndex(DialogsColumns.IN_READ)))
-                .setOutRead(cursor.getInt(cursor.getColumnIndex(DialogsColumns.OUT_READ)))
-                .setTitle(cursor.getString(cursor.getColumnIndex(DialogsColumns.TITLE)))
-                .setPhoto50(cursor.getString(cursor.getColumnIndex(DialogsColumns.PHOTO_50)))
-                .setPhoto100(cursor.getString(cursor.getColumnIndex(DialogsColumns.PHOTO_100)))
-                .setPhoto200(cursor.getString(cursor.getColumnIndex(DialogsColumns.PHOTO_200)))
-                .setUnreadCount(cursor.getInt(cursor.getColumnIndex(DialogsColumns.UNREAD)))
-                .setLastMessageId(cursor.getInt(cursor.getColumnIndex(DialogsColumns.LAST_MESSAGE_ID)))
-                .setAcl(cursor.getInt(cursor.getColumnIndex(DialogsColumns.ACL)))
-                .setGroupChannel(cursor.getInt(cursor.getColumnIndex(DialogsColumns.LAST_MESSAGE_ID)) == 1);
+                .setInRead(row.getInt(DIALOG_IN_READ))
+                .setOutRead(row.getInt(DIALOG_OUT_READ))
+                .setTitle(row.getString(DIALOG_TITLE))
+                .setPhoto50(row.getString(DIALOG_PHOTO_50))
+                .setPhoto100(row.getString(DIALOG_PHOTO_100))
+                .setPhoto200(row.getString(DIALOG_PHOTO_200))
+                .setUnreadCount(row.getInt(DIALOG_UNREAD))
+                .setLastMessageId(messageId)
+                .setAcl(row.getInt(DIALOG_ACL))
+                .setGroupChannel(messageId == 1);
     }
-}
\ No newline at end of file
+}
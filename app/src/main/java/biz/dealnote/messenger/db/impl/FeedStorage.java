@@ -18,7 +18,6 @@ import biz.dealnote.messenger.db.MessengerContentProvider;
 import biz.dealnote.messenger.db.column.FeedListsColumns;
 import biz.dealnote.messenger.db.column.NewsColumns;
 import biz.dealnote.messenger.db.interfaces.IFeedStorage;
-import biz.dealnote.messenger.db.model.entity.AttachmentsEntity;
 import biz.dealnote.messenger.db.model.entity.Entity;
 import biz.dealnote.messenger.db.model.entity.FeedListEntity;
 import biz.dealnote.messenger.db.model.entity.NewsEntity;
@@ -52,20 +51,22 @@ class FeedStorage extends AbsStorage implements IFeedStorage {
                 Cursor cursor;
                 if (criteria.getRange() != null) {
                     DatabaseIdRange range = criteria.getRange();
-                    cursor = getContext().getContentResolver().query(uri, null,
+                    cursor = getContext().getContentResolver().query(uri, NEWS.columns(),
                             NewsColumns._ID + " >= ? AND " + NewsColumns._ID + " <= ?",
                             new String[]{String.valueOf(range.getFirst()), String.valueOf(range.getLast())}, null);
                 } else {
-                    cursor = getContext().getContentResolver().query(uri, null, null, null, null);
+                    cursor = getContext().getContentResolver().query(uri, NEWS.columns(), null, null, null);
                 }
 
                 if (nonNull(cursor)) {
+                    Projection.Row row = NEWS.bind(cursor);
+
                     while (cursor.moveToNext()) {
                         if (e.isDisposed()) {
                             break;
                         }
 
-                        data.add(mapNewsBase(cursor));
+                        data.add(mapNewsBase(row));
                     }
 
                     cursor.close();
@@ -165,8 +166,7 @@ class FeedStorage extends AbsStorage implements IFeedStorage {
             }
 
             if (nonEmpty(attachmentsEntities)) {
-                AttachmentsEntity attachmentsEntity = new AttachmentsEntity(attachmentsEntities);
-                cv.put(NewsColumns.ATTACHMENTS_JSON, GSON.toJson(attachmentsEntity));
+                cv.put(NewsColumns.ATTACHMENTS_JSON, ATTACHMENTS_CODEC.encodeList(attachmentsEntities));
             } else {
                 cv.putNull(NewsColumns.ATTACHMENTS_JSON);
             }
@@ -256,8 +256,33 @@ class FeedStorage extends AbsStorage implements IFeedStorage {
                 .build());
     }*/
 
-    private NewsEntity mapNewsBase(Cursor cursor) {
-        String friendString = cursor.getString(cursor.getColumnIndex(NewsColumns.TAG_FRIENDS));
+    private static final Projection NEWS = new Projection();
+    private static final int NEWS_TAG_FRIENDS = NEWS.add(NewsColumns.TAG_FRIENDS);
+    private static final int NEWS_TYPE = NEWS.add(NewsColumns.TYPE);
+    private static final int NEWS_SOURCE_ID = NEWS.add(NewsColumns.SOURCE_ID);
+    private static final int NEWS_DATE = NEWS.add(NewsColumns.DATE);
+    private static final int NEWS_POST_ID = NEWS.add(NewsColumns.POST_ID);
+    private static final int NEWS_POST_TYPE = NEWS.add(NewsColumns.POST_TYPE);
+    private static final int NEWS_FINAL_POST = NEWS.add(NewsColumns.FINAL_POST);
+    private static final int NEWS_COPY_OWNER_ID = NEWS.add(NewsColumns.COPY_OWNER_ID);
+    private static final int NEWS_COPY_POST_ID = NEWS.add(NewsColumns.COPY_POST_ID);
+    private static final int NEWS_COPY_POST_DATE = NEWS.add(NewsColumns.COPY_POST_DATE);
+    private static final int NEWS_TEXT = NEWS.add(NewsColumns.TEXT);
+    private static final int NEWS_CAN_EDIT = NEWS.add(NewsColumns.CAN_EDIT);
+    private static final int NEWS_CAN_DELETE = NEWS.add(NewsColumns.CAN_DELETE);
+    private static final int NEWS_COMMENT_COUNT = NEWS.add(NewsColumns.COMMENT_COUNT);
+    private static final int NEWS_COMMENT_CAN_POST = NEWS.add(NewsColumns.COMMENT_CAN_POST);
+    private static final int NEWS_LIKE_COUNT = NEWS.add(NewsColumns.LIKE_COUNT);
+    private static final int NEWS_USER_LIKE = NEWS.add(NewsColumns.USER_LIKE);
+    private static final int NEWS_CAN_LIKE = NEWS.add(NewsColumns.CAN_LIKE);
+    private static final int NEWS_CAN_PUBLISH = NEWS.add(NewsColumns.CAN_PUBLISH);
+    private static final int NEWS_REPOSTS_COUNT = NEWS.add(NewsColumns.REPOSTS_COUNT);
+    private static final int NEWS_USER_REPOSTED = NEWS.add(NewsColumns.USER_REPOSTED);
+    private static final int NEWS_VIEWS = NEWS.add(NewsColumns.VIEWS);
+    private static final int NEWS_ATTACHMENTS_JSON = NEWS.add(NewsColumns.ATTACHMENTS_JSON);
+
+    private NewsEntity mapNewsBase(Projection.Row row) {
+        String friendString = row.getString(NEWS_TAG_FRIENDS);
 
         ArrayList<String> friends = null;
         if (nonEmpty(friendString)) {
@@ -267,35 +292,41 @@ class FeedStorage extends AbsStorage implements IFeedStorage {
 
         NewsEntity dbo = new NewsEntity()
                 .setFriendsTags(friends)
-                .setType(cursor.getString(cursor.getColumnIndex(NewsColumns.TYPE)))
-                .setSourceId(cursor.getInt(cursor.getColumnIndex(NewsColumns.SOURCE_ID)))
-                .setDate(cursor.getLong(cursor.getColumnIndex(NewsColumns.DATE)))
-                .setPostId(cursor.getInt(cursor.getColumnIndex(NewsColumns.POST_ID)))
-                .setPostType(cursor.getString(cursor.getColumnIndex(NewsColumns.POST_TYPE)))
-                .setFinalPost(cursor.getInt(cursor.getColumnIndex(NewsColumns.FINAL_POST)) == 1)
-                .setCopyOwnerId(cursor.getInt(cursor.getColumnIndex(NewsColumns.COPY_OWNER_ID)))
-                .setCopyPostId(cursor.getInt(cursor.getColumnIndex(NewsColumns.COPY_POST_ID)))
-                .setCopyPostDate(cursor.getLong(cursor.getColumnIndex(NewsColumns.COPY_POST_DATE)))
-                .setText(cursor.getString(cursor.getColumnIndex(NewsColumns.TEXT)))
-                .setCanEdit(cursor.getInt(cursor.getColumnIndex(NewsColumns.CAN_EDIT)) == 1)
-                .setCanDelete(cursor.getInt(cursor.getColumnIndex(NewsColumns.CAN_DELETE)) == 1)
-                .setCommentCount(cursor.getInt(cursor.getColumnIndex(NewsColumns.COMMENT_COUNT)))
-                .setCanPostComment(cursor.getInt(cursor.getColumnIndex(NewsColumns.COMMENT_CAN_POST)) == 1)
-                .setLikesCount(cursor.getInt(cursor.getColumnIndex(NewsColumns.LIKE_COUNT)))
-                .setUserLikes(cursor.getInt(cursor.getColumnIndex(NewsColumns.USER_LIKE)) == 1)
-                .setCanLike(cursor.getInt(cursor.getColumnIndex(NewsColumns.CAN_LIKE)) == 1)
-                .setCanPublish(cursor.getInt(cursor.getColumnIndex(NewsColumns.CAN_PUBLISH)) == 1)
-                .setRepostCount(cursor.getInt(cursor.getColumnIndex(NewsColumns.REPOSTS_COUNT)))
-                .setUserReposted(cursor.getInt(cursor.getColumnIndex(NewsColumns.USER_REPOSTED)) == 1)
-                .setViews(cursor.getInt(cursor.getColumnIndex(NewsColumns.VIEWS)));
-
-        String attachmentsJson = cursor.getString(cursor.getColumnIndex(NewsColumns.ATTACHMENTS_JSON));
-
-        if (nonEmpty(attachmentsJson)) {
-            AttachmentsEntity attachmentsEntity = GSON.fromJson(attachmentsJson, AttachmentsEntity.class);
-
-            List<Entity> all = attachmentsEntity.getEntities();
+                .setType(row.getString(NEWS_TYPE))
+                .setSourceId(row.getInt(NEWS_SOURCE_ID))
+                .setDate(row.getLong(NEWS_DATE))
+                .setPostId(row.getInt(NEWS_POST_ID))
+                .setPostType(row.getString(NEWS_POST_TYPE))
+                .setFinalPost(row.getBoolean(NEWS_FINAL_POST))
+                .setCopyOwnerId(row.getInt(NEWS_COPY_OWNER_ID))
+                .setCopyPostId(row.getInt(NEWS_COPY_POST_ID))
+                .setCopyPostDate(row.getLong(NEWS_COPY_POST_DATE))
+                .setText(row.getString(NEWS_TEXT))
+                .setCanEdit(row.getBoolean(NEWS_CAN_EDIT))
+                .setCanDelete(row.getBoolean(NEWS_CAN_DELETE))
+                .setCommentCount(row.getInt(NEWS_COMMENT_COUNT))
+                .setCanPostComment(row.getBoolean(NEWS_COMMENT_CAN_POST))
+                .setLikesCount(row.getInt(NEWS_LIKE_COUNT))
+                .setUserLikes(row.getBoolean(NEWS_USER_LIKE))
+                .setCanLike(row.getBoolean(NEWS_CAN_LIKE))
+                .setCanPublish(row.getBoolean(NEWS_CAN_PUBLISH))
+                .setRepostCount(row.getInt(NEWS_REPOSTS_COUNT))
+                .setUserReposted(row.getBoolean(NEWS_USER_REPOSTED))
+                .setViews(row.getInt(NEWS_VIEWS));
+
+        List<Entity> all = null;
+
+        // новости, сохраненные до перехода на бинарный формат, лежат текстом JSON
+        if (row.getType(NEWS_ATTACHMENTS_JSON) == Cursor.FIELD_TYPE_BLOB) {
+            all = ATTACHMENTS_CODEC.decodeList(row.getBlob(NEWS_ATTACHMENTS_JSON));
+        } else {
+            String attachmentsJson = row.getString(NEWS_ATTACHMENTS_JSON);
+            if (nonEmpty(attachmentsJson)) {
+                all = ATTACHMENTS_CODEC.decodeJsonList(attachmentsJson);
+            }
+        }
 
+        if (nonEmpty(all)) {
             List<Entity> attachmentsOnly = new ArrayList<>(all.size());
             List<PostEntity> copiesOnly = new ArrayList<>(0);
 
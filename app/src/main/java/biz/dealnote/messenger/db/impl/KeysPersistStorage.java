@@ -3,11 +3,17 @@ package biz.dealnote.messenger.db.impl;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import androidx.annotation.NonNull;
+import biz.dealnote.messenger.crypt.AESCrypt;
 import biz.dealnote.messenger.crypt.AesKeyPair;
 import biz.dealnote.messenger.db.MessengerContentProvider;
 import biz.dealnote.messenger.db.column.KeyColumns;
@@ -19,6 +25,7 @@ import io.reactivex.Completable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
 
+import static biz.dealnote.messenger.util.Objects.isNull;
 import static biz.dealnote.messenger.util.Objects.nonNull;
 
 /**
@@ -27,10 +34,36 @@ import static biz.dealnote.messenger.util.Objects.nonNull;
  */
 class KeysPersistStorage extends AbsStorage implements IKeysStorage {
 
+    /**
+     * Уже прочитанные пары ключей по аккаунтам и ID сессий.
+     * Сохраненная пара больше не меняется, поэтому кэш (и ключи в {@link AESCrypt}) сбрасывается только в {@link #deleteAll(int)}
+     * и {@link #onAccountRemoved(int)}
+     */
+    private final SparseArray<LongSparseArray<AesKeyPair>> sessionKeys = new SparseArray<>();
+
     KeysPersistStorage(@NonNull AppStorages context) {
         super(context);
     }
 
+    private AesKeyPair getCached(int accountId, long sessionId) {
+        synchronized (sessionKeys) {
+            LongSparseArray<AesKeyPair> keys = sessionKeys.get(accountId);
+            return isNull(keys) ? null : keys.get(sessionId);
+        }
+    }
+
+    private void putToCache(int accountId, AesKeyPair pair) {
+        synchronized (sessionKeys) {
+            LongSparseArray<AesKeyPair> keys = sessionKeys.get(accountId);
+            if (isNull(keys)) {
+                keys = new LongSparseArray<>();
+                sessionKeys.put(accountId, keys);
+            }
+
+            keys.put(pair.getSessionId(), pair);
+        }
+    }
+
     private AesKeyPair map(Cursor cursor){
         return new AesKeyPair()
                 .setVersion(cursor.getInt(cursor.getColumnIndex(KeyColumns.VERSION)))
@@ -67,6 +100,7 @@ class KeysPersistStorage extends AbsStorage implements IKeysStorage {
             Uri uri = MessengerContentProvider.getKeysContentUriFor(pair.getAccountId());
             getContext().getContentResolver().insert(uri, cv);
 
+            putToCache(pair.getAccountId(), pair);
             e.onComplete();
         });
     }
@@ -141,18 +175,22 @@ class KeysPersistStorage extends AbsStorage implements IKeysStorage {
     @Override
     public Maybe<AesKeyPair> findKeyPairFor(int accountId, long sessionId) {
         return Maybe.create(e -> {
-            Uri uri = MessengerContentProvider.getKeysContentUriFor(accountId);
-            Cursor cursor = getContext().getContentResolver()
-                    .query(uri, null, KeyColumns.SESSION_ID + " = ?",
-                            new String[]{String.valueOf(sessionId)}, null);
+            AesKeyPair pair = getCached(accountId, sessionId);
+
+            if (isNull(pair)) {
+                Uri uri = MessengerContentProvider.getKeysContentUriFor(accountId);
+                Cursor cursor = getContext().getContentResolver()
+                        .query(uri, null, KeyColumns.SESSION_ID + " = ?",
+                                new String[]{String.valueOf(sessionId)}, null);
+
+                if(nonNull(cursor)){
+                    if(cursor.moveToNext()){
+                        pair = map(cursor).setAccountId(accountId);
+                        putToCache(accountId, pair);
+                    }
 
-            AesKeyPair pair = null;
-            if(nonNull(cursor)){
-                if(cursor.moveToNext()){
-                    pair = map(cursor).setAccountId(accountId);
+                    cursor.close();
                 }
-
-                cursor.close();
             }
 
             if(nonNull(pair)){
@@ -163,13 +201,58 @@ class KeysPersistStorage extends AbsStorage implements IKeysStorage {
         });
     }
 
+    @Override
+    public Single<List<AesKeyPair>> findKeyPairsFor(int accountId, @NonNull Collection<Long> sessionIds) {
+        return Single.create(e -> {
+            List<AesKeyPair> pairs = new ArrayList<>(sessionIds.size());
+            Set<Long> missing = new HashSet<>(0);
+
+            for (long sessionId : sessionIds) {
+                AesKeyPair pair = getCached(accountId, sessionId);
+                if (nonNull(pair)) {
+                    pairs.add(pair);
+                } else {
+                    missing.add(sessionId);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                Uri uri = MessengerContentProvider.getKeysContentUriFor(accountId);
+                Cursor cursor = getContext().getContentResolver()
+                        .query(uri, null, KeyColumns.SESSION_ID + " IN (" + Utils.join(",", missing) + ")", null, null);
+
+                if(nonNull(cursor)){
+                    while (cursor.moveToNext()){
+                        AesKeyPair pair = map(cursor).setAccountId(accountId);
+                        putToCache(accountId, pair);
+                        pairs.add(pair);
+                    }
+
+                    cursor.close();
+                }
+            }
+
+            e.onSuccess(pairs);
+        });
+    }
 
     @Override
     public Completable deleteAll(int accountId) {
         return Completable.create(e -> {
             Uri uri = MessengerContentProvider.getKeysContentUriFor(accountId);
             getContext().getContentResolver().delete(uri, null, null);
+
+            onAccountRemoved(accountId);
             e.onComplete();
         });
     }
+
+    @Override
+    public void onAccountRemoved(int accountId) {
+        synchronized (sessionKeys) {
+            sessionKeys.remove(accountId);
+        }
+
+        AESCrypt.clearKeysCache();
+    }
 }
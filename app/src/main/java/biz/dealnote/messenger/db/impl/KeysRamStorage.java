@@ -3,10 +3,12 @@ package biz.dealnote.messenger.db.impl;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import androidx.annotation.NonNull;
+import biz.dealnote.messenger.crypt.AESCrypt;
 import biz.dealnote.messenger.crypt.AesKeyPair;
 import biz.dealnote.messenger.db.interfaces.IKeysStorage;
 import biz.dealnote.messenger.db.interfaces.IStorages;
@@ -113,14 +115,38 @@ class KeysRamStorage implements IKeysStorage {
         });
     }
 
+    @Override
+    public Single<List<AesKeyPair>> findKeyPairsFor(int accountId, @NonNull Collection<Long> sessionIds) {
+        return Single.create(e -> {
+            List<AesKeyPair> pairs = mData.get(accountId);
+            List<AesKeyPair> result = new ArrayList<>(sessionIds.size());
+            if (Objects.nonNull(pairs)) {
+                for (AesKeyPair pair : pairs) {
+                    if (sessionIds.contains(pair.getSessionId())) {
+                        result.add(pair);
+                    }
+                }
+            }
+
+            e.onSuccess(result);
+        });
+    }
+
     @Override
     public Completable deleteAll(int accountId) {
         return Completable.create(e -> {
             mData.remove(accountId);
+            AESCrypt.clearKeysCache();
             e.onComplete();
         });
     }
 
+    @Override
+    public void onAccountRemoved(int accountId) {
+        mData.remove(accountId);
+        AESCrypt.clearKeysCache();
+    }
+
     @Override
     public IStorages getStores() {
         throw new UnsupportedOperationException();
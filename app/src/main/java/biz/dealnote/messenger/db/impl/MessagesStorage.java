@@ -1,10 +1,14 @@
 package biz.dealnote.messenger.db.impl;
 
+import android.annotation.SuppressLint;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.text.TextUtils;
 
@@ -17,14 +21,17 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import biz.dealnote.messenger.db.AttachToType;
+import biz.dealnote.messenger.db.DBHelper;
 import biz.dealnote.messenger.db.MessengerContentProvider;
 import biz.dealnote.messenger.db.RecordNotFoundException;
 import biz.dealnote.messenger.db.column.MessageColumns;
+import biz.dealnote.messenger.db.column.MessagesSearchColumns;
 import biz.dealnote.messenger.db.interfaces.Cancelable;
 import biz.dealnote.messenger.db.interfaces.IMessagesStorage;
 import biz.dealnote.messenger.db.model.MessageEditEntity;
@@ -57,8 +64,23 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
 
     private static final String ORDER_BY = MessageColumns.FULL_STATUS + ", " + MessageColumns.FULL_ID;
 
+    /**
+     * Сколько уже сохраненных сообщений индексируется за один запрос
+     */
+    private static final int SEARCH_INDEX_CHUNK = 1000;
+
+    private final SharedPreferences searchPreferences;
+
     MessagesStorage(@NonNull AppStorages base) {
         super(base);
+        this.searchPreferences = base.getSharedPreferences("messages_search_prefs", Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Ключ, по которому хранится граница индексации: все сообщения с _id меньше нее еще не проиндексированы
+     */
+    private static String searchIndexBoundKeyFor(int accountId) {
+        return "index_bound" + accountId;
     }
 
     static int appendDboOperation(int accountId, @NonNull MessageEntity dbo, @NonNull List<ContentProviderOperation> target, Integer attachToId, Integer attachToIndex) {
@@ -239,7 +261,7 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
         }
 
         Uri uri = MessengerContentProvider.getMessageContentUriFor(criteria.getAccountId());
-        return getContext().getContentResolver().query(uri, null, where, args, ORDER_BY);
+        return getContext().getContentResolver().query(uri, MESSAGE.columns(), where, args, ORDER_BY);
     }
 
     @Override
@@ -253,12 +275,14 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
 
             ArrayList<MessageEntity> dbos = new ArrayList<>(safeCountOf(cursor));
             if (nonNull(cursor)) {
+                Projection.Row row = MESSAGE.bind(cursor);
+
                 while (cursor.moveToNext()) {
                     if (emitter.isDisposed()) {
                         break;
                     }
 
-                    MessageEntity dbo = fullMapDbo(criteria.getAccountId(), cursor, withAtatchments, withForwardMessages, cancelable);
+                    MessageEntity dbo = baseMapDbo(row);
 
                     int position = dbos.size() - cursor.getPosition();
                     dbos.add(position, dbo);
@@ -267,11 +291,140 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
                 cursor.close();
             }
 
-            Exestime.log("MessagesStorage.getByCriteria", start, "count: " + dbos.size());
+            int queries = 1 + fillAttachmentsAndForwards(criteria.getAccountId(), dbos, withAtatchments, withForwardMessages, cancelable);
+
+            Exestime.log("MessagesStorage.getByCriteria", start, "count: " + dbos.size(), "queries: " + queries);
             emitter.onSuccess(dbos);
         });
     }
 
+    @Override
+    public Single<List<MessageEntity>> search(int accountId, @Nullable Integer peerId, @NonNull String query, int count, int offset) {
+        return Single.create(emitter -> {
+            final long start = System.currentTimeMillis();
+
+            String match = toMatchExpression(query);
+            if (isNull(match)) {
+                emitter.onSuccess(Collections.emptyList());
+                return;
+            }
+
+            Cancelable cancelable = emitter::isDisposed;
+
+            String sql = "SELECT " + MessageColumns.TABLENAME + ".* FROM " + MessagesSearchColumns.TABLENAME +
+                    " JOIN " + MessageColumns.TABLENAME + " ON " + MessageColumns.FULL_ID + " = " + MessagesSearchColumns.FULL_DOCID +
+                    " WHERE " + MessagesSearchColumns.TABLENAME + " MATCH ?" +
+                    " AND " + MessageColumns.FULL_STATUS + " = ?" +
+                    " AND " + MessageColumns.FULL_DELETED + " = 0" +
+                    (nonNull(peerId) ? " AND " + MessageColumns.FULL_PEER_ID + " = ?" : "") +
+                    " ORDER BY " + MessageColumns.FULL_ID + " DESC" +
+                    " LIMIT " + count + " OFFSET " + offset;
+
+            String[] args = nonNull(peerId)
+                    ? new String[]{match, String.valueOf(MessageStatus.SENT), String.valueOf(peerId)}
+                    : new String[]{match, String.valueOf(MessageStatus.SENT)};
+
+            Cursor cursor = helper(accountId).getReadableDatabase().rawQuery(sql, args);
+
+            ArrayList<MessageEntity> dbos = new ArrayList<>(safeCountOf(cursor));
+            if (nonNull(cursor)) {
+                Projection.Row row = MESSAGE.bind(cursor);
+
+                while (cursor.moveToNext()) {
+                    if (emitter.isDisposed()) {
+                        break;
+                    }
+
+                    dbos.add(baseMapDbo(row));
+                }
+
+                cursor.close();
+            }
+
+            int queries = 1 + fillAttachmentsAndForwards(accountId, dbos, true, true, cancelable);
+
+            Exestime.log("MessagesStorage.search", start, "count: " + dbos.size(), "queries: " + queries);
+            emitter.onSuccess(dbos);
+        });
+    }
+
+    /**
+     * Каждое слово запроса ищется как префикс, слова объединяются через И.
+     * Слова берутся в кавычки, чтобы символы из запроса не разбирались как операторы FTS,
+     * звездочка должна стоять внутри кавычек ("слово*"), иначе поиск по префиксу не работает.
+     * Кавычки из самого запроса удаляются
+     *
+     * @return null, если в запросе нет ни одного слова
+     */
+    @Nullable
+    private static String toMatchExpression(@NonNull String query) {
+        StringBuilder expression = new StringBuilder();
+
+        for (String word : query.trim().split("\\s+")) {
+            String token = word.replace("\"", "");
+            if (token.isEmpty()) {
+                continue;
+            }
+
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+
+            expression.append('"').append(token).append("*\"");
+        }
+
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    @Override
+    public Completable indexForSearch(int accountId) {
+        return Completable.create(emitter -> {
+            final long start = System.currentTimeMillis();
+
+            final String key = searchIndexBoundKeyFor(accountId);
+            final SQLiteDatabase db = helper(accountId).getWritableDatabase();
+
+            int bound = searchPreferences.getInt(key, Integer.MAX_VALUE);
+            int indexed = 0;
+
+            String chunkSql = "SELECT MIN(" + MessageColumns._ID + "), COUNT(*) FROM (" +
+                    "SELECT " + MessageColumns._ID + " FROM " + MessageColumns.TABLENAME +
+                    " WHERE " + MessageColumns._ID + " > 0 AND " + MessageColumns._ID + " < ?" +
+                    " ORDER BY " + MessageColumns._ID + " DESC LIMIT " + SEARCH_INDEX_CHUNK + ")";
+
+            String insertSql = "INSERT OR REPLACE INTO " + MessagesSearchColumns.TABLENAME +
+                    " (" + MessagesSearchColumns.DOCID + ", " + MessagesSearchColumns.BODY + ")" +
+                    " SELECT " + MessageColumns._ID + ", " + MessageColumns.BODY + " FROM " + MessageColumns.TABLENAME +
+                    " WHERE " + MessageColumns._ID + " >= ? AND " + MessageColumns._ID + " < ?" +
+                    " AND " + DBHelper.getMessageSearchableCondition("");
+
+            while (bound > 0 && !emitter.isDisposed()) {
+                int lowest = 0;
+                int count = 0;
+
+                Cursor cursor = db.rawQuery(chunkSql, new String[]{String.valueOf(bound)});
+                if (cursor.moveToNext()) {
+                    lowest = cursor.getInt(0);
+                    count = cursor.getInt(1);
+                }
+
+                cursor.close();
+
+                if (count > 0) {
+                    db.execSQL(insertSql, new Object[]{lowest, bound});
+                    indexed += count;
+                }
+
+                bound = count > 0 ? lowest : 0;
+
+                searchPreferences.edit().putInt(key, bound).apply();
+            }
+
+            Exestime.log("MessagesStorage.indexForSearch", start, "indexed: " + indexed);
+            emitter.onComplete();
+        });
+    }
+
     @Override
     public Single<Integer> insert(int accountId, int peerId, @NonNull MessageEditEntity patch) {
         return Single.create(emitter -> {
@@ -369,76 +522,137 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
                         }));
     }
 
-    private MessageEntity fullMapDbo(int accountId, Cursor cursor, boolean withAttachments, boolean withForwardMessages, @NonNull Cancelable cancelable) {
-        final MessageEntity dbo = baseMapDbo(cursor);
+    /**
+     * Заполняет вложения и пересланные сообщения для всей страницы сразу.
+     * Дерево пересланных сообщений обходится по уровням, на каждый уровень
+     * приходится не более двух запросов (вложения и пересланные), независимо от количества сообщений
+     * @return количество выполненных запросов
+     */
+    private int fillAttachmentsAndForwards(int accountId, @NonNull List<MessageEntity> dbos, boolean withAttachments,
+                                           boolean withForwardMessages, @NonNull Cancelable cancelable) {
+        int queries = 0;
+
+        List<MessageEntity> level = dbos;
+
+        while (nonEmpty(level) && !cancelable.isOperationCancelled()) {
+            Set<Integer> withAttachmentsIds = new HashSet<>();
+            Set<Integer> withForwardsIds = new HashSet<>();
+
+            for (MessageEntity dbo : level) {
+                if (withAttachments && dbo.isHasAttachmens()) {
+                    withAttachmentsIds.add(dbo.getId());
+                }
 
-        if (withAttachments && dbo.isHasAttachmens()) {
-            List<Entity> attachments = getStores()
-                    .attachments()
-                    .getAttachmentsDbosSync(accountId, AttachToType.MESSAGE, dbo.getId(), cancelable);
+                if (withForwardMessages && dbo.getForwardCount() > 0) {
+                    withForwardsIds.add(dbo.getId());
+                }
+            }
 
-            dbo.setAttachments(attachments);
-        } else {
-            dbo.setAttachments(Collections.emptyList());
-        }
+            Map<Integer, List<Entity>> attachments = Collections.emptyMap();
+            if (nonEmpty(withAttachmentsIds)) {
+                attachments = getStores()
+                        .attachments()
+                        .getAttachmentsDbosSync(accountId, AttachToType.MESSAGE, withAttachmentsIds, cancelable);
+                queries++;
+            }
 
-        if (withForwardMessages && dbo.getForwardCount() > 0) {
-            List<MessageEntity> fwds = getForwardMessages(accountId, dbo.getId(), withAttachments, cancelable);
-            dbo.setForwardMessages(fwds);
-        } else {
-            dbo.setForwardMessages(Collections.emptyList());
+            Map<Integer, List<MessageEntity>> forwards = Collections.emptyMap();
+            if (nonEmpty(withForwardsIds)) {
+                forwards = getForwardMessages(accountId, withForwardsIds, cancelable);
+                queries++;
+            }
+
+            List<MessageEntity> nextLevel = new ArrayList<>();
+
+            for (MessageEntity dbo : level) {
+                List<Entity> messageAttachments = attachments.get(dbo.getId());
+                dbo.setAttachments(nonNull(messageAttachments) ? messageAttachments : Collections.emptyList());
+
+                List<MessageEntity> fwds = forwards.get(dbo.getId());
+                if (nonNull(fwds)) {
+                    dbo.setForwardMessages(fwds);
+                    nextLevel.addAll(fwds);
+                } else {
+                    dbo.setForwardMessages(Collections.emptyList());
+                }
+            }
+
+            level = nextLevel;
         }
 
-        return dbo;
+        return queries;
     }
 
     private static final Type EXTRAS_TYPE = new TypeToken<HashMap<Integer, String>>() {
     }.getType();
 
-    private static MessageEntity baseMapDbo(Cursor cursor) {
+    private static final Projection MESSAGE = new Projection();
+    private static final int MESSAGE_ID = MESSAGE.add(MessageColumns._ID);
+    private static final int MESSAGE_PEER_ID = MESSAGE.add(MessageColumns.PEER_ID);
+    private static final int MESSAGE_FROM_ID = MESSAGE.add(MessageColumns.FROM_ID);
+    private static final int MESSAGE_ATTACH_TO = MESSAGE.add(MessageColumns.ATTACH_TO);
+    private static final int MESSAGE_STATUS = MESSAGE.add(MessageColumns.STATUS);
+    private static final int MESSAGE_ACTION = MESSAGE.add(MessageColumns.ACTION);
+    private static final int MESSAGE_EXTRAS = MESSAGE.add(MessageColumns.EXTRAS);
+    private static final int MESSAGE_ENCRYPTED = MESSAGE.add(MessageColumns.ENCRYPTED);
+    private static final int MESSAGE_BODY = MESSAGE.add(MessageColumns.BODY);
+    private static final int MESSAGE_OUT = MESSAGE.add(MessageColumns.OUT);
+    private static final int MESSAGE_DATE = MESSAGE.add(MessageColumns.DATE);
+    private static final int MESSAGE_HAS_ATTACHMENTS = MESSAGE.add(MessageColumns.HAS_ATTACHMENTS);
+    private static final int MESSAGE_FORWARD_COUNT = MESSAGE.add(MessageColumns.FORWARD_COUNT);
+    private static final int MESSAGE_DELETED = MESSAGE.add(MessageColumns.DELETED);
+    private static final int MESSAGE_DELETED_FOR_ALL = MESSAGE.add(MessageColumns.DELETED_FOR_ALL);
+    private static final int MESSAGE_ORIGINAL_ID = MESSAGE.add(MessageColumns.ORIGINAL_ID);
+    private static final int MESSAGE_IMPORTANT = MESSAGE.add(MessageColumns.IMPORTANT);
+    private static final int MESSAGE_ACTION_MID = MESSAGE.add(MessageColumns.ACTION_MID);
+    private static final int MESSAGE_ACTION_EMAIL = MESSAGE.add(MessageColumns.ACTION_EMAIL);
+    private static final int MESSAGE_ACTION_TEXT = MESSAGE.add(MessageColumns.ACTION_TEXT);
+    private static final int MESSAGE_PHOTO_50 = MESSAGE.add(MessageColumns.PHOTO_50);
+    private static final int MESSAGE_PHOTO_100 = MESSAGE.add(MessageColumns.PHOTO_100);
+    private static final int MESSAGE_PHOTO_200 = MESSAGE.add(MessageColumns.PHOTO_200);
+    private static final int MESSAGE_RANDOM_ID = MESSAGE.add(MessageColumns.RANDOM_ID);
+    private static final int MESSAGE_UPDATE_TIME = MESSAGE.add(MessageColumns.UPDATE_TIME);
+
+    private static MessageEntity baseMapDbo(Projection.Row row) {
         @MessageStatus
-        int status = cursor.getInt(cursor.getColumnIndex(MessageColumns.STATUS));
+        int status = row.getInt(MESSAGE_STATUS);
 
         @ChatAction
-        int action = cursor.getInt(cursor.getColumnIndex(MessageColumns.ACTION));
+        int action = row.getInt(MESSAGE_ACTION);
 
-        final int id = cursor.getInt(cursor.getColumnIndex(MessageColumns._ID));
-        final int peerId = cursor.getInt(cursor.getColumnIndex(MessageColumns.PEER_ID));
-        final int fromId = cursor.getInt(cursor.getColumnIndex(MessageColumns.FROM_ID));
+        final int id = row.getInt(MESSAGE_ID);
+        final int peerId = row.getInt(MESSAGE_PEER_ID);
+        final int fromId = row.getInt(MESSAGE_FROM_ID);
 
         HashMap<Integer, String> extras = null;
 
-        String extrasText = cursor.getString(cursor.getColumnIndex(MessageColumns.EXTRAS));
+        String extrasText = row.getString(MESSAGE_EXTRAS);
         if (nonEmpty(extrasText)) {
             extras = GSON.fromJson(extrasText, EXTRAS_TYPE);
         }
 
         return new MessageEntity(id, peerId, fromId)
-                .setEncrypted(cursor.getInt(cursor.getColumnIndex(MessageColumns.ENCRYPTED)) == 1)
+                .setEncrypted(row.getBoolean(MESSAGE_ENCRYPTED))
                 .setStatus(status)
                 .setAction(action)
                 .setExtras(extras)
-                .setBody(cursor.getString(cursor.getColumnIndex(MessageColumns.BODY)))
-                //.setRead(cursor.getInt(cursor.getColumnIndex(MessageColumns.READ_STATE)) == 1)
-                .setOut(cursor.getInt(cursor.getColumnIndex(MessageColumns.OUT)) == 1)
-                .setStatus(status)
-                .setDate(cursor.getLong(cursor.getColumnIndex(MessageColumns.DATE)))
-                .setHasAttachmens(cursor.getInt(cursor.getColumnIndex(MessageColumns.HAS_ATTACHMENTS)) == 1)
-                .setForwardCount(cursor.getInt(cursor.getColumnIndex(MessageColumns.FORWARD_COUNT)))
-                .setDeleted(cursor.getInt(cursor.getColumnIndex(MessageColumns.DELETED)) == 1)
-                .setDeletedForAll(cursor.getInt(cursor.getColumnIndex(MessageColumns.DELETED_FOR_ALL)) == 1)
-                //.setTitle(cursor.getString(cursor.getColumnIndex(MessageColumns.TITLE)))
-                .setOriginalId(cursor.getInt(cursor.getColumnIndex(MessageColumns.ORIGINAL_ID)))
-                .setImportant(cursor.getInt(cursor.getColumnIndex(MessageColumns.IMPORTANT)) == 1)
-                .setAction(action)
-                .setActionMemberId(cursor.getInt(cursor.getColumnIndex(MessageColumns.ACTION_MID)))
-                .setActionEmail(cursor.getString(cursor.getColumnIndex(MessageColumns.ACTION_EMAIL)))
-                .setActionText(cursor.getString(cursor.getColumnIndex(MessageColumns.ACTION_TEXT)))
-                .setPhoto50(cursor.getString(cursor.getColumnIndex(MessageColumns.PHOTO_50)))
-                .setPhoto100(cursor.getString(cursor.getColumnIndex(MessageColumns.PHOTO_100)))
-                .setPhoto200(cursor.getString(cursor.getColumnIndex(MessageColumns.PHOTO_200)))
-                .setRandomId(cursor.getInt(cursor.getColumnIndex(MessageColumns.RANDOM_ID)))
-                .setUpdateTime(cursor.getLong(cursor.getColumnIndex(MessageColumns.UPDATE_TIME)));
+                .setBody(row.getString(MESSAGE_BODY))
+                .setOut(row.getBoolean(MESSAGE_OUT))
+                .setDate(row.getLong(MESSAGE_DATE))
+                .setHasAttachmens(row.getBoolean(MESSAGE_HAS_ATTACHMENTS))
+                .setForwardCount(row.getInt(MESSAGE_FORWARD_COUNT))
+                .setDeleted(row.getBoolean(MESSAGE_DELETED))
+                .setDeletedForAll(row.getBoolean(MESSAGE_DELETED_FOR_ALL))
+                .setOriginalId(row.getInt(MESSAGE_ORIGINAL_ID))
+                .setImportant(row.getBoolean(MESSAGE_IMPORTANT))
+                .setActionMemberId(row.getInt(MESSAGE_ACTION_MID))
+                .setActionEmail(row.getString(MESSAGE_ACTION_EMAIL))
+                .setActionText(row.getString(MESSAGE_ACTION_TEXT))
+                .setPhoto50(row.getString(MESSAGE_PHOTO_50))
+                .setPhoto100(row.getString(MESSAGE_PHOTO_100))
+                .setPhoto200(row.getString(MESSAGE_PHOTO_200))
+                .setRandomId(row.getInt(MESSAGE_RANDOM_ID))
+                .setUpdateTime(row.getLong(MESSAGE_UPDATE_TIME));
     }
 
     @Override
@@ -510,32 +724,36 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
     @Override
     public Completable applyPatches(int accountId, @NonNull Collection<MessagePatch> patches) {
         return Completable.create(emitter -> {
-            Uri uri = MessengerContentProvider.getMessageContentUriFor(accountId);
-
-            ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size());
-            for(MessagePatch patch : patches){
-                ContentValues cv = new ContentValues();
+            getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, createPatchOperations(accountId, patches));
+            emitter.onComplete();
+        });
+    }
 
-                if(patch.getDeletion() != null){
-                    cv.put(MessageColumns.DELETED, patch.getDeletion().getDeleted());
-                    cv.put(MessageColumns.DELETED_FOR_ALL, patch.getDeletion().getDeletedForAll());
-                }
+    static ArrayList<ContentProviderOperation> createPatchOperations(int accountId, @NonNull Collection<MessagePatch> patches) {
+        Uri uri = MessengerContentProvider.getMessageContentUriFor(accountId);
 
-                if(patch.getImportant() != null){
-                    cv.put(MessageColumns.IMPORTANT, patch.getImportant().getImportant());
-                }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size());
+        for(MessagePatch patch : patches){
+            ContentValues cv = new ContentValues();
 
-                if(cv.size() == 0) continue;
+            if(patch.getDeletion() != null){
+                cv.put(MessageColumns.DELETED, patch.getDeletion().getDeleted());
+                cv.put(MessageColumns.DELETED_FOR_ALL, patch.getDeletion().getDeletedForAll());
+            }
 
-                operations.add(ContentProviderOperation.newUpdate(uri)
-                        .withValues(cv)
-                        .withSelection(MessageColumns._ID + " = ?", new String[]{String.valueOf(patch.getMessageId())})
-                        .build());
+            if(patch.getImportant() != null){
+                cv.put(MessageColumns.IMPORTANT, patch.getImportant().getImportant());
             }
 
-            getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, operations);
-            emitter.onComplete();
-        });
+            if(cv.size() == 0) continue;
+
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValues(cv)
+                    .withSelection(MessageColumns._ID + " = ?", new String[]{String.valueOf(patch.getMessageId())})
+                    .build());
+        }
+
+        return operations;
     }
 
     @Override
@@ -641,33 +859,43 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
         });
     }
 
-    private List<MessageEntity> getForwardMessages(int accountId, int attachTo, boolean withAttachments, @NonNull Cancelable cancelable) {
+    private Map<Integer, List<MessageEntity>> getForwardMessages(int accountId, @NonNull Collection<Integer> attachTo, @NonNull Cancelable cancelable) {
         Uri uri = MessengerContentProvider.getMessageContentUriFor(accountId);
-        String where = MessageColumns.ATTACH_TO + " = ?";
-        String[] args = new String[]{String.valueOf(attachTo)};
+        String where = MessageColumns.ATTACH_TO + " IN (" + join(",", attachTo) + ")";
 
-        Cursor cursor = getContentResolver().query(uri, null, where, args, MessageColumns.FULL_ID + " DESC");
+        Cursor cursor = getContentResolver().query(uri, MESSAGE.columns(), where, null, MessageColumns.FULL_ID + " ASC");
 
-        List<MessageEntity> dbos = new ArrayList<>(safeCountOf(cursor));
+        @SuppressLint("UseSparseArrays")
+        Map<Integer, List<MessageEntity>> result = new HashMap<>(attachTo.size());
 
         if (nonNull(cursor)) {
+            Projection.Row row = MESSAGE.bind(cursor);
+
             while (cursor.moveToNext()) {
                 if (cancelable.isOperationCancelled()) {
                     break;
                 }
 
-                MessageEntity dbo = this.fullMapDbo(accountId, cursor, withAttachments, true, cancelable);
+                int attachToId = row.getInt(MESSAGE_ATTACH_TO);
+                MessageEntity dbo = baseMapDbo(row);
 
                 // Хз куда это еще влепить
                 //dbo.setRead(true);
                 dbo.setOut(dbo.getFromId() == accountId);
-                dbos.add(dbos.size() - cursor.getPosition(), dbo);
+
+                List<MessageEntity> dbos = result.get(attachToId);
+                if (dbos == null) {
+                    dbos = new ArrayList<>(1);
+                    result.put(attachToId, dbos);
+                }
+
+                dbos.add(dbo);
             }
 
             cursor.close();
         }
 
-        return dbos;
+        return result;
     }
 
     @Override
@@ -686,18 +914,20 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
                 args = null;
             }
 
-            Cursor cursor = getContext().getContentResolver().query(uri, null, where, args, null);
+            Cursor cursor = getContext().getContentResolver().query(uri, MESSAGE.columns(), where, args, null);
 
             Cancelable cancelable = emitter::isDisposed;
 
             ArrayList<MessageEntity> dbos = new ArrayList<>(safeCountOf(cursor));
             if (nonNull(cursor)) {
+                Projection.Row row = MESSAGE.bind(cursor);
+
                 while (cursor.moveToNext()) {
                     if (emitter.isDisposed()) {
                         break;
                     }
 
-                    MessageEntity dbo = fullMapDbo(accountId, cursor, withAtatchments, withForwardMessages, cancelable);
+                    MessageEntity dbo = baseMapDbo(row);
 
                     int position = dbos.size() - cursor.getPosition();
                     dbos.add(position, dbo);
@@ -706,16 +936,19 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
                 cursor.close();
             }
 
+            fillAttachmentsAndForwards(accountId, dbos, withAtatchments, withForwardMessages, cancelable);
             emitter.onSuccess(dbos);
         });
     }
 
     @Override
-    public Single<Optional<Pair<Integer, MessageEntity>>> findFirstUnsentMessage(Collection<Integer> accountIds, boolean withAtatchments, boolean withForwardMessages) {
+    public Single<List<Pair<Integer, MessageEntity>>> findUnsentMessages(Collection<Integer> accountIds, boolean withAtatchments, boolean withForwardMessages) {
         return Single.create(emitter -> {
             final String where = MessageColumns.STATUS + " = ? OR " + MessageColumns.STATUS + " = ?";
             final String[] args = {String.valueOf(MessageStatus.QUEUE), String.valueOf(MessageStatus.SENDING)};
-            final String orderBy = MessageColumns._ID + " ASC LIMIT 1";
+            final String orderBy = MessageColumns._ID + " ASC";
+
+            List<Pair<Integer, MessageEntity>> result = new ArrayList<>();
 
             for (int accountId : accountIds) {
                 if (emitter.isDisposed()) {
@@ -723,26 +956,28 @@ class MessagesStorage extends AbsStorage implements IMessagesStorage {
                 }
 
                 Uri uri = MessengerContentProvider.getMessageContentUriFor(accountId);
+                Cursor cursor = getContentResolver().query(uri, MESSAGE.columns(), where, args, orderBy);
 
-                Cursor cursor = getContentResolver().query(uri, null, where, args, orderBy);
-
-                MessageEntity entity = null;
+                List<MessageEntity> dbos = new ArrayList<>(safeCountOf(cursor));
 
                 if (nonNull(cursor)) {
-                    if (cursor.moveToNext()) {
-                        entity = fullMapDbo(accountId, cursor, withAtatchments, withForwardMessages, emitter::isDisposed);
+                    Projection.Row row = MESSAGE.bind(cursor);
+
+                    while (cursor.moveToNext()) {
+                        dbos.add(baseMapDbo(row));
                     }
 
                     cursor.close();
                 }
 
-                if (nonNull(entity)) {
-                    emitter.onSuccess(Optional.wrap(Pair.Companion.create(accountId, entity)));
-                    return;
+                fillAttachmentsAndForwards(accountId, dbos, withAtatchments, withForwardMessages, emitter::isDisposed);
+
+                for (MessageEntity dbo : dbos) {
+                    result.add(Pair.Companion.create(accountId, dbo));
                 }
             }
 
-            emitter.onSuccess(Optional.empty());
+            emitter.onSuccess(result);
         });
     }
 
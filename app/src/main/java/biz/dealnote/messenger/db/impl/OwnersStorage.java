@@ -191,34 +191,38 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
         }
 
         return Completable.create(emitter -> {
-            Uri uri = MessengerContentProvider.getUserContentUriFor(accountId);
-            ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size());
+            getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, createPatchOperations(accountId, patches));
+            emitter.onComplete();
+        });
+    }
 
-            for(UserPatch patch : patches){
-                ContentValues cv = new ContentValues();
+    static ArrayList<ContentProviderOperation> createPatchOperations(int accountId, @NonNull Collection<UserPatch> patches) {
+        Uri uri = MessengerContentProvider.getUserContentUriFor(accountId);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(patches.size());
 
-                if(nonNull(patch.getStatus())){
-                    cv.put(UserColumns.USER_STATUS, patch.getStatus().getStatus());
-                }
+        for(UserPatch patch : patches){
+            ContentValues cv = new ContentValues();
 
-                if(nonNull(patch.getOnline())){
-                    UserPatch.Online online = patch.getOnline();
-                    cv.put(UserColumns.ONLINE, online.isOnline());
-                    cv.put(UserColumns.LAST_SEEN, online.getLastSeen());
-                    cv.put(UserColumns.PLATFORM, online.getPlatform());
-                }
+            if(nonNull(patch.getStatus())){
+                cv.put(UserColumns.USER_STATUS, patch.getStatus().getStatus());
+            }
 
-                if(cv.size() > 0){
-                    operations.add(ContentProviderOperation.newUpdate(uri)
-                            .withValues(cv)
-                            .withSelection(UserColumns._ID + " = ?", new String[]{String.valueOf(patch.getUserId())})
-                            .build());
-                }
+            if(nonNull(patch.getOnline())){
+                UserPatch.Online online = patch.getOnline();
+                cv.put(UserColumns.ONLINE, online.isOnline());
+                cv.put(UserColumns.LAST_SEEN, online.getLastSeen());
+                cv.put(UserColumns.PLATFORM, online.getPlatform());
             }
 
-            getContentResolver().applyBatch(MessengerContentProvider.AUTHORITY, operations);
-            emitter.onComplete();
-        });
+            if(cv.size() > 0){
+                operations.add(ContentProviderOperation.newUpdate(uri)
+                        .withValues(cv)
+                        .withSelection(UserColumns._ID + " = ?", new String[]{String.valueOf(patch.getUserId())})
+                        .build());
+            }
+        }
+
+        return operations;
     }
 
     @Override
@@ -286,13 +290,13 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
             final String[] args = new String[]{String.valueOf(ownerId)};
             final Uri uri = MessengerContentProvider.getUserContentUriFor(accountId);
 
-            Cursor cursor = getContext().getContentResolver().query(uri, null, where, args, null);
+            Cursor cursor = getContext().getContentResolver().query(uri, USER.columns(), where, args, null);
 
             UserEntity dbo = null;
 
             if (nonNull(cursor)) {
                 if (cursor.moveToNext()) {
-                    dbo = mapUserDbo(cursor);
+                    dbo = mapUserDbo(USER.bind(cursor));
                 }
 
                 cursor.close();
@@ -309,13 +313,13 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
             final String[] args = new String[]{String.valueOf(ownerId)};
             final Uri uri = MessengerContentProvider.getGroupsContentUriFor(accountId);
 
-            Cursor cursor = getContext().getContentResolver().query(uri, null, where, args, null);
+            Cursor cursor = getContext().getContentResolver().query(uri, COMMUNITY.columns(), where, args, null);
 
             CommunityEntity dbo = null;
 
             if (nonNull(cursor)) {
                 if (cursor.moveToNext()) {
-                    dbo = mapCommunityDbo(cursor);
+                    dbo = mapCommunityDbo(COMMUNITY.bind(cursor));
                 }
 
                 cursor.close();
@@ -331,12 +335,12 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
             final Uri uri = MessengerContentProvider.getUserContentUriFor(accoutnId);
             String where = UserColumns.DOMAIN + " LIKE ?";
             String[] args = {domain};
-            Cursor cursor = getContentResolver().query(uri, null, where, args, null);
+            Cursor cursor = getContentResolver().query(uri, USER.columns(), where, args, null);
 
             UserEntity entity = null;
             if(nonNull(cursor)){
                 if(cursor.moveToNext()){
-                    entity = mapUserDbo(cursor);
+                    entity = mapUserDbo(USER.bind(cursor));
                 }
                 cursor.close();
             }
@@ -352,12 +356,12 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
             String where = GroupColumns.SCREEN_NAME + " LIKE ?";
             String[] args = {domain};
 
-            Cursor cursor = getContentResolver().query(uri, null, where, args, null);
+            Cursor cursor = getContentResolver().query(uri, COMMUNITY.columns(), where, args, null);
 
             CommunityEntity entity = null;
             if(nonNull(cursor)){
                 if(cursor.moveToNext()){
-                    entity = mapCommunityDbo(cursor);
+                    entity = mapCommunityDbo(COMMUNITY.bind(cursor));
                 }
                 cursor.close();
             }
@@ -385,16 +389,18 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
                 args = null;
             }
 
-            Cursor cursor = getContentResolver().query(uri, null, where, args, null, null);
+            Cursor cursor = getContentResolver().query(uri, USER.columns(), where, args, null, null);
 
             List<UserEntity> dbos = new ArrayList<>(safeCountOf(cursor));
             if (nonNull(cursor)) {
+                Projection.Row row = USER.bind(cursor);
+
                 while (cursor.moveToNext()) {
                     if (emitter.isDisposed()) {
                         break;
                     }
 
-                    dbos.add(mapUserDbo(cursor));
+                    dbos.add(mapUserDbo(row));
                 }
 
                 cursor.close();
@@ -423,16 +429,18 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
                 args = null;
             }
 
-            Cursor cursor = getContentResolver().query(uri, null, where, args, null, null);
+            Cursor cursor = getContentResolver().query(uri, COMMUNITY.columns(), where, args, null, null);
 
             List<CommunityEntity> dbos = new ArrayList<>(safeCountOf(cursor));
             if (nonNull(cursor)) {
+                Projection.Row row = COMMUNITY.bind(cursor);
+
                 while (cursor.moveToNext()) {
                     if (emitter.isDisposed()) {
                         break;
                     }
 
-                    dbos.add(mapCommunityDbo(cursor));
+                    dbos.add(mapCommunityDbo(row));
                 }
 
                 cursor.close();
@@ -525,39 +533,72 @@ class OwnersStorage extends AbsStorage implements IOwnersStorage {
         });
     }
 
-    private static CommunityEntity mapCommunityDbo(Cursor cursor) {
-        return new CommunityEntity(cursor.getInt(cursor.getColumnIndex(GroupColumns._ID)))
-                .setName(cursor.getString(cursor.getColumnIndex(GroupColumns.NAME)))
-                .setScreenName(cursor.getString(cursor.getColumnIndex(GroupColumns.SCREEN_NAME)))
-                .setClosed(cursor.getInt(cursor.getColumnIndex(GroupColumns.IS_CLOSED)))
-                .setAdmin(cursor.getInt(cursor.getColumnIndex(GroupColumns.IS_ADMIN)) == 1)
-                .setAdminLevel(cursor.getInt(cursor.getColumnIndex(GroupColumns.ADMIN_LEVEL)))
-                .setMember(cursor.getInt(cursor.getColumnIndex(GroupColumns.IS_MEMBER)) == 1)
-                .setType(cursor.getInt(cursor.getColumnIndex(GroupColumns.TYPE)))
-                .setPhoto50(cursor.getString(cursor.getColumnIndex(GroupColumns.PHOTO_50)))
-                .setPhoto100(cursor.getString(cursor.getColumnIndex(GroupColumns.PHOTO_100)))
-                .setPhoto200(cursor.getString(cursor.getColumnIndex(GroupColumns.PHOTO_200)));
-    }
-
-    private static UserEntity mapUserDbo(Cursor cursor) {
-        return new UserEntity(cursor.getInt(cursor.getColumnIndex(UserColumns._ID)))
-                .setFirstName(cursor.getString(cursor.getColumnIndex(UserColumns.FIRST_NAME)))
-                .setLastName(cursor.getString(cursor.getColumnIndex(UserColumns.LAST_NAME)))
-                .setOnline(cursor.getInt(cursor.getColumnIndex(UserColumns.ONLINE)) == 1)
-                .setOnlineMobile(cursor.getInt(cursor.getColumnIndex(UserColumns.ONLINE_MOBILE)) == 1)
-                .setOnlineApp(cursor.getInt(cursor.getColumnIndex(UserColumns.ONLINE_APP)))
-                .setPhoto50(cursor.getString(cursor.getColumnIndex(UserColumns.PHOTO_50)))
-                .setPhoto100(cursor.getString(cursor.getColumnIndex(UserColumns.PHOTO_100)))
-                .setPhoto200(cursor.getString(cursor.getColumnIndex(UserColumns.PHOTO_200)))
-                .setLastSeen(cursor.getLong(cursor.getColumnIndex(UserColumns.LAST_SEEN)))
-                .setPlatform(cursor.getInt(cursor.getColumnIndex(UserColumns.PLATFORM)))
-                .setStatus(cursor.getString(cursor.getColumnIndex(UserColumns.USER_STATUS)))
-                .setSex(cursor.getInt(cursor.getColumnIndex(UserColumns.SEX)))
-                .setDomain(cursor.getString(cursor.getColumnIndex(UserColumns.DOMAIN)))
-                .setFriend(cursor.getInt(cursor.getColumnIndex(UserColumns.IS_FRIEND)) == 1)
-                .setFriendStatus(cursor.getInt(cursor.getColumnIndex(UserColumns.FRIEND_STATUS)))
-                .setCanWritePrivateMessage(cursor.getInt(cursor.getColumnIndex(UserColumns.WRITE_MESSAGE_STATUS)) == 1)
-                .setBlacklisted_by_me(cursor.getInt(cursor.getColumnIndex(UserColumns.IS_USER_BLACK_LIST)) == 1);
+    private static final Projection COMMUNITY = new Projection();
+    private static final int COMMUNITY_ID = COMMUNITY.add(GroupColumns._ID);
+    private static final int COMMUNITY_NAME = COMMUNITY.add(GroupColumns.NAME);
+    private static final int COMMUNITY_SCREEN_NAME = COMMUNITY.add(GroupColumns.SCREEN_NAME);
+    private static final int COMMUNITY_IS_CLOSED = COMMUNITY.add(GroupColumns.IS_CLOSED);
+    private static final int COMMUNITY_IS_ADMIN = COMMUNITY.add(GroupColumns.IS_ADMIN);
+    private static final int COMMUNITY_ADMIN_LEVEL = COMMUNITY.add(GroupColumns.ADMIN_LEVEL);
+    private static final int COMMUNITY_IS_MEMBER = COMMUNITY.add(GroupColumns.IS_MEMBER);
+    private static final int COMMUNITY_TYPE = COMMUNITY.add(GroupColumns.TYPE);
+    private static final int COMMUNITY_PHOTO_50 = COMMUNITY.add(GroupColumns.PHOTO_50);
+    private static final int COMMUNITY_PHOTO_100 = COMMUNITY.add(GroupColumns.PHOTO_100);
+    private static final int COMMUNITY_PHOTO_200 = COMMUNITY.add(GroupColumns.PHOTO_200);
+
+    private static CommunityEntity mapCommunityDbo(Projection.Row row) {
+        return new CommunityEntity(row.getInt(COMMUNITY_ID))
+                .setName(row.getString(COMMUNITY_NAME))
+                .setScreenName(row.getString(COMMUNITY_SCREEN_NAME))
+                .setClosed(row.getInt(COMMUNITY_IS_CLOSED))
+                .setAdmin(row.getBoolean(COMMUNITY_IS_ADMIN))
+                .setAdminLevel(row.getInt(COMMUNITY_ADMIN_LEVEL))
+                .setMember(row.getBoolean(COMMUNITY_IS_MEMBER))
+                .setType(row.getInt(COMMUNITY_TYPE))
+                .setPhoto50(row.getString(COMMUNITY_PHOTO_50))
+                .setPhoto100(row.getString(COMMUNITY_PHOTO_100))
+                .setPhoto200(row.getString(COMMUNITY_PHOTO_200));
+    }
+
+    private static final Projection USER = new Projection();
+    private static final int USER_ID = USER.add(UserColumns._ID);
+    private static final int USER_FIRST_NAME = USER.add(UserColumns.FIRST_NAME);
+    private static final int USER_LAST_NAME = USER.add(UserColumns.LAST_NAME);
+    private static final int USER_ONLINE = USER.add(UserColumns.ONLINE);
+    private static final int USER_ONLINE_MOBILE = USER.add(UserColumns.ONLINE_MOBILE);
+    private static final int USER_ONLINE_APP = USER.add(UserColumns.ONLINE_APP);
+    private static final int USER_PHOTO_50 = USER.add(UserColumns.PHOTO_50);
+    private static final int USER_PHOTO_100 = USER.add(UserColumns.PHOTO_100);
+    private static final int USER_PHOTO_200 = USER.add(UserColumns.PHOTO_200);
+    private static final int USER_LAST_SEEN = USER.add(UserColumns.LAST_SEEN);
+    private static final int USER_PLATFORM = USER.add(UserColumns.PLATFORM);
+    private static final int USER_STATUS = USER.add(UserColumns.USER_STATUS);
+    private static final int USER_SEX = USER.add(UserColumns.SEX);
+    private static final int USER_DOMAIN = USER.add(UserColumns.DOMAIN);
+    private static final int USER_IS_FRIEND = USER.add(UserColumns.IS_FRIEND);
+    private static final int USER_FRIEND_STATUS = USER.add(UserColumns.FRIEND_STATUS);
+    private static final int USER_WRITE_MESSAGE_STATUS = USER.add(UserColumns.WRITE_MESSAGE_STATUS);
+    private static final int USER_IS_USER_BLACK_LIST = USER.add(UserColumns.IS_USER_BLACK_LIST);
+
+    private static UserEntity mapUserDbo(Projection.Row row) {
+        return new UserEntity(row.getInt(USER_ID))
+                .setFirstName(row.getString(USER_FIRST_NAME))
+                .setLastName(row.getString(USER_LAST_NAME))
+                .setOnline(row.getBoolean(USER_ONLINE))
+                .setOnlineMobile(row.getBoolean(USER_ONLINE_MOBILE))
+                .setOnlineApp(row.getInt(USER_ONLINE_APP))
+                .setPhoto50(row.getString(USER_PHOTO_50))
+                .setPhoto100(row.getString(USER_PHOTO_100))
+                .setPhoto200(row.getString(USER_PHOTO_200))
+                .setLastSeen(row.getLong(USER_LAST_SEEN))
+                .setPlatform(row.getInt(USER_PLATFORM))
+                .setStatus(row.getString(USER_STATUS))
+                .setSex(row.getInt(USER_SEX))
+                .setDomain(row.getString(USER_DOMAIN))
+                .setFriend(row.getBoolean(USER_IS_FRIEND))
+                .setFriendStatus(row.getInt(USER_FRIEND_STATUS))
+                .setCanWritePrivateMessage(row.getBoolean(USER_WRITE_MESSAGE_STATUS))
+                .setBlacklisted_by_me(row.getBoolean(USER_IS_USER_BLACK_LIST));
     }
 
     private FriendListEntity mapFriendsList(Cursor cursor) {
@@ -0,0 +1,103 @@
+package biz.dealnote.messenger.db.impl;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Явная проекция для запросов и маппинга курсора в entity.
+ * Колонки регистрируются один раз (статически), а их индексы в курсоре
+ * определяются один раз на курсор, а не при каждом чтении каждой строки:
+ * <pre>
+ * private static final Projection USER = new Projection();
+ * private static final int USER_ID = USER.add(UserColumns._ID);
+ *
+ * Cursor cursor = resolver.query(uri, USER.columns(), where, args, null);
+ * Projection.Row row = USER.bind(cursor);
+ * while (cursor.moveToNext()) {
+ *     int id = row.getInt(USER_ID);
+ * }
+ * </pre>
+ */
+final class Projection {
+
+    private final List<String> columns = new ArrayList<>();
+
+    private volatile String[] array;
+
+    /**
+     * @return номер колонки в проекции, по нему значение читается из {@link Row}
+     */
+    int add(@NonNull String column) {
+        synchronized (columns) {
+            columns.add(column);
+            array = null;
+            return columns.size() - 1;
+        }
+    }
+
+    String[] columns() {
+        String[] result = array;
+        if (result == null) {
+            synchronized (columns) {
+                result = columns.toArray(new String[0]);
+                array = result;
+            }
+        }
+
+        return result;
+    }
+
+    Row bind(@NonNull Cursor cursor) {
+        String[] names = columns();
+        int[] indexes = new int[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = cursor.getColumnIndexOrThrow(names[i]);
+        }
+
+        return new Row(cursor, indexes);
+    }
+
+    static final class Row {
+
+        private final Cursor cursor;
+
+        private final int[] indexes;
+
+        private Row(Cursor cursor, int[] indexes) {
+            this.cursor = cursor;
+            this.indexes = indexes;
+        }
+
+        int getInt(int column) {
+            return cursor.getInt(indexes[column]);
+        }
+
+        long getLong(int column) {
+            return cursor.getLong(indexes[column]);
+        }
+
+        String getString(int column) {
+            return cursor.getString(indexes[column]);
+        }
+
+        boolean getBoolean(int column) {
+            return cursor.getInt(indexes[column]) == 1;
+        }
+
+        byte[] getBlob(int column) {
+            return cursor.getBlob(indexes[column]);
+        }
+
+        /**
+         * @return тип значения в текущей строке, например {@link Cursor#FIELD_TYPE_BLOB}
+         */
+        int getType(int column) {
+            return cursor.getType(indexes[column]);
+        }
+    }
+}
@@ -6,12 +6,16 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import biz.dealnote.messenger.db.TempDataHelper;
 import biz.dealnote.messenger.db.column.TempDataColumns;
 import biz.dealnote.messenger.db.interfaces.ITempDataStorage;
 import biz.dealnote.messenger.db.serialize.ISerializeAdapter;
+import biz.dealnote.messenger.model.TmpSource;
 import biz.dealnote.messenger.util.Exestime;
 import io.reactivex.Completable;
 import io.reactivex.Single;
@@ -36,9 +40,20 @@ public class TempDataStorage implements ITempDataStorage {
             TempDataColumns._ID, TempDataColumns.OWNER_ID, TempDataColumns.SOURCE_ID, TempDataColumns.DATA};
 
 
+    /**
+     * Данные, переданные внутри процесса. Пока процесс жив, экран-получатель
+     * берет список отсюда, без сериализации и чтения из базы
+     */
+    private final Map<TmpSource, Handoff<?>> handoffs = new HashMap<>();
+
     @Override
     public <T> Single<List<T>> getData(int ownerId, int sourceId, ISerializeAdapter<T> serializer) {
         return Single.fromCallable(() -> {
+            List<T> live = findLive(ownerId, sourceId);
+            if (live != null) {
+                return live;
+            }
+
             long start = System.currentTimeMillis();
 
             String where = TempDataColumns.OWNER_ID + " = ? AND " + TempDataColumns.SOURCE_ID + " = ?";
@@ -63,54 +78,107 @@ public class TempDataStorage implements ITempDataStorage {
         });
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> List<T> findLive(int ownerId, int sourceId) {
+        synchronized (handoffs) {
+            Handoff<T> handoff = (Handoff<T>) handoffs.get(new TmpSource(ownerId, sourceId));
+            return handoff == null ? null : new ArrayList<>(handoff.data);
+        }
+    }
+
     @Override
     public <T> Completable put(int ownerId, int sourceId, List<T> data, ISerializeAdapter<T> serializer) {
-        return Completable.create(emitter -> {
-            long start = System.currentTimeMillis();
-
-            SQLiteDatabase db = helper().getWritableDatabase();
+        return Completable.fromAction(() -> {
+            synchronized (handoffs) {
+                handoffs.put(new TmpSource(ownerId, sourceId), new Handoff<>(new ArrayList<>(data), serializer));
+            }
+        });
+    }
 
-            db.beginTransaction();
+    @Override
+    public Completable persist(int ownerId) {
+        return Completable.fromAction(() -> {
+            Map<TmpSource, Handoff<?>> pending = new HashMap<>(0);
 
-            try {
-                // clear
-                db.delete(TempDataColumns.TABLENAME,
-                        TempDataColumns.OWNER_ID + " = ? AND " + TempDataColumns.SOURCE_ID + " = ?",
-                        new String[]{String.valueOf(ownerId), String.valueOf(sourceId)});
-
-                for (T t : data) {
-                    if (emitter.isDisposed()) {
-                        break;
+            synchronized (handoffs) {
+                for (Map.Entry<TmpSource, Handoff<?>> entry : handoffs.entrySet()) {
+                    if (entry.getKey().getOwnerId() == ownerId && !entry.getValue().persisted) {
+                        entry.getValue().persisted = true;
+                        pending.put(entry.getKey(), entry.getValue());
                     }
+                }
+            }
+
+            for (Map.Entry<TmpSource, Handoff<?>> entry : pending.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+        });
+    }
 
-                    ContentValues cv = new ContentValues();
-                    cv.put(TempDataColumns.OWNER_ID, ownerId);
-                    cv.put(TempDataColumns.SOURCE_ID, sourceId);
-                    cv.put(TempDataColumns.DATA, serializer.serialize(t));
+    private <T> void write(TmpSource source, Handoff<T> handoff) {
+        long start = System.currentTimeMillis();
 
-                    db.insert(TempDataColumns.TABLENAME, null, cv);
-                }
+        String[] args = {String.valueOf(source.getOwnerId()), String.valueOf(source.getSourceId())};
+        SQLiteDatabase db = helper().getWritableDatabase();
 
-                if (!emitter.isDisposed()) {
-                    db.setTransactionSuccessful();
-                }
-            } finally {
-                db.endTransaction();
+        db.beginTransaction();
+
+        try {
+            // clear
+            db.delete(TempDataColumns.TABLENAME,
+                    TempDataColumns.OWNER_ID + " = ? AND " + TempDataColumns.SOURCE_ID + " = ?", args);
+
+            for (T t : handoff.data) {
+                ContentValues cv = new ContentValues();
+                cv.put(TempDataColumns.OWNER_ID, source.getOwnerId());
+                cv.put(TempDataColumns.SOURCE_ID, source.getSourceId());
+                cv.put(TempDataColumns.DATA, handoff.serializer.serialize(t));
+
+                db.insert(TempDataColumns.TABLENAME, null, cv);
             }
 
-            Exestime.log("TempDataStorage.put", start, "count: " + data.size());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
-            emitter.onComplete();
-        });
+        Exestime.log("TempDataStorage.write", start, "count: " + handoff.data.size());
     }
 
     @Override
     public Completable delete(int ownerId) {
         return Completable.fromAction(() -> {
             long start = System.currentTimeMillis();
+
+            synchronized (handoffs) {
+                Iterator<TmpSource> iterator = handoffs.keySet().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().getOwnerId() == ownerId) {
+                        iterator.remove();
+                    }
+                }
+            }
+
             int count = helper().getWritableDatabase().delete(TempDataColumns.TABLENAME,
                     TempDataColumns.OWNER_ID + " = ?", new String[]{String.valueOf(ownerId)});
             Exestime.log("TempDataStorage.delete", start, "count: " + count);
         });
     }
-}
\ No newline at end of file
+
+    private static final class Handoff<T> {
+
+        final List<T> data;
+
+        final ISerializeAdapter<T> serializer;
+
+        /**
+         * Данные уже записаны (или записываются) в базу
+         */
+        boolean persisted;
+
+        Handoff(List<T> data, ISerializeAdapter<T> serializer) {
+            this.data = data;
+            this.serializer = serializer;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package biz.dealnote.messenger.db.interfaces;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import biz.dealnote.messenger.db.AttachToType;
@@ -24,4 +26,10 @@ public interface IAttachmentsStorage extends IStorage {
     Single<List<Pair<Integer, Entity>>> getAttachmentsDbosWithIds(int accountId, @AttachToType int attachToType, int attachToDbid);
 
     List<Entity> getAttachmentsDbosSync(int accountId, @AttachToType int attachToType, int attachToDbid, @NonNull Cancelable cancelable);
+
+    /**
+     * Загружает вложения сразу для нескольких объектов одним запросом
+     * @return карта "attachToDbid -> вложения", объекты без вложений в карту не попадают
+     */
+    Map<Integer, List<Entity>> getAttachmentsDbosSync(int accountId, @AttachToType int attachToType, @NonNull Collection<Integer> attachToDbids, @NonNull Cancelable cancelable);
 }
\ No newline at end of file
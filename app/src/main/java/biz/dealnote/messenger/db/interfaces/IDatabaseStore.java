@@ -1,7 +1,12 @@
 package biz.dealnote.messenger.db.interfaces;
 
+import java.util.Collection;
 import java.util.List;
 
+import androidx.annotation.NonNull;
+import biz.dealnote.messenger.db.model.MessagePatch;
+import biz.dealnote.messenger.db.model.PeerPatch;
+import biz.dealnote.messenger.db.model.UserPatch;
 import biz.dealnote.messenger.db.model.entity.CountryEntity;
 import io.reactivex.Completable;
 import io.reactivex.Single;
@@ -13,4 +18,10 @@ import io.reactivex.Single;
 public interface IDatabaseStore {
     Completable storeCountries(int accountId, List<CountryEntity> dbos);
     Single<List<CountryEntity>> getCountries(int accountId);
+
+    /**
+     * Применяет изменения сообщений, диалогов и пользователей одной транзакцией
+     */
+    Completable applyPatches(int accountId, @NonNull Collection<MessagePatch> messagePatches,
+                             @NonNull Collection<PeerPatch> peerPatches, @NonNull Collection<UserPatch> userPatches);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package biz.dealnote.messenger.db.interfaces;
 
+import java.util.Collection;
 import java.util.List;
 
 import androidx.annotation.CheckResult;
@@ -30,6 +31,19 @@ public interface IKeysStorage extends IStorage {
     @CheckResult
     Maybe<AesKeyPair> findKeyPairFor(int accountId, long sessionId);
 
+    /**
+     * Поиск ключей сразу для нескольких сессий
+     *
+     * @return найденные пары ключей, для отсутствующих сессий ничего не возвращается
+     */
+    @CheckResult
+    Single<List<AesKeyPair>> findKeyPairsFor(int accountId, @NonNull Collection<Long> sessionIds);
+
     @CheckResult
     Completable deleteAll(int accountId);
+
+    /**
+     * База аккаунта уже удалена, нужно забыть ключи, сохраненные в памяти
+     */
+    void onAccountRemoved(int accountId);
 }
@@ -30,6 +30,22 @@ public interface IMessagesStorage extends IStorage {
 
     Single<List<MessageEntity>> getByCriteria(@NonNull MessagesCriteria criteria, boolean withAtatchments, boolean withForwardMessages);
 
+    /**
+     * Поиск по тексту сохраненных сообщений (полнотекстовый индекс), от новых к старым
+     *
+     * @param peerId если null - по всем диалогам
+     * @param query  слова запроса, каждое ищется как префикс
+     */
+    @CheckResult
+    Single<List<MessageEntity>> search(int accountId, @Nullable Integer peerId, @NonNull String query, int count, int offset);
+
+    /**
+     * Добавить в поисковый индекс сообщения, сохраненные до его появления (от новых к старым, порциями).
+     * Новые сообщения индексируются триггерами, поэтому достаточно выполнить один раз
+     */
+    @CheckResult
+    Completable indexForSearch(int accountId);
+
     Single<Integer> insert(int accountId, int peerId, @NonNull MessageEditEntity patch);
 
     Single<Integer> applyPatch(int accountId, int messageId, @NonNull MessageEditEntity patch);
@@ -60,7 +76,12 @@ public interface IMessagesStorage extends IStorage {
 
     Single<List<MessageEntity>> findMessagesByIds(int accountId, List<Integer> ids, boolean withAtatchments, boolean withForwardMessages);
 
-    Single<Optional<Pair<Integer, MessageEntity>>> findFirstUnsentMessage(Collection<Integer> accountIds, boolean withAtatchments, boolean withForwardMessages);
+    /**
+     * Все неотправленные сообщения (в очереди или в процессе отправки) по всем аккаунтам,
+     * по одному запросу на аккаунт, в порядке добавления
+     * @return список пар "аккаунт - сообщение"
+     */
+    Single<List<Pair<Integer, MessageEntity>>> findUnsentMessages(Collection<Integer> accountIds, boolean withAtatchments, boolean withForwardMessages);
 
     Completable notifyMessageHasAttachments(int accountId, int messageId);
 
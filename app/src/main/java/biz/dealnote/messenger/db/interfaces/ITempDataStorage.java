@@ -12,7 +12,17 @@ import io.reactivex.Single;
  */
 public interface ITempDataStorage {
     <T> Single<List<T>> getData(int ownerId, int sourceId, ISerializeAdapter<T> serializer);
+
+    /**
+     * Передает данные внутри процесса, в базу они записываются только через {@link #persist(int)}
+     */
     <T> Completable put(int ownerId, int sourceId, List<T> data, ISerializeAdapter<T> serializer);
 
+    /**
+     * Записывает в базу данные владельца, которые еще есть только в памяти,
+     * чтобы они пережили завершение процесса
+     */
+    Completable persist(int ownerId);
+
     Completable delete(int ownerId);
 }
\ No newline at end of file
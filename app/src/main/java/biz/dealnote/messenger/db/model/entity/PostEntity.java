@@ -347,7 +347,8 @@ public class PostEntity extends Entity {
 
     @NonNull
     public List<Entity> getAttachments() {
-        return attachments.getEntities();
+        // может быть null, если объект был создан Gson-ом из старых данных без этого поля
+        return attachments == null ? Collections.emptyList() : attachments.getEntities();
     }
 
     public PostEntity setAttachments(@NonNull List<Entity> entities) {
@@ -0,0 +1,690 @@
+package biz.dealnote.messenger.db.serialize;
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import biz.dealnote.messenger.db.model.AttachmentsTypes;
+import biz.dealnote.messenger.db.model.entity.AttachmentsEntity;
+import biz.dealnote.messenger.db.model.entity.AudioEntity;
+import biz.dealnote.messenger.db.model.entity.DocumentEntity;
+import biz.dealnote.messenger.db.model.entity.Entity;
+import biz.dealnote.messenger.db.model.entity.LinkEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoSizeEntity;
+import biz.dealnote.messenger.db.model.entity.PostEntity;
+import biz.dealnote.messenger.db.model.entity.PrivacyEntity;
+import biz.dealnote.messenger.db.model.entity.StickerEntity;
+import biz.dealnote.messenger.db.model.entity.VideoEntity;
+
+import static biz.dealnote.messenger.util.Objects.isNull;
+import static biz.dealnote.messenger.util.Objects.nonNull;
+
+/**
+ * Бинарный формат хранения вложений в базе вместо Gson JSON.
+ * <p>
+ * Фото, видео, документы, аудио, стикеры, ссылки и записи на стене пишутся
+ * поле за полем без имен и рефлексии. Остальные типы (опросы, страницы, обсуждения и т.д.)
+ * встречаются редко и сохраняются внутри того же формата как JSON.
+ * <p>
+ * Формат: байт версии, затем сущность: int тип ({@link AttachmentsTypes}),
+ * байт кодировки ({@link #ENCODING_BINARY} или {@link #ENCODING_JSON}) и данные.
+ * Старые строки в базе остаются текстом JSON, отличить их можно по типу значения в курсоре (BLOB/TEXT).
+ */
+public final class AttachmentsCodec {
+
+    private static final int VERSION = 1;
+
+    private static final int ENCODING_BINARY = 0;
+    private static final int ENCODING_JSON = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson gson;
+
+    public AttachmentsCodec(@NonNull Gson gson) {
+        this.gson = gson;
+    }
+
+    public byte[] encode(@NonNull Entity entity) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeEntity(out, entity);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] encodeList(@NonNull List<? extends Entity> entities) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * Math.max(1, entities.size()));
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeEntities(out, entities);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Entity decode(@NonNull byte[] data) {
+        try {
+            DataInputStream in = open(data);
+            return readEntity(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode attachment", e);
+        }
+    }
+
+    public List<Entity> decodeList(@NonNull byte[] data) {
+        try {
+            DataInputStream in = open(data);
+            return readEntities(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode attachments", e);
+        }
+    }
+
+    /**
+     * Вложение, сохраненное до перехода на бинарный формат (текст JSON)
+     */
+    public Entity decodeJson(int type, @NonNull String json) {
+        return gson.fromJson(json, AttachmentsTypes.classForType(type));
+    }
+
+    /**
+     * Список вложений, сохраненный до перехода на бинарный формат (текст JSON {@link AttachmentsEntity})
+     */
+    public List<Entity> decodeJsonList(@NonNull String json) {
+        return gson.fromJson(json, AttachmentsEntity.class).getEntities();
+    }
+
+    private static DataInputStream open(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        return in;
+    }
+
+    private void writeEntities(DataOutputStream out, List<? extends Entity> entities) throws IOException {
+        if (isNull(entities)) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(entities.size());
+        for (Entity entity : entities) {
+            writeEntity(out, entity);
+        }
+    }
+
+    private List<Entity> readEntities(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(readEntity(in));
+        }
+
+        return entities;
+    }
+
+    private void writeEntity(DataOutputStream out, Entity entity) throws IOException {
+        int type = AttachmentsTypes.typeForInstance(entity);
+        out.writeInt(type);
+
+        switch (type) {
+            case AttachmentsTypes.PHOTO:
+                out.writeByte(ENCODING_BINARY);
+                writePhoto(out, (PhotoEntity) entity);
+                break;
+            case AttachmentsTypes.VIDEO:
+                out.writeByte(ENCODING_BINARY);
+                writeVideo(out, (VideoEntity) entity);
+                break;
+            case AttachmentsTypes.DOC:
+                out.writeByte(ENCODING_BINARY);
+                writeDocument(out, (DocumentEntity) entity);
+                break;
+            case AttachmentsTypes.AUDIO:
+                out.writeByte(ENCODING_BINARY);
+                writeAudio(out, (AudioEntity) entity);
+                break;
+            case AttachmentsTypes.STICKER:
+                out.writeByte(ENCODING_BINARY);
+                writeSticker(out, (StickerEntity) entity);
+                break;
+            case AttachmentsTypes.LINK:
+                out.writeByte(ENCODING_BINARY);
+                writeLink(out, (LinkEntity) entity);
+                break;
+            case AttachmentsTypes.POST:
+                out.writeByte(ENCODING_BINARY);
+                writePost(out, (PostEntity) entity);
+                break;
+            default:
+                out.writeByte(ENCODING_JSON);
+                writeString(out, gson.toJson(entity));
+                break;
+        }
+    }
+
+    private Entity readEntity(DataInputStream in) throws IOException {
+        int type = in.readInt();
+        int encoding = in.readUnsignedByte();
+
+        if (encoding == ENCODING_JSON) {
+            return gson.fromJson(readString(in), AttachmentsTypes.classForType(type));
+        }
+
+        if (encoding != ENCODING_BINARY) {
+            throw new IOException("Unsupported encoding: " + encoding);
+        }
+
+        switch (type) {
+            case AttachmentsTypes.PHOTO:
+                return readPhoto(in);
+            case AttachmentsTypes.VIDEO:
+                return readVideo(in);
+            case AttachmentsTypes.DOC:
+                return readDocument(in);
+            case AttachmentsTypes.AUDIO:
+                return readAudio(in);
+            case AttachmentsTypes.STICKER:
+                return readSticker(in);
+            case AttachmentsTypes.LINK:
+                return readLink(in);
+            case AttachmentsTypes.POST:
+                return readPost(in);
+            default:
+                throw new IOException("Unsupported binary type: " + type);
+        }
+    }
+
+    private static void writePhoto(DataOutputStream out, PhotoEntity photo) throws IOException {
+        out.writeInt(photo.getId());
+        out.writeInt(photo.getOwnerId());
+        out.writeInt(photo.getAlbumId());
+        out.writeInt(photo.getWidth());
+        out.writeInt(photo.getHeight());
+        writeString(out, photo.getText());
+        out.writeLong(photo.getDate());
+        out.writeBoolean(photo.isUserLikes());
+        out.writeInt(photo.getLikesCount());
+        out.writeBoolean(photo.isCanComment());
+        out.writeInt(photo.getCommentsCount());
+        out.writeInt(photo.getTagsCount());
+        writeString(out, photo.getAccessKey());
+        out.writeInt(photo.getPostId());
+        out.writeBoolean(photo.isDeleted());
+        writePhotoSizes(out, photo.getSizes());
+    }
+
+    private static PhotoEntity readPhoto(DataInputStream in) throws IOException {
+        return new PhotoEntity(in.readInt(), in.readInt())
+                .setAlbumId(in.readInt())
+                .setWidth(in.readInt())
+                .setHeight(in.readInt())
+                .setText(readString(in))
+                .setDate(in.readLong())
+                .setUserLikes(in.readBoolean())
+                .setLikesCount(in.readInt())
+                .setCanComment(in.readBoolean())
+                .setCommentsCount(in.readInt())
+                .setTagsCount(in.readInt())
+                .setAccessKey(readString(in))
+                .setPostId(in.readInt())
+                .setDeleted(in.readBoolean())
+                .setSizes(readPhotoSizes(in));
+    }
+
+    private static void writePhotoSizes(DataOutputStream out, PhotoSizeEntity sizes) throws IOException {
+        out.writeBoolean(nonNull(sizes));
+        if (isNull(sizes)) {
+            return;
+        }
+
+        writePhotoSize(out, sizes.getS());
+        writePhotoSize(out, sizes.getM());
+        writePhotoSize(out, sizes.getX());
+        writePhotoSize(out, sizes.getO());
+        writePhotoSize(out, sizes.getP());
+        writePhotoSize(out, sizes.getQ());
+        writePhotoSize(out, sizes.getR());
+        writePhotoSize(out, sizes.getY());
+        writePhotoSize(out, sizes.getZ());
+        writePhotoSize(out, sizes.getW());
+    }
+
+    private static PhotoSizeEntity readPhotoSizes(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return new PhotoSizeEntity()
+                .setS(readPhotoSize(in))
+                .setM(readPhotoSize(in))
+                .setX(readPhotoSize(in))
+                .setO(readPhotoSize(in))
+                .setP(readPhotoSize(in))
+                .setQ(readPhotoSize(in))
+                .setR(readPhotoSize(in))
+                .setY(readPhotoSize(in))
+                .setZ(readPhotoSize(in))
+                .setW(readPhotoSize(in));
+    }
+
+    private static void writePhotoSize(DataOutputStream out, PhotoSizeEntity.Size size) throws IOException {
+        out.writeBoolean(nonNull(size));
+        if (nonNull(size)) {
+            out.writeInt(size.getW());
+            out.writeInt(size.getH());
+            writeString(out, size.getUrl());
+        }
+    }
+
+    private static PhotoSizeEntity.Size readPhotoSize(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return new PhotoSizeEntity.Size()
+                .setW(in.readInt())
+                .setH(in.readInt())
+                .setUrl(readString(in));
+    }
+
+    private static void writeVideo(DataOutputStream out, VideoEntity video) throws IOException {
+        out.writeInt(video.getId());
+        out.writeInt(video.getOwnerId());
+        out.writeInt(video.getAlbumId());
+        writeString(out, video.getTitle());
+        writeString(out, video.getDescription());
+        writeString(out, video.getLink());
+        out.writeLong(video.getDate());
+        out.writeLong(video.getAddingDate());
+        out.writeInt(video.getViews());
+        writeString(out, video.getPlayer());
+        writeString(out, video.getPhoto130());
+        writeString(out, video.getPhoto320());
+        writeString(out, video.getPhoto800());
+        writeString(out, video.getAccessKey());
+        out.writeInt(video.getCommentsCount());
+        out.writeBoolean(video.isUserLikes());
+        out.writeInt(video.getLikesCount());
+        writeString(out, video.getMp4link240());
+        writeString(out, video.getMp4link360());
+        writeString(out, video.getMp4link480());
+        writeString(out, video.getMp4link720());
+        writeString(out, video.getMp4link1080());
+        writeString(out, video.getExternalLink());
+        writeString(out, video.getHls());
+        writeString(out, video.getLive());
+        writeString(out, video.getPlatform());
+        out.writeBoolean(video.isRepeat());
+        out.writeInt(video.getDuration());
+        writePrivacy(out, video.getPrivacyView());
+        writePrivacy(out, video.getPrivacyComment());
+        out.writeBoolean(video.isCanEdit());
+        out.writeBoolean(video.isCanAdd());
+        out.writeBoolean(video.isCanComment());
+        out.writeBoolean(video.isCanRepost());
+    }
+
+    private static VideoEntity readVideo(DataInputStream in) throws IOException {
+        return new VideoEntity(in.readInt(), in.readInt())
+                .setAlbumId(in.readInt())
+                .setTitle(readString(in))
+                .setDescription(readString(in))
+                .setLink(readString(in))
+                .setDate(in.readLong())
+                .setAddingDate(in.readLong())
+                .setViews(in.readInt())
+                .setPlayer(readString(in))
+                .setPhoto130(readString(in))
+                .setPhoto320(readString(in))
+                .setPhoto800(readString(in))
+                .setAccessKey(readString(in))
+                .setCommentsCount(in.readInt())
+                .setUserLikes(in.readBoolean())
+                .setLikesCount(in.readInt())
+                .setMp4link240(readString(in))
+                .setMp4link360(readString(in))
+                .setMp4link480(readString(in))
+                .setMp4link720(readString(in))
+                .setMp4link1080(readString(in))
+                .setExternalLink(readString(in))
+                .setHls(readString(in))
+                .setLive(readString(in))
+                .setPlatform(readString(in))
+                .setRepeat(in.readBoolean())
+                .setDuration(in.readInt())
+                .setPrivacyView(readPrivacy(in))
+                .setPrivacyComment(readPrivacy(in))
+                .setCanEdit(in.readBoolean())
+                .setCanAdd(in.readBoolean())
+                .setCanComment(in.readBoolean())
+                .setCanRepost(in.readBoolean());
+    }
+
+    private static void writePrivacy(DataOutputStream out, PrivacyEntity privacy) throws IOException {
+        out.writeBoolean(nonNull(privacy));
+        if (isNull(privacy)) {
+            return;
+        }
+
+        writeString(out, privacy.getType());
+
+        List<PrivacyEntity.Entry> entries = privacy.getEntries();
+        out.writeInt(isNull(entries) ? -1 : entries.size());
+
+        if (nonNull(entries)) {
+            for (PrivacyEntity.Entry entry : entries) {
+                out.writeInt(entry.getType());
+                out.writeInt(entry.getId());
+                out.writeBoolean(entry.isAllowed());
+            }
+        }
+    }
+
+    private static PrivacyEntity readPrivacy(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        String type = readString(in);
+
+        int count = in.readInt();
+        List<PrivacyEntity.Entry> entries = null;
+
+        if (count >= 0) {
+            entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new PrivacyEntity.Entry(in.readInt(), in.readInt(), in.readBoolean()));
+            }
+        }
+
+        return new PrivacyEntity(type, entries);
+    }
+
+    private static void writeDocument(DataOutputStream out, DocumentEntity document) throws IOException {
+        out.writeInt(document.getId());
+        out.writeInt(document.getOwnerId());
+        writeString(out, document.getTitle());
+        out.writeLong(document.getSize());
+        writeString(out, document.getExt());
+        writeString(out, document.getUrl());
+        out.writeLong(document.getDate());
+        out.writeInt(document.getType());
+        writeString(out, document.getAccessKey());
+        writePhotoSizes(out, document.getPhoto());
+
+        DocumentEntity.GraffitiDbo graffiti = document.getGraffiti();
+        out.writeBoolean(nonNull(graffiti));
+        if (nonNull(graffiti)) {
+            writeString(out, graffiti.getSrc());
+            out.writeInt(graffiti.getWidth());
+            out.writeInt(graffiti.getHeight());
+        }
+
+        DocumentEntity.VideoPreviewDbo video = document.getVideo();
+        out.writeBoolean(nonNull(video));
+        if (nonNull(video)) {
+            writeString(out, video.getSrc());
+            out.writeInt(video.getWidth());
+            out.writeInt(video.getHeight());
+            out.writeLong(video.getFileSize());
+        }
+    }
+
+    private static DocumentEntity readDocument(DataInputStream in) throws IOException {
+        DocumentEntity document = new DocumentEntity(in.readInt(), in.readInt())
+                .setTitle(readString(in))
+                .setSize(in.readLong())
+                .setExt(readString(in))
+                .setUrl(readString(in))
+                .setDate(in.readLong())
+                .setType(in.readInt())
+                .setAccessKey(readString(in))
+                .setPhoto(readPhotoSizes(in));
+
+        if (in.readBoolean()) {
+            document.setGraffiti(new DocumentEntity.GraffitiDbo(readString(in), in.readInt(), in.readInt()));
+        }
+
+        if (in.readBoolean()) {
+            document.setVideo(new DocumentEntity.VideoPreviewDbo(readString(in), in.readInt(), in.readInt(), in.readLong()));
+        }
+
+        return document;
+    }
+
+    private static void writeAudio(DataOutputStream out, AudioEntity audio) throws IOException {
+        out.writeInt(audio.getId());
+        out.writeInt(audio.getOwnerId());
+        writeString(out, audio.getArtist());
+        writeString(out, audio.getTitle());
+        out.writeInt(audio.getDuration());
+        writeString(out, audio.getUrl());
+        out.writeInt(audio.getLyricsId());
+        out.writeInt(audio.getAlbumId());
+        out.writeInt(audio.getGenre());
+        writeString(out, audio.getAccessKey());
+        out.writeBoolean(audio.isDeleted());
+    }
+
+    private static AudioEntity readAudio(DataInputStream in) throws IOException {
+        return new AudioEntity(in.readInt(), in.readInt())
+                .setArtist(readString(in))
+                .setTitle(readString(in))
+                .setDuration(in.readInt())
+                .setUrl(readString(in))
+                .setLyricsId(in.readInt())
+                .setAlbumId(in.readInt())
+                .setGenre(in.readInt())
+                .setAccessKey(readString(in))
+                .setDeleted(in.readBoolean());
+    }
+
+    private static void writeSticker(DataOutputStream out, StickerEntity sticker) throws IOException {
+        out.writeInt(sticker.getId());
+        writeStickerImages(out, sticker.getImages());
+        writeStickerImages(out, sticker.getImagesWithBackground());
+        writeString(out, sticker.getAnimationUrl());
+    }
+
+    private static StickerEntity readSticker(DataInputStream in) throws IOException {
+        return new StickerEntity(in.readInt())
+                .setImages(readStickerImages(in))
+                .setImagesWithBackground(readStickerImages(in))
+                .setAnimationUrl(readString(in));
+    }
+
+    private static void writeStickerImages(DataOutputStream out, List<StickerEntity.Img> images) throws IOException {
+        out.writeInt(isNull(images) ? -1 : images.size());
+
+        if (nonNull(images)) {
+            for (StickerEntity.Img image : images) {
+                writeString(out, image.getUrl());
+                out.writeInt(image.getWidth());
+                out.writeInt(image.getHeight());
+            }
+        }
+    }
+
+    private static List<StickerEntity.Img> readStickerImages(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+
+        List<StickerEntity.Img> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(new StickerEntity.Img(readString(in), in.readInt(), in.readInt()));
+        }
+
+        return images;
+    }
+
+    private static void writeLink(DataOutputStream out, LinkEntity link) throws IOException {
+        writeString(out, link.getUrl());
+        writeString(out, link.getTitle());
+        writeString(out, link.getCaption());
+        writeString(out, link.getDescription());
+
+        PhotoEntity photo = link.getPhoto();
+        out.writeBoolean(nonNull(photo));
+        if (nonNull(photo)) {
+            writePhoto(out, photo);
+        }
+    }
+
+    private static LinkEntity readLink(DataInputStream in) throws IOException {
+        LinkEntity link = new LinkEntity(readString(in))
+                .setTitle(readString(in))
+                .setCaption(readString(in))
+                .setDescription(readString(in));
+
+        if (in.readBoolean()) {
+            link.setPhoto(readPhoto(in));
+        }
+
+        return link;
+    }
+
+    private void writePost(DataOutputStream out, PostEntity post) throws IOException {
+        out.writeInt(post.getDbid());
+        out.writeInt(post.getId());
+        out.writeInt(post.getOwnerId());
+        out.writeInt(post.getFromId());
+        out.writeLong(post.getDate());
+        writeString(out, post.getText());
+        out.writeInt(post.getReplyOwnerId());
+        out.writeInt(post.getReplyPostId());
+        out.writeBoolean(post.isFriendsOnly());
+        out.writeInt(post.getCommentsCount());
+        out.writeBoolean(post.isCanPostComment());
+        out.writeInt(post.getLikesCount());
+        out.writeBoolean(post.isUserLikes());
+        out.writeBoolean(post.isCanLike());
+        out.writeBoolean(post.isCanEdit());
+        out.writeBoolean(post.isCanPublish());
+        out.writeInt(post.getRepostCount());
+        out.writeBoolean(post.isUserReposted());
+        out.writeInt(post.getPostType());
+        out.writeInt(post.getAttachmentsCount());
+        out.writeInt(post.getSignedId());
+        out.writeInt(post.getCreatedBy());
+        out.writeBoolean(post.isCanPin());
+        out.writeBoolean(post.isPinned());
+        out.writeBoolean(post.isDeleted());
+        out.writeInt(post.getViews());
+
+        PostEntity.SourceDbo source = post.getSource();
+        out.writeBoolean(nonNull(source));
+        if (nonNull(source)) {
+            out.writeInt(source.getType());
+            writeString(out, source.getPlatform());
+            out.writeInt(source.getData());
+            writeString(out, source.getUrl());
+        }
+
+        writeEntities(out, post.getAttachments());
+        writeEntities(out, post.getCopyHierarchy());
+    }
+
+    private PostEntity readPost(DataInputStream in) throws IOException {
+        int dbid = in.readInt();
+
+        PostEntity post = new PostEntity(in.readInt(), in.readInt())
+                .setDbid(dbid)
+                .setFromId(in.readInt())
+                .setDate(in.readLong())
+                .setText(readString(in))
+                .setReplyOwnerId(in.readInt())
+                .setReplyPostId(in.readInt())
+                .setFriendsOnly(in.readBoolean())
+                .setCommentsCount(in.readInt())
+                .setCanPostComment(in.readBoolean())
+                .setLikesCount(in.readInt())
+                .setUserLikes(in.readBoolean())
+                .setCanLike(in.readBoolean())
+                .setCanEdit(in.readBoolean())
+                .setCanPublish(in.readBoolean())
+                .setRepostCount(in.readInt())
+                .setUserReposted(in.readBoolean())
+                .setPostType(in.readInt())
+                .setAttachmentsCount(in.readInt())
+                .setSignedId(in.readInt())
+                .setCreatedBy(in.readInt())
+                .setCanPin(in.readBoolean())
+                .setPinned(in.readBoolean())
+                .setDeleted(in.readBoolean())
+                .setViews(in.readInt());
+
+        if (in.readBoolean()) {
+            post.setSource(new PostEntity.SourceDbo(in.readInt(), readString(in), in.readInt(), readString(in)));
+        }
+
+        List<Entity> attachments = readEntities(in);
+        if (nonNull(attachments)) {
+            post.setAttachments(attachments);
+        }
+
+        List<Entity> copies = readEntities(in);
+        if (nonNull(copies)) {
+            List<PostEntity> hierarchy = new ArrayList<>(copies.size());
+            for (Entity copy : copies) {
+                hierarchy.add((PostEntity) copy);
+            }
+
+            post.setCopyHierarchy(hierarchy);
+        }
+
+        return post;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (isNull(value)) {
+            out.writeInt(-1);
+            return;
+        }
+
+        // writeUTF ограничен 64 Кб, а текст записи может быть длиннее
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
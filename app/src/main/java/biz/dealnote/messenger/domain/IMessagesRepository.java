@@ -11,6 +11,7 @@ import biz.dealnote.messenger.api.model.longpoll.InputMessagesSetReadUpdate;
 import biz.dealnote.messenger.api.model.longpoll.MessageFlagsResetUpdate;
 import biz.dealnote.messenger.api.model.longpoll.MessageFlagsSetUpdate;
 import biz.dealnote.messenger.api.model.longpoll.OutputMessagesSetReadUpdate;
+import biz.dealnote.messenger.api.model.longpoll.VkApiLongpollUpdates;
 import biz.dealnote.messenger.api.model.longpoll.WriteTextInDialogUpdate;
 import biz.dealnote.messenger.model.AbsModel;
 import biz.dealnote.messenger.model.AppChatUser;
@@ -43,6 +44,13 @@ public interface IMessagesRepository {
 
     Completable handleWriteUpdates(int accountId, @NonNull List<WriteTextInDialogUpdate> updates);
 
+    /**
+     * Сохраняет все изменения из одного ответа longpoll (флаги и прочтение сообщений,
+     * онлайн пользователей) одной транзакцией, предварительно схлопнув повторные изменения
+     * одних и тех же сообщений, диалогов и пользователей
+     */
+    Completable handleLongpollUpdates(int accountId, @NonNull VkApiLongpollUpdates updates);
+
     Flowable<SentMsg> observeSentMessages();
 
     Flowable<List<PeerUpdate>> observePeerUpdates();
@@ -102,8 +110,6 @@ public interface IMessagesRepository {
 
     Single<Message> put(SaveMessageBuilder builder);
 
-    Single<SentMsg> sendUnsentMessage(Collection<Integer> accountIds);
-
     Completable enqueueAgain(int accountId, int messageId);
 
     /**
@@ -115,8 +121,18 @@ public interface IMessagesRepository {
      */
     Single<List<Object>> searchDialogs(int accountId, int count, String q);
 
+    /**
+     * Поиск сообщений через API. Первая страница дополняется результатами из кэша,
+     * а при ошибке сети (если в кэше что-то нашлось) состоит только из них
+     */
     Single<List<Message>> searchMessages(int accountId, Integer peerId, int count, int offset, String q);
 
+    /**
+     * Поиск только по сохраненным сообщениям, без обращения к сети
+     * @param peerId идентификатор диалога, null - по всем диалогам
+     */
+    Single<List<Message>> searchCachedMessages(int accountId, Integer peerId, int count, int offset, String q);
+
     Single<List<AppChatUser>> getChatUsers(int accountId, int chatId);
 
     Completable removeChatMember(int accountId, int chatId, int userId);
@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import biz.dealnote.messenger.api.model.longpoll.UserIsOfflineUpdate;
 import biz.dealnote.messenger.api.model.longpoll.UserIsOnlineUpdate;
+import biz.dealnote.messenger.db.model.UserPatch;
 import biz.dealnote.messenger.db.model.entity.OwnerEntities;
 import biz.dealnote.messenger.fragment.search.criteria.PeopleSearchCriteria;
 import biz.dealnote.messenger.model.Community;
@@ -57,5 +58,16 @@ public interface IOwnersRepository {
 
     Completable handleOnlineChanges(int accountId, @Nullable List<UserIsOfflineUpdate> offlineUpdates, @Nullable List<UserIsOnlineUpdate> onlineUpdates);
 
+    /**
+     * Изменения онлайна пользователей, по одному на пользователя (последнее изменение выигрывает)
+     */
+    @NonNull
+    List<UserPatch> createOnlinePatches(@Nullable List<UserIsOfflineUpdate> offlineUpdates, @Nullable List<UserIsOnlineUpdate> onlineUpdates);
+
+    /**
+     * Вызывается после того, как изменения пользователей сохранены в базу в обход репозитория
+     */
+    void notifyPatchesApplied(int accountId, @NonNull List<UserPatch> patches);
+
     Flowable<List<UserUpdate>> observeUpdates();
 }
\ No newline at end of file
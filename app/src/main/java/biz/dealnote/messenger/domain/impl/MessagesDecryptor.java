@@ -1,9 +1,12 @@
 package biz.dealnote.messenger.domain.impl;
 
 import android.util.LongSparseArray;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import biz.dealnote.messenger.crypt.AesKeyPair;
 import biz.dealnote.messenger.crypt.CryptHelper;
@@ -13,8 +16,10 @@ import biz.dealnote.messenger.domain.IMessagesDecryptor;
 import biz.dealnote.messenger.model.CryptStatus;
 import biz.dealnote.messenger.model.Message;
 import biz.dealnote.messenger.util.Pair;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import io.reactivex.SingleTransformer;
+import io.reactivex.schedulers.Schedulers;
 
 import static biz.dealnote.messenger.util.Objects.isNull;
 import static biz.dealnote.messenger.util.Objects.nonNull;
@@ -25,6 +30,11 @@ import static biz.dealnote.messenger.util.Objects.nonNull;
  */
 public class MessagesDecryptor implements IMessagesDecryptor {
 
+    /**
+     * Начиная с такого количества сообщений расшифровка идет параллельно на computation-потоках
+     */
+    private static final int PARALLEL_DECRYPTION_THRESHOLD = 30;
+
     private final IStorages store;
 
     public MessagesDecryptor(IStorages store) {
@@ -35,7 +45,8 @@ public class MessagesDecryptor implements IMessagesDecryptor {
     public SingleTransformer<List<Message>, List<Message>> withMessagesDecryption(int accountId) {
         return single -> single
                 .flatMap(messages -> {
-                    final List<Pair<Integer, Long>> sessions = new ArrayList<>(0);
+                    // ID сессий по месту хранения ключей, каждая сессия - один раз
+                    final SparseArray<Set<Long>> sessions = new SparseArray<>(1);
                     final List<Pair<Message, EncryptedMessage>> needDecryption = new ArrayList<>(0);
 
                     for (Message message : messages) {
@@ -48,7 +59,14 @@ public class MessagesDecryptor implements IMessagesDecryptor {
 
                             if (nonNull(em)) {
                                 needDecryption.add(Pair.Companion.create(message, em));
-                                sessions.add(Pair.Companion.create(em.getKeyLocationPolicy(), em.getSessionId()));
+
+                                Set<Long> policySessions = sessions.get(em.getKeyLocationPolicy());
+                                if (isNull(policySessions)) {
+                                    policySessions = new HashSet<>(1);
+                                    sessions.put(em.getKeyLocationPolicy(), policySessions);
+                                }
+
+                                policySessions.add(em.getSessionId());
                             } else {
                                 message.setCryptStatus(CryptStatus.DECRYPT_FAILED);
                             }
@@ -62,54 +80,65 @@ public class MessagesDecryptor implements IMessagesDecryptor {
                     }
 
                     return getKeyPairs(accountId, sessions)
-                            .map(keys -> {
-                                for (Pair<Message, EncryptedMessage> pair : needDecryption) {
-                                    Message message = pair.getFirst();
-                                    EncryptedMessage em = pair.getSecond();
-
-                                    try {
-                                        AesKeyPair keyPair = keys.get(em.getSessionId());
-
-                                        if (isNull(keyPair)) {
-                                            message.setCryptStatus(CryptStatus.DECRYPT_FAILED);
-                                            continue;
-                                        }
-
-                                        String key = message.isOut() ? keyPair.getMyAesKey() : keyPair.getHisAesKey();
-                                        String decryptedBody = CryptHelper.decryptWithAes(em.getOriginalBody(), key);
-
-                                        message.setDecryptedBody(decryptedBody);
-                                        message.setCryptStatus(CryptStatus.DECRYPTED);
-                                    } catch (Exception e) {
-                                        message.setCryptStatus(CryptStatus.DECRYPT_FAILED);
+                            .flatMap(keys -> {
+                                if (needDecryption.size() < PARALLEL_DECRYPTION_THRESHOLD) {
+                                    for (Pair<Message, EncryptedMessage> pair : needDecryption) {
+                                        decrypt(pair.getFirst(), pair.getSecond(), keys);
                                     }
+
+                                    return Single.just(messages);
                                 }
 
-                                return messages;
+                                return Flowable.fromIterable(needDecryption)
+                                        .parallel()
+                                        .runOn(Schedulers.computation())
+                                        .doOnNext(pair -> decrypt(pair.getFirst(), pair.getSecond(), keys))
+                                        .sequential()
+                                        .ignoreElements()
+                                        .toSingleDefault(messages);
                             });
                 });
     }
 
-    private Single<LongSparseArray<AesKeyPair>> getKeyPairs(final int accountId, final List<Pair<Integer, Long>> tokens) {
+    private static void decrypt(Message message, EncryptedMessage em, LongSparseArray<AesKeyPair> keys) {
+        try {
+            AesKeyPair keyPair = keys.get(em.getSessionId());
+
+            if (isNull(keyPair)) {
+                message.setCryptStatus(CryptStatus.DECRYPT_FAILED);
+                return;
+            }
+
+            String key = message.isOut() ? keyPair.getMyAesKey() : keyPair.getHisAesKey();
+            String decryptedBody = CryptHelper.decryptWithAes(em.getOriginalBody(), key);
+
+            message.setDecryptedBody(decryptedBody);
+            message.setCryptStatus(CryptStatus.DECRYPTED);
+        } catch (Exception e) {
+            message.setCryptStatus(CryptStatus.DECRYPT_FAILED);
+        }
+    }
+
+    private Single<LongSparseArray<AesKeyPair>> getKeyPairs(final int accountId, final SparseArray<Set<Long>> sessions) {
         return Single.create(emitter -> {
-            LongSparseArray<AesKeyPair> keys = new LongSparseArray<>(tokens.size());
+            LongSparseArray<AesKeyPair> keys = new LongSparseArray<>();
 
-            for (Pair<Integer, Long> token : tokens) {
+            for (int i = 0; i < sessions.size(); i++) {
                 if (emitter.isDisposed()) {
                     break;
                 }
 
-                final long sessionId = token.getSecond();
-                final int keyPolicy = token.getFirst();
-
-                AesKeyPair keyPair = store.keys(keyPolicy).findKeyPairFor(accountId, sessionId).blockingGet();
+                final int keyPolicy = sessions.keyAt(i);
+                final List<AesKeyPair> pairs = store.keys(keyPolicy)
+                        .findKeyPairsFor(accountId, sessions.valueAt(i))
+                        .blockingGet();
 
-                if (nonNull(keyPair)) {
-                    keys.append(sessionId, keyPair);
+                for (AesKeyPair pair : pairs) {
+                    keys.put(pair.getSessionId(), pair);
                 }
             }
 
             emitter.onSuccess(keys);
         });
     }
-}
\ No newline at end of file
+}
@@ -15,6 +15,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +43,7 @@ import biz.dealnote.messenger.api.model.longpoll.InputMessagesSetReadUpdate;
 import biz.dealnote.messenger.api.model.longpoll.MessageFlagsResetUpdate;
 import biz.dealnote.messenger.api.model.longpoll.MessageFlagsSetUpdate;
 import biz.dealnote.messenger.api.model.longpoll.OutputMessagesSetReadUpdate;
+import biz.dealnote.messenger.api.model.longpoll.VkApiLongpollUpdates;
 import biz.dealnote.messenger.api.model.longpoll.WriteTextInDialogUpdate;
 import biz.dealnote.messenger.api.model.response.SearchDialogsResponse;
 import biz.dealnote.messenger.crypt.AesKeyPair;
@@ -48,13 +51,14 @@ import biz.dealnote.messenger.crypt.CryptHelper;
 import biz.dealnote.messenger.crypt.KeyLocationPolicy;
 import biz.dealnote.messenger.crypt.KeyPairDoesNotExistException;
 import biz.dealnote.messenger.db.PeerStateEntity;
+import biz.dealnote.messenger.db.RecordNotFoundException;
 import biz.dealnote.messenger.db.column.UserColumns;
 import biz.dealnote.messenger.db.interfaces.IDialogsStorage;
-import biz.dealnote.messenger.db.interfaces.IMessagesStorage;
 import biz.dealnote.messenger.db.interfaces.IStorages;
 import biz.dealnote.messenger.db.model.MessageEditEntity;
 import biz.dealnote.messenger.db.model.MessagePatch;
 import biz.dealnote.messenger.db.model.PeerPatch;
+import biz.dealnote.messenger.db.model.UserPatch;
 import biz.dealnote.messenger.db.model.entity.DialogEntity;
 import biz.dealnote.messenger.db.model.entity.Entity;
 import biz.dealnote.messenger.db.model.entity.MessageEntity;
@@ -100,6 +104,7 @@ import biz.dealnote.messenger.upload.Upload;
 import biz.dealnote.messenger.upload.UploadDestination;
 import biz.dealnote.messenger.util.Objects;
 import biz.dealnote.messenger.util.Optional;
+import biz.dealnote.messenger.util.Pair;
 import biz.dealnote.messenger.util.Unixtime;
 import biz.dealnote.messenger.util.Utils;
 import biz.dealnote.messenger.util.VKOwnIds;
@@ -115,6 +120,7 @@ import io.reactivex.schedulers.Schedulers;
 
 import static biz.dealnote.messenger.util.Objects.isNull;
 import static biz.dealnote.messenger.util.Objects.nonNull;
+import static biz.dealnote.messenger.util.RxUtils.dummy;
 import static biz.dealnote.messenger.util.RxUtils.ignore;
 import static biz.dealnote.messenger.util.RxUtils.safelyCloseAction;
 import static biz.dealnote.messenger.util.Utils.hasFlag;
@@ -148,6 +154,7 @@ public class MessagesRepository implements IMessagesRepository {
     private final IMessagesDecryptor decryptor;
     private final IUploadManager uploadManager;
 
+    private final PeerStateCache peerStateCache = new PeerStateCache();
     private final PublishProcessor<List<PeerUpdate>> peerUpdatePublisher = PublishProcessor.create();
     private final PublishProcessor<PeerDeleting> peerDeletingPublisher = PublishProcessor.create();
     private final PublishProcessor<List<MessageUpdate>> messageUpdatesPublisher = PublishProcessor.create();
@@ -155,8 +162,13 @@ public class MessagesRepository implements IMessagesRepository {
     private final PublishProcessor<SentMsg> sentMessagesPublisher = PublishProcessor.create();
     private final PublishProcessor<Throwable> sendErrorsPublisher = PublishProcessor.create();
 
+    /**
+     * Сколько сообщений может отправляться одновременно (в разные диалоги)
+     */
+    private static final int MAX_CONCURRENT_SENDS = 3;
+
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
-    private final Scheduler senderScheduler = Schedulers.from(Executors.newFixedThreadPool(1));
+    private final Scheduler senderScheduler = Schedulers.from(Executors.newFixedThreadPool(MAX_CONCURRENT_SENDS));
 
     public MessagesRepository(ISettings.IAccountsSettings accountsSettings, INetworker networker,
                               IOwnersRepository ownersRepository, IStorages storages, IUploadManager uploadManager) {
@@ -192,7 +204,26 @@ public class MessagesRepository implements IMessagesRepository {
 
     private final InternalHandler handler = new InternalHandler(this);
 
-    private boolean nowSending;
+    /**
+     * Очередь неотправленных сообщений по диалогам.
+     * Внутри диалога сообщения уходят строго по порядку, разные диалоги отправляются параллельно.
+     * Все поля очереди используются только из главного потока
+     */
+    private final Map<PeerId, LinkedList<MessageEntity>> sendQueue = new LinkedHashMap<>();
+
+    /**
+     * Диалоги, в которые сообщение отправляется прямо сейчас
+     */
+    private final Set<PeerId> sendingPeers = new HashSet<>();
+
+    /**
+     * Сообщения, которые уже есть в очереди или отправляются, см. {@link #messageKey(int, int)}
+     */
+    private final Set<Long> queuedMessages = new HashSet<>();
+
+    private boolean queueLoading;
+
+    private boolean queueInvalidated;
 
     @Override
     public void runSendingQueue() {
@@ -200,16 +231,22 @@ public class MessagesRepository implements IMessagesRepository {
     }
 
     /**
-     * Отправить первое неотправленное сообщение
+     * Подгрузить новые неотправленные сообщения в очередь и запустить отправку.
+     * База читается только при добавлении сообщений в очередь, а не после каждой отправки
      */
     @MainThread
     private void send() {
-        if (nowSending) {
+        if (queueLoading) {
+            queueInvalidated = true;
             return;
         }
 
-        nowSending = true;
-        sendMessage(registeredAccounts());
+        queueLoading = true;
+        compositeDisposable.add(storages.messages()
+                .findUnsentMessages(registeredAccounts(), true, false)
+                .subscribeOn(Schedulers.io())
+                .observeOn(Injection.provideMainThreadScheduler())
+                .subscribe(this::onUnsentMessagesLoaded, this::onUnsentMessagesLoadingError));
     }
 
     private List<Integer> registeredAccounts;
@@ -221,30 +258,104 @@ public class MessagesRepository implements IMessagesRepository {
         return registeredAccounts;
     }
 
-    private void onMessageSent(SentMsg msg) {
-        nowSending = false;
+    private static long messageKey(int accountId, int messageId) {
+        return ((long) accountId << 32) | (messageId & 0xffffffffL);
+    }
+
+    private void onUnsentMessagesLoaded(List<Pair<Integer, MessageEntity>> unsent) {
+        queueLoading = false;
+
+        for (Pair<Integer, MessageEntity> pair : unsent) {
+            final int accountId = pair.getFirst();
+            final MessageEntity entity = pair.getSecond();
+
+            if (!queuedMessages.add(messageKey(accountId, entity.getId()))) {
+                continue;
+            }
+
+            PeerId peer = new PeerId(accountId, entity.getPeerId());
+            LinkedList<MessageEntity> peerQueue = sendQueue.get(peer);
+            if (isNull(peerQueue)) {
+                peerQueue = new LinkedList<>();
+                sendQueue.put(peer, peerQueue);
+            }
+
+            peerQueue.add(entity);
+        }
+
+        if (queueInvalidated) {
+            queueInvalidated = false;
+            send();
+        }
+
+        dispatchSending();
+    }
+
+    private void onUnsentMessagesLoadingError(Throwable t) {
+        queueLoading = false;
+        sendErrorsPublisher.onNext(t);
+    }
+
+    private void dispatchSending() {
+        Iterator<Map.Entry<PeerId, LinkedList<MessageEntity>>> iterator = sendQueue.entrySet().iterator();
+
+        while (sendingPeers.size() < MAX_CONCURRENT_SENDS && iterator.hasNext()) {
+            Map.Entry<PeerId, LinkedList<MessageEntity>> entry = iterator.next();
+            final PeerId peer = entry.getKey();
+
+            if (sendingPeers.contains(peer)) {
+                continue;
+            }
+
+            final MessageEntity entity = entry.getValue().poll();
+
+            if (entry.getValue().isEmpty()) {
+                iterator.remove();
+            }
+
+            if (isNull(entity)) {
+                continue;
+            }
+
+            sendingPeers.add(peer);
+
+            compositeDisposable.add(sendEntity(peer.accountId, entity)
+                    .subscribeOn(senderScheduler)
+                    .observeOn(Injection.provideMainThreadScheduler())
+                    .subscribe(msg -> onMessageSent(peer, entity, msg), t -> onMessageSendError(peer, entity, t)));
+        }
+    }
+
+    private void onMessageSent(PeerId peer, MessageEntity entity, SentMsg msg) {
+        sendingPeers.remove(peer);
+        queuedMessages.remove(messageKey(peer.accountId, entity.getId()));
         sentMessagesPublisher.onNext(msg);
-        send();
+        dispatchSending();
     }
 
-    private void onMessageSendError(Throwable t) {
+    private void onMessageSendError(PeerId peer, MessageEntity entity, Throwable t) {
+        sendingPeers.remove(peer);
+        queuedMessages.remove(messageKey(peer.accountId, entity.getId()));
+
         Throwable cause = Utils.getCauseIfRuntime(t);
-        nowSending = false;
 
-        if (cause instanceof NotFoundException) {
-            // no unsent messages
+        if (cause instanceof NotFoundException || cause instanceof RecordNotFoundException) {
+            // сообщение удалено или уже не в очереди
+            dispatchSending();
             return;
         }
 
-        sendErrorsPublisher.onNext(t);
-    }
+        // остальные сообщения этого диалога не отправляем, чтобы не нарушить порядок,
+        // они будут загружены заново при следующем запуске очереди
+        LinkedList<MessageEntity> rest = sendQueue.remove(peer);
+        if (nonNull(rest)) {
+            for (MessageEntity e : rest) {
+                queuedMessages.remove(messageKey(peer.accountId, e.getId()));
+            }
+        }
 
-    private void sendMessage(Collection<Integer> accountIds) {
-        nowSending = true;
-        compositeDisposable.add(sendUnsentMessage(accountIds)
-                .subscribeOn(senderScheduler)
-                .observeOn(Injection.provideMainThreadScheduler())
-                .subscribe(this::onMessageSent, this::onMessageSendError));
+        sendErrorsPublisher.onNext(t);
+        dispatchSending();
     }
 
     private static final class InternalHandler extends WeakMainLooperHandler<MessagesRepository> {
@@ -297,6 +408,10 @@ public class MessagesRepository implements IMessagesRepository {
 
     @Override
     public Completable handleFlagsUpdates(int accountId, @Nullable List<MessageFlagsSetUpdate> setUpdates, @Nullable List<MessageFlagsResetUpdate> resetUpdates) {
+        return applyMessagesPatchesAndPublish(accountId, createFlagsPatches(setUpdates, resetUpdates));
+    }
+
+    private static List<MessagePatch> createFlagsPatches(@Nullable List<MessageFlagsSetUpdate> setUpdates, @Nullable List<MessageFlagsResetUpdate> resetUpdates) {
         final List<MessagePatch> patches = new ArrayList<>();
 
         if (nonEmpty(setUpdates)) {
@@ -339,7 +454,7 @@ public class MessagesRepository implements IMessagesRepository {
             }
         }
 
-        return applyMessagesPatchesAndPublish(accountId, patches);
+        return patches;
     }
 
     @Override
@@ -364,6 +479,10 @@ public class MessagesRepository implements IMessagesRepository {
 
     @Override
     public Completable handleReadUpdates(int accountId, @Nullable List<OutputMessagesSetReadUpdate> outgoing, @Nullable List<InputMessagesSetReadUpdate> incoming) {
+        return applyPeerUpdatesAndPublish(accountId, createReadPatches(outgoing, incoming));
+    }
+
+    private static List<PeerPatch> createReadPatches(@Nullable List<OutputMessagesSetReadUpdate> outgoing, @Nullable List<InputMessagesSetReadUpdate> incoming) {
         List<PeerPatch> patches = new ArrayList<>();
 
         if (nonEmpty(outgoing)) {
@@ -378,7 +497,118 @@ public class MessagesRepository implements IMessagesRepository {
             }
         }
 
-        return applyPeerUpdatesAndPublish(accountId, patches);
+        return patches;
+    }
+
+    @Override
+    public Completable handleLongpollUpdates(int accountId, @NonNull VkApiLongpollUpdates updates) {
+        final List<MessagePatch> messagePatches = collapseMessagePatches(
+                createFlagsPatches(updates.message_flags_set_updates, updates.message_flags_reset_updates));
+        final List<PeerPatch> peerPatches = collapsePeerPatches(
+                createReadPatches(updates.output_messages_set_read_updates, updates.input_messages_set_read_updates));
+        final List<UserPatch> userPatches = ownersRepository.createOnlinePatches(updates.user_is_offline_updates, updates.user_is_online_updates);
+
+        Completable completable = Completable.complete();
+
+        if (nonEmpty(messagePatches) || nonEmpty(peerPatches) || nonEmpty(userPatches)) {
+            completable = storages.database()
+                    .applyPatches(accountId, messagePatches, peerPatches, userPatches)
+                    .andThen(invalidateLastMessages(accountId, messagePatches))
+                    .doOnComplete(() -> {
+                        if (nonEmpty(peerPatches)) {
+                            peerStateCache.applyPatches(accountId, peerPatches);
+                            peerUpdatePublisher.onNext(createPeerUpdates(accountId, peerPatches));
+                        }
+
+                        if (nonEmpty(messagePatches)) {
+                            messageUpdatesPublisher.onNext(createMessageUpdates(accountId, messagePatches));
+                        }
+
+                        if (nonEmpty(userPatches)) {
+                            ownersRepository.notifyPatchesApplied(accountId, userPatches);
+                        }
+                    });
+        }
+
+        if (nonEmpty(updates.badge_count_change_updates)) {
+            // важно только последнее значение счетчика
+            List<BadgeCountChangeUpdate> badges = updates.badge_count_change_updates;
+            completable = completable.andThen(handleUnreadBadgeUpdates(accountId, Collections.singletonList(badges.get(badges.size() - 1))));
+        }
+
+        if (nonEmpty(updates.write_text_in_dialog_updates)) {
+            completable = completable.andThen(handleWriteUpdates(accountId, updates.write_text_in_dialog_updates));
+        }
+
+        return completable;
+    }
+
+    /**
+     * Объединяет изменения одного и того же сообщения, более позднее изменение поля выигрывает
+     */
+    private static List<MessagePatch> collapseMessagePatches(List<MessagePatch> patches) {
+        Map<Integer, MessagePatch> result = new LinkedHashMap<>(patches.size());
+
+        for (MessagePatch patch : patches) {
+            MessagePatch target = result.get(patch.getMessageId());
+
+            if (isNull(target)) {
+                result.put(patch.getMessageId(), patch);
+                continue;
+            }
+
+            if (nonNull(patch.getDeletion())) {
+                target.setDeletion(patch.getDeletion());
+            }
+
+            if (nonNull(patch.getImportant())) {
+                target.setImportant(patch.getImportant());
+            }
+        }
+
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Объединяет изменения одного и того же диалога, более позднее изменение поля выигрывает
+     */
+    private static List<PeerPatch> collapsePeerPatches(List<PeerPatch> patches) {
+        Map<Integer, PeerPatch> result = new LinkedHashMap<>(patches.size());
+
+        for (PeerPatch patch : patches) {
+            PeerPatch target = result.get(patch.getId());
+
+            if (isNull(target)) {
+                target = new PeerPatch(patch.getId());
+                result.put(patch.getId(), target);
+            }
+
+            if (nonNull(patch.getInRead())) {
+                target.withInRead(patch.getInRead().getId());
+            }
+
+            if (nonNull(patch.getOutRead())) {
+                target.withOutRead(patch.getOutRead().getId());
+            }
+
+            if (nonNull(patch.getUnread())) {
+                target.withUnreadCount(patch.getUnread().getCount());
+            }
+
+            if (nonNull(patch.getLastMessage())) {
+                target.withLastMessage(patch.getLastMessage().getId());
+            }
+
+            if (nonNull(patch.getPin())) {
+                target.withPin(patch.getPin().getPinned());
+            }
+
+            if (nonNull(patch.getTitle())) {
+                target.withTitle(patch.getTitle().getTitle());
+            }
+        }
+
+        return new ArrayList<>(result.values());
     }
 
     @Override
@@ -434,9 +664,46 @@ public class MessagesRepository implements IMessagesRepository {
         throw new IllegalArgumentException("Unsupported mode: " + mode);
     }
 
+    private Single<Optional<SimpleDialogEntity>> findSimpleDialog(int accountId, int peerId) {
+        // кэш и его поколение читаются в момент подписки, а не создания Single
+        return Single.defer(() -> {
+            SimpleDialogEntity cached = peerStateCache.get(accountId, peerId);
+            if (nonNull(cached)) {
+                return Single.just(Optional.wrap(cached));
+            }
+
+            final long generation = peerStateCache.generation(accountId);
+            return storages.dialogs()
+                    .findSimple(accountId, peerId)
+                    .doOnSuccess(optional -> {
+                        if (optional.nonEmpty()) {
+                            peerStateCache.put(accountId, optional.get(), generation);
+                        }
+                    });
+        });
+    }
+
+    private Single<List<PeerStateEntity>> findPeerStates(int accountId, Collection<Integer> peerIds) {
+        // кэш читается в момент подписки, а не создания Single
+        return Single.defer(() -> {
+            List<PeerStateEntity> cached = new ArrayList<>(peerIds.size());
+            List<Integer> missing = peerStateCache.findStates(accountId, peerIds, cached);
+
+            if (missing.isEmpty()) {
+                return Single.just(cached);
+            }
+
+            return storages.dialogs()
+                    .findPeerStates(accountId, missing)
+                    .map(states -> {
+                        cached.addAll(states);
+                        return cached;
+                    });
+        });
+    }
+
     private Single<Optional<Conversation>> getCachedConversation(int accountId, int peerId) {
-        return storages.dialogs()
-                .findSimple(accountId, peerId)
+        return findSimpleDialog(accountId, peerId)
                 .flatMap(optional -> {
                     if (optional.isEmpty()) {
                         return Single.just(Optional.empty());
@@ -465,6 +732,7 @@ public class MessagesRepository implements IMessagesRepository {
 
                     return ownersRepository.insertOwners(accountId, ownerEntities)
                             .andThen(storages.dialogs().saveSimple(accountId, entity))
+                            .doOnComplete(() -> peerStateCache.put(accountId, entity))
                             .andThen(Single.just(entity))
                             .compose(simpleEntity2Conversation(accountId, existsOwners));
                 });
@@ -632,8 +900,7 @@ public class MessagesRepository implements IMessagesRepository {
                         peers.add(m.peer_id);
                     }
 
-                    return storages.dialogs()
-                            .findPeerStates(accountId, peers)
+                    return findPeerStates(accountId, peers)
                             .flatMapCompletable(peerStates -> {
                                 List<PeerPatch> patches = new ArrayList<>(peerStates.size());
 
@@ -666,6 +933,15 @@ public class MessagesRepository implements IMessagesRepository {
     }
 
     private Completable applyPeerUpdatesAndPublish(int accountId, List<PeerPatch> patches) {
+        List<PeerUpdate> updates = createPeerUpdates(accountId, patches);
+        return storages.dialogs().applyPatches(accountId, patches)
+                .doOnComplete(() -> {
+                    peerStateCache.applyPatches(accountId, patches);
+                    peerUpdatePublisher.onNext(updates);
+                });
+    }
+
+    private static List<PeerUpdate> createPeerUpdates(int accountId, List<PeerPatch> patches) {
         List<PeerUpdate> updates = new ArrayList<>();
         for (PeerPatch p : patches) {
             PeerUpdate update = new PeerUpdate(accountId, p.getId());
@@ -692,8 +968,7 @@ public class MessagesRepository implements IMessagesRepository {
             updates.add(update);
         }
 
-        return storages.dialogs().applyPatches(accountId, patches)
-                .doOnComplete(() -> peerUpdatePublisher.onNext(updates));
+        return updates;
     }
 
     @Override
@@ -755,6 +1030,19 @@ public class MessagesRepository implements IMessagesRepository {
                 });
     }
 
+    private void cacheDialogs(int accountId, List<DialogEntity> entities, boolean clear) {
+        if (clear) {
+            peerStateCache.invalidate(accountId);
+        }
+
+        List<SimpleDialogEntity> simples = new ArrayList<>(entities.size());
+        for (DialogEntity entity : entities) {
+            simples.add(entity.simplify());
+        }
+
+        peerStateCache.putAll(accountId, simples);
+    }
+
     @Override
     public Single<List<Dialog>> getDialogs(int accountId, int count, Integer startMessageId) {
         final boolean clear = isNull(startMessageId);
@@ -812,6 +1100,7 @@ public class MessagesRepository implements IMessagesRepository {
 
                                 final Completable insertCompletable = dialogsStore
                                         .insertDialogs(accountId, entities, clear)
+                                        .doOnComplete(() -> cacheDialogs(accountId, entities, clear))
                                         .andThen(ownersRepository.insertOwners(accountId, ownerEntities))
                                         .doOnComplete(() -> dialogsStore.setUnreadDialogsCount(accountId, response.unreadCount));
 
@@ -932,22 +1221,18 @@ public class MessagesRepository implements IMessagesRepository {
         return changeMessageStatus(accountId, messageId, MessageStatus.QUEUE, null);
     }
 
-    @Override
-    public Single<SentMsg> sendUnsentMessage(Collection<Integer> accountIds) {
-        final IMessagesStorage store = this.storages.messages();
+    private Single<SentMsg> sendEntity(int accountId, MessageEntity entity) {
+        final int dbid = entity.getId();
+        final int peerId = entity.getPeerId();
 
-        return store
-                .findFirstUnsentMessage(accountIds, true, false)
-                .flatMap(optional -> {
-                    if (optional.isEmpty()) {
+        return storages.messages()
+                .getMessageStatus(accountId, dbid)
+                .flatMap(status -> {
+                    // сообщение могли удалить или изменить, пока оно ждало в очереди
+                    if (status != MessageStatus.QUEUE && status != MessageStatus.SENDING) {
                         return Single.error(new NotFoundException());
                     }
 
-                    final MessageEntity entity = optional.get().getSecond();
-                    final int accountId = optional.get().getFirst();
-                    final int dbid = entity.getId();
-                    final int peerId = entity.getPeerId();
-
                     return changeMessageStatus(accountId, dbid, MessageStatus.SENDING, null)
                             .andThen(internalSend(accountId, entity)
                                     .flatMap(vkid -> {
@@ -991,7 +1276,7 @@ public class MessagesRepository implements IMessagesRepository {
 
     @Override
     public Single<List<Message>> searchMessages(int accountId, Integer peerId, int count, int offset, String q) {
-        return networker.vkDefault(accountId)
+        Single<List<Message>> remote = networker.vkDefault(accountId)
                 .messages()
                 .search(q, peerId, null, null, offset, count)
                 .map(items -> listEmptyIfNull(items.getItems()))
@@ -1011,6 +1296,75 @@ public class MessagesRepository implements IMessagesRepository {
                             })
                             .compose(decryptor.withMessagesDecryption(accountId));
                 });
+
+        if (offset > 0) {
+            return remote;
+        }
+
+        // первая страница дополняется найденным в кэше, а без сети - отдается только из кэша.
+        // поиск по кэшу выполняется один раз, даже если после ошибки сети он нужен повторно
+        Single<List<Message>> cached = searchCachedMessages(accountId, peerId, count, 0, q)
+                .onErrorReturnItem(Collections.emptyList())
+                .cache();
+
+        return Single.zip(remote, cached, (messages, local) -> mergeSearchResults(messages, local, count))
+                .onErrorResumeNext(throwable -> cached.flatMap(local -> local.isEmpty()
+                        ? Single.error(throwable) : Single.just(local)));
+    }
+
+    /**
+     * Добавляет к странице ответа API сообщения из кэша, которых в ней нет, но не больше,
+     * чем до {@code count}: следующая страница запрашивается со смещением на {@code count}.
+     * Полная страница остается как есть, более старые сообщения придут со следующими страницами
+     */
+    private static List<Message> mergeSearchResults(List<Message> remote, List<Message> local, int count) {
+        if (remote.size() >= count) {
+            return remote;
+        }
+
+        Set<Integer> ids = new HashSet<>(remote.size());
+        for (Message message : remote) {
+            ids.add(message.getId());
+        }
+
+        List<Message> extra = new ArrayList<>(0);
+        for (Message message : local) {
+            if (!ids.contains(message.getId())) {
+                extra.add(message);
+            }
+        }
+
+        // в первую очередь - самые новые
+        Collections.sort(extra, (lhs, rhs) -> Long.compare(rhs.getDate(), lhs.getDate()));
+
+        List<Message> result = new ArrayList<>(remote);
+        result.addAll(extra.subList(0, Math.min(extra.size(), count - remote.size())));
+
+        if (result.size() > remote.size()) {
+            Collections.sort(result, (lhs, rhs) -> Long.compare(rhs.getDate(), lhs.getDate()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Аккаунты, для которых в этом процессе уже запущена индексация сохраненных сообщений
+     */
+    private final Set<Integer> searchIndexedAccounts = Collections.synchronizedSet(new HashSet<>());
+
+    @Override
+    public Single<List<Message>> searchCachedMessages(int accountId, Integer peerId, int count, int offset, String q) {
+        if (searchIndexedAccounts.add(accountId)) {
+            // пока индекс дозаполняется, результаты по старым сообщениям могут быть неполными
+            compositeDisposable.add(storages.messages()
+                    .indexForSearch(accountId)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(dummy(), ignore()));
+        }
+
+        return storages.messages()
+                .search(accountId, peerId, q, count, offset)
+                .compose(entities2Models(accountId));
     }
 
     @Override
@@ -1097,6 +1451,7 @@ public class MessagesRepository implements IMessagesRepository {
                 .deleteDialog(peedId)
                 .flatMapCompletable(ignored -> storages.dialogs()
                         .removePeerWithId(accountId, peedId)
+                        .doOnComplete(() -> peerStateCache.remove(accountId, peedId))
                         .andThen(storages.messages().insertPeerDbos(accountId, peedId, Collections.emptyList(), true)))
                 .doOnComplete(() -> peerDeletingPublisher.onNext(new PeerDeleting(accountId, peedId)));
     }
@@ -1136,12 +1491,30 @@ public class MessagesRepository implements IMessagesRepository {
     }
 
     private Completable applyMessagesPatchesAndPublish(int accountId, List<MessagePatch> patches) {
-        List<MessageUpdate> updates = new ArrayList<>(patches.size());
-        Set<PeerId> requireInvalidate = new HashSet<>(0);
+        List<MessageUpdate> updates = createMessageUpdates(accountId, patches);
+
+        return storages.messages()
+                .applyPatches(accountId, patches)
+                .andThen(invalidateLastMessages(accountId, patches))
+                .doOnComplete(() -> messageUpdatesPublisher.onNext(updates));
+    }
 
+    private static List<MessageUpdate> createMessageUpdates(int accountId, List<MessagePatch> patches) {
+        List<MessageUpdate> updates = new ArrayList<>(patches.size());
         for (MessagePatch patch : patches) {
             updates.add(patch2Update(accountId, patch));
+        }
 
+        return updates;
+    }
+
+    /**
+     * После удаления сообщений у диалогов может смениться последнее сообщение
+     */
+    private Completable invalidateLastMessages(int accountId, List<MessagePatch> patches) {
+        Set<PeerId> requireInvalidate = new HashSet<>(0);
+
+        for (MessagePatch patch : patches) {
             if (patch.getDeletion() != null) {
                 requireInvalidate.add(new PeerId(accountId, patch.getPeerId()));
             }
@@ -1158,10 +1531,7 @@ public class MessagesRepository implements IMessagesRepository {
             afterApply = Completable.merge(invalidatePeers);
         }
 
-        return storages.messages()
-                .applyPatches(accountId, patches)
-                .andThen(afterApply)
-                .doOnComplete(() -> messageUpdatesPublisher.onNext(updates));
+        return afterApply;
     }
 
     private static final class PeerId {
@@ -1198,7 +1568,10 @@ public class MessagesRepository implements IMessagesRepository {
                     if (optionalId.isEmpty()) {
                         PeerDeleting deleting = new PeerDeleting(accountId, peerId);
                         return storages.dialogs().removePeerWithId(accountId, peerId)
-                                .doOnComplete(() -> peerDeletingPublisher.onNext(deleting));
+                                .doOnComplete(() -> {
+                                    peerStateCache.remove(accountId, peerId);
+                                    peerDeletingPublisher.onNext(deleting);
+                                });
                     } else {
                         PeerPatch patch = new PeerPatch(peerId).withLastMessage(optionalId.get());
                         return applyPeerUpdatesAndPublish(accountId, Collections.singletonList(patch));
@@ -1264,7 +1637,10 @@ public class MessagesRepository implements IMessagesRepository {
 
         return apiCompletable
                 .andThen(storages.dialogs().applyPatches(accountId, Collections.singletonList(patch)))
-                .doOnComplete(() -> peerUpdatePublisher.onNext(Collections.singletonList(update)));
+                .doOnComplete(() -> {
+                    peerStateCache.applyPatches(accountId, Collections.singletonList(patch));
+                    peerUpdatePublisher.onNext(Collections.singletonList(update));
+                });
     }
 
     private Single<Integer> internalSend(int accountId, MessageEntity dbo) {
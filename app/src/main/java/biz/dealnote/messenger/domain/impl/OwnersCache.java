@@ -0,0 +1,226 @@
+package biz.dealnote.messenger.domain.impl;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import biz.dealnote.messenger.model.Owner;
+import biz.dealnote.messenger.util.Logger;
+
+/**
+ * Кэш базовых данных пользователей и сообществ в памяти, отдельный для каждого аккаунта.
+ * Ключ - ownerId (у сообществ отрицательный), при переполнении удаляется
+ * давно не использовавшаяся запись.
+ * <p>
+ * Владельцы сохраняются в базу не только через {@link OwnersRepository}
+ * (например, вместе со стеной или новостями), поэтому запись живет не дольше {@link #MAX_AGE_MS}.
+ */
+final class OwnersCache {
+
+    private static final String TAG = OwnersCache.class.getSimpleName();
+
+    private static final int MAX_SIZE_PER_ACCOUNT = 500;
+
+    private static final long MAX_AGE_MS = 5 * 60 * 1000;
+
+    private final SparseArray<AccountOwners> accounts = new SparseArray<>(1);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Текущее поколение кэша аккаунта. Его нужно запомнить перед чтением из базы
+     * и передать в {@link #putAll(int, Collection, long)}: если за время чтения данные
+     * были изменены, прочитанное уже неактуально и в кэш не попадет
+     */
+    synchronized long generation(int accountId) {
+        return getAccount(accountId).generation;
+    }
+
+    /**
+     * Ищет владельцев в кэше
+     *
+     * @param ownerIds идентификаторы (у сообществ отрицательные)
+     * @param found    сюда добавляются найденные
+     * @return идентификаторы, которых нет в кэше
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T extends Owner> List<Integer> find(int accountId, Collection<Integer> ownerIds, List<T> found) {
+        AccountOwners owners = getAccount(accountId);
+        List<Integer> missing = new ArrayList<>(0);
+        long now = SystemClock.elapsedRealtime();
+
+        for (int ownerId : ownerIds) {
+            Node node = owners.nodes.get(ownerId);
+
+            if (node != null && now - node.cachedAt > MAX_AGE_MS) {
+                owners.remove(node);
+                node = null;
+            }
+
+            if (node == null) {
+                missing.add(ownerId);
+            } else {
+                owners.moveToHead(node);
+                found.add((T) node.owner);
+            }
+        }
+
+        logLookup(ownerIds.size(), missing.size());
+        return missing;
+    }
+
+    /**
+     * Сохраняет свежие данные (например, только что полученные из сети)
+     */
+    synchronized void putAll(int accountId, Collection<? extends Owner> data) {
+        AccountOwners owners = getAccount(accountId);
+        long now = SystemClock.elapsedRealtime();
+
+        for (Owner owner : data) {
+            owners.put(owner, now);
+        }
+    }
+
+    /**
+     * Сохраняет данные, прочитанные из базы, если с начала чтения кэш не инвалидировался
+     */
+    synchronized void putAll(int accountId, Collection<? extends Owner> data, long generation) {
+        if (getAccount(accountId).generation == generation) {
+            putAll(accountId, data);
+        }
+    }
+
+    synchronized void invalidate(int accountId, Collection<Integer> ownerIds) {
+        AccountOwners owners = getAccount(accountId);
+        owners.generation++;
+
+        for (int ownerId : ownerIds) {
+            Node node = owners.nodes.get(ownerId);
+            if (node != null) {
+                owners.remove(node);
+            }
+        }
+    }
+
+    private void logLookup(int requested, int missed) {
+        long hits = hitCount.addAndGet(requested - missed);
+        long misses = missCount.addAndGet(missed);
+
+        if (missed > 0) {
+            Logger.d(TAG, "Not in memory: " + missed + " of " + requested + ", total hits: " + hits + ", misses: " + misses);
+        }
+    }
+
+    private AccountOwners getAccount(int accountId) {
+        AccountOwners owners = accounts.get(accountId);
+        if (owners == null) {
+            owners = new AccountOwners();
+            accounts.put(accountId, owners);
+        }
+
+        return owners;
+    }
+
+    private static final class Node {
+
+        final int ownerId;
+
+        Owner owner;
+
+        long cachedAt;
+
+        Node prev;
+
+        Node next;
+
+        Node(int ownerId) {
+            this.ownerId = ownerId;
+        }
+    }
+
+    private static final class AccountOwners {
+
+        final SparseArray<Node> nodes = new SparseArray<>();
+
+        /**
+         * Последняя использованная запись
+         */
+        Node head;
+
+        /**
+         * Кандидат на удаление
+         */
+        Node tail;
+
+        long generation;
+
+        void put(Owner owner, long now) {
+            Node node = nodes.get(owner.getOwnerId());
+
+            if (node == null) {
+                node = new Node(owner.getOwnerId());
+                nodes.put(node.ownerId, node);
+            } else {
+                unlink(node);
+            }
+
+            node.owner = owner;
+            node.cachedAt = now;
+            linkFirst(node);
+
+            if (nodes.size() > MAX_SIZE_PER_ACCOUNT) {
+                remove(tail);
+            }
+        }
+
+        void moveToHead(Node node) {
+            if (head != node) {
+                unlink(node);
+                linkFirst(node);
+            }
+        }
+
+        void remove(Node node) {
+            unlink(node);
+            nodes.remove(node.ownerId);
+        }
+
+        private void linkFirst(Node node) {
+            node.prev = null;
+            node.next = head;
+
+            if (head != null) {
+                head.prev = node;
+            }
+
+            head = node;
+
+            if (tail == null) {
+                tail = node;
+            }
+        }
+
+        private void unlink(Node node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                tail = node.prev;
+            }
+
+            node.prev = null;
+            node.next = null;
+        }
+    }
+}
@@ -4,8 +4,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
@@ -95,6 +96,7 @@ public class OwnersRepository implements IOwnersRepository {
     private final INetworker networker;
     private final IOwnersStorage cache;
     private final PublishProcessor<List<UserUpdate>> userUpdatesPublisher = PublishProcessor.create();
+    private final OwnersCache ownersCache = new OwnersCache();
 
     public OwnersRepository(INetworker networker, IOwnersStorage ownersRepository) {
         this.networker = networker;
@@ -157,6 +159,7 @@ public class OwnersRepository implements IOwnersRepository {
                             UserEntity userEntity = Dto2Entity.mapUser(user);
                             UserDetailsEntity detailsEntity = Dto2Entity.mapUserDetails(user);
                             return cache.storeUserDbos(accountId, singletonList(userEntity))
+                                    .doOnComplete(() -> ownersCache.invalidate(accountId, singletonList(userId)))
                                     .andThen(cache.storeUserDetails(accountId, userId, detailsEntity))
                                     .andThen(getCachedFullData(accountId, userId));
                         });
@@ -192,14 +195,16 @@ public class OwnersRepository implements IOwnersRepository {
             completable = completable.andThen(networker.vkDefault(accountId)
                     .groups()
                     .getById(dividedIds.gids, null, null, GroupColumns.API_FIELDS)
-                    .flatMapCompletable(communities -> cache.storeCommunityDbos(accountId, Dto2Entity.mapCommunities(communities))));
+                    .flatMapCompletable(communities -> cache.storeCommunityDbos(accountId, Dto2Entity.mapCommunities(communities))
+                            .doOnComplete(() -> ownersCache.putAll(accountId, Dto2Model.transformCommunities(communities)))));
         }
 
         if (nonEmpty(dividedIds.uids)) {
             completable = completable.andThen(networker.vkDefault(accountId)
                     .users()
                     .get(dividedIds.uids, null, UserColumns.API_FIELDS, null)
-                    .flatMapCompletable(users -> cache.storeUserDbos(accountId, Dto2Entity.mapUsers(users))));
+                    .flatMapCompletable(users -> cache.storeUserDbos(accountId, Dto2Entity.mapUsers(users))
+                            .doOnComplete(() -> ownersCache.putAll(accountId, Dto2Model.transformUsers(users)))));
         }
 
         return completable;
@@ -234,7 +239,22 @@ public class OwnersRepository implements IOwnersRepository {
 
     @Override
     public Completable insertOwners(int accountId, @NonNull OwnerEntities entities) {
-        return cache.storeOwnerEntities(accountId, entities);
+        return cache.storeOwnerEntities(accountId, entities)
+                .doOnComplete(() -> ownersCache.invalidate(accountId, collectOwnerIds(entities)));
+    }
+
+    private static List<Integer> collectOwnerIds(OwnerEntities entities) {
+        List<Integer> ids = new ArrayList<>(entities.size());
+
+        for (UserEntity user : entities.getUserEntities()) {
+            ids.add(user.getId());
+        }
+
+        for (CommunityEntity community : entities.getCommunityEntities()) {
+            ids.add(-community.getId());
+        }
+
+        return ids;
     }
 
     @Override
@@ -245,29 +265,45 @@ public class OwnersRepository implements IOwnersRepository {
 
     @Override
     public Completable handleOnlineChanges(int accountId, @Nullable List<UserIsOfflineUpdate> offlineUpdates, @Nullable List<UserIsOnlineUpdate> onlineUpdates) {
-        List<UserPatch> patches = new ArrayList<>();
+        return applyPatchesThenPublish(accountId, createOnlinePatches(offlineUpdates, onlineUpdates));
+    }
+
+    @NonNull
+    @Override
+    public List<UserPatch> createOnlinePatches(@Nullable List<UserIsOfflineUpdate> offlineUpdates, @Nullable List<UserIsOnlineUpdate> onlineUpdates) {
+        // один пользователь может несколько раз выйти и зайти за время одного запроса,
+        // в базу достаточно записать последнее состояние
+        Map<Integer, UserPatch> patches = new LinkedHashMap<>();
 
         if(nonEmpty(offlineUpdates)){
             for(UserIsOfflineUpdate update : offlineUpdates){
                 long lastSeeenUnixtime = update.getFlags() != 0 ? Unixtime.now() - 15 * 60 : Unixtime.now();
-                patches.add(new UserPatch(update.user_id).setOnlineUpdate(new UserPatch.Online(false,lastSeeenUnixtime, 0)));
+                patches.put(update.user_id, new UserPatch(update.user_id).setOnlineUpdate(new UserPatch.Online(false,lastSeeenUnixtime, 0)));
             }
         }
 
         if(nonEmpty(onlineUpdates)){
             for(UserIsOnlineUpdate update : onlineUpdates){
-                patches.add(new UserPatch(update.user_id).setOnlineUpdate(new UserPatch.Online(true, Unixtime.now(), update.extra)));
+                patches.put(update.user_id, new UserPatch(update.user_id).setOnlineUpdate(new UserPatch.Online(true, Unixtime.now(), update.extra)));
             }
         }
 
-        return applyPatchesThenPublish(accountId, patches);
+        return new ArrayList<>(patches.values());
     }
 
     private Completable applyPatchesThenPublish(int accountId, List<UserPatch> patches){
+        return cache.applyPathes(accountId, patches)
+                .doOnComplete(() -> notifyPatchesApplied(accountId, patches));
+    }
+
+    @Override
+    public void notifyPatchesApplied(int accountId, @NonNull List<UserPatch> patches){
         List<UserUpdate> updates = new ArrayList<>(patches.size());
+        List<Integer> userIds = new ArrayList<>(patches.size());
 
         for(UserPatch patch : patches){
             UserUpdate update = new UserUpdate(accountId, patch.getUserId());
+            userIds.add(patch.getUserId());
 
             if(patch.getOnline() != null){
                 update.setOnline(new UserUpdate.Online(patch.getOnline().isOnline(),
@@ -282,7 +318,8 @@ public class OwnersRepository implements IOwnersRepository {
             updates.add(update);
         }
 
-        return cache.applyPathes(accountId, patches).doOnComplete(() -> userUpdatesPublisher.onNext(updates));
+        ownersCache.invalidate(accountId, userIds);
+        userUpdatesPublisher.onNext(updates);
     }
 
     @Override
@@ -387,8 +424,8 @@ public class OwnersRepository implements IOwnersRepository {
         final List<Integer> gids;
 
         DividedIds(Collection<Integer> ids) {
-            this.uids = new LinkedList<>();
-            this.gids = new LinkedList<>();
+            this.uids = new ArrayList<>(ids.size());
+            this.gids = new ArrayList<>(0);
 
             for (int id : ids) {
                 if (id > 0) {
@@ -473,25 +510,62 @@ public class OwnersRepository implements IOwnersRepository {
     }
 
     private Single<List<Community>> getCommunities(int accountId, List<Integer> gids, int mode) {
-        if (gids.isEmpty()) {
-            return Single.just(Collections.emptyList());
-        }
+        // кэш в памяти и его поколение читаются в момент подписки, а не создания Single
+        return Single.defer(() -> {
+            if (gids.isEmpty()) {
+                return Single.just(Collections.emptyList());
+            }
+
+            if (mode == MODE_NET) {
+                return getActualComminitiesAndStore(accountId, gids);
+            }
+
+            List<Integer> ownerIds = new ArrayList<>(gids.size());
+            for (int gid : gids) {
+                ownerIds.add(-gid);
+            }
+
+            List<Community> cached = new ArrayList<>(gids.size());
+            List<Integer> missing = ownersCache.find(accountId, ownerIds, cached);
+
+            if (missing.isEmpty()) {
+                return Single.just(cached);
+            }
+
+            List<Integer> missingGids = new ArrayList<>(missing.size());
+            for (int ownerId : missing) {
+                missingGids.add(-ownerId);
+            }
+
+            return getCommunitiesNotInMemory(accountId, missingGids, mode)
+                    .map(communities -> {
+                        List<Community> result = new ArrayList<>(cached.size() + communities.size());
+                        result.addAll(cached);
+                        result.addAll(communities);
+                        return result;
+                    });
+        });
+    }
+
+    private Single<List<Community>> getCommunitiesNotInMemory(int accountId, List<Integer> gids, int mode) {
+        final long generation = ownersCache.generation(accountId);
 
         switch (mode) {
             case MODE_CACHE:
                 return cache.findCommunityDbosByIds(accountId, gids)
-                        .map(Entity2Model::buildCommunitiesFromDbos);
+                        .map(Entity2Model::buildCommunitiesFromDbos)
+                        .doOnSuccess(communities -> ownersCache.putAll(accountId, communities, generation));
             case MODE_ANY:
                 return cache.findCommunityDbosByIds(accountId, gids)
                         .flatMap(dbos -> {
                             if (dbos.size() == gids.size()) {
-                                return Single.just(Entity2Model.buildCommunitiesFromDbos(dbos));
+                                List<Community> communities = Entity2Model.buildCommunitiesFromDbos(dbos);
+                                ownersCache.putAll(accountId, communities, generation);
+                                return Single.just(communities);
                             }
 
                             return getActualComminitiesAndStore(accountId, gids);
                         });
-            case MODE_NET:
-                return getActualComminitiesAndStore(accountId, gids);
         }
 
         throw new IllegalArgumentException("Invalid mode: " + mode);
@@ -501,8 +575,12 @@ public class OwnersRepository implements IOwnersRepository {
         return networker.vkDefault(accountId)
                 .users()
                 .get(uids, null, UserColumns.API_FIELDS, null)
-                .flatMap(dtos -> cache.storeUserDbos(accountId, Dto2Entity.mapUsers(dtos))
-                        .andThen(Single.just(Dto2Model.transformUsers(dtos))));
+                .flatMap(dtos -> {
+                    List<User> users = Dto2Model.transformUsers(dtos);
+                    return cache.storeUserDbos(accountId, Dto2Entity.mapUsers(dtos))
+                            .doOnComplete(() -> ownersCache.putAll(accountId, users))
+                            .andThen(Single.just(users));
+                });
     }
 
     private Single<List<Community>> getActualComminitiesAndStore(int accountId, List<Integer> gids) {
@@ -513,32 +591,60 @@ public class OwnersRepository implements IOwnersRepository {
                     List<CommunityEntity> communityEntities = Dto2Entity.mapCommunities(dtos);
                     List<Community> communities = Dto2Model.transformCommunities(dtos);
                     return cache.storeCommunityDbos(accountId, communityEntities)
+                            .doOnComplete(() -> ownersCache.putAll(accountId, communities))
                             .andThen(Single.just(communities));
                 });
     }
 
     private Single<List<User>> getUsers(int accountId, List<Integer> uids, int mode) {
-        if (uids.isEmpty()) {
-            return Single.just(Collections.emptyList());
-        }
+        // кэш в памяти и его поколение читаются в момент подписки, а не создания Single
+        return Single.defer(() -> {
+            if (uids.isEmpty()) {
+                return Single.just(Collections.emptyList());
+            }
+
+            if (mode == MODE_NET) {
+                return getActualUsersAndStore(accountId, uids);
+            }
+
+            List<User> cached = new ArrayList<>(uids.size());
+            List<Integer> missing = ownersCache.find(accountId, uids, cached);
+
+            if (missing.isEmpty()) {
+                return Single.just(cached);
+            }
+
+            return getUsersNotInMemory(accountId, missing, mode)
+                    .map(users -> {
+                        List<User> result = new ArrayList<>(cached.size() + users.size());
+                        result.addAll(cached);
+                        result.addAll(users);
+                        return result;
+                    });
+        });
+    }
+
+    private Single<List<User>> getUsersNotInMemory(int accountId, List<Integer> uids, int mode) {
+        final long generation = ownersCache.generation(accountId);
 
         switch (mode) {
             case MODE_CACHE:
                 return cache.findUserDbosByIds(accountId, uids)
-                        .map(Entity2Model::buildUsersFromDbo);
+                        .map(Entity2Model::buildUsersFromDbo)
+                        .doOnSuccess(users -> ownersCache.putAll(accountId, users, generation));
             case MODE_ANY:
                 return cache.findUserDbosByIds(accountId, uids)
                         .flatMap(dbos -> {
                             if (dbos.size() == uids.size()) {
-                                return Single.just(Entity2Model.buildUsersFromDbo(dbos));
+                                List<User> users = Entity2Model.buildUsersFromDbo(dbos);
+                                ownersCache.putAll(accountId, users, generation);
+                                return Single.just(users);
                             }
 
                             return getActualUsersAndStore(accountId, uids);
                         });
-            case MODE_NET:
-                return getActualUsersAndStore(accountId, uids);
         }
 
         throw new IllegalArgumentException("Invalid mode: " + mode);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package biz.dealnote.messenger.domain.impl;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import biz.dealnote.messenger.db.PeerStateEntity;
+import biz.dealnote.messenger.db.model.PeerPatch;
+import biz.dealnote.messenger.db.model.entity.SimpleDialogEntity;
+import biz.dealnote.messenger.util.Logger;
+
+import static biz.dealnote.messenger.util.Objects.nonNull;
+
+/**
+ * Кэш состояния диалогов (счетчик непрочитанных, границы прочтения, закреп, заголовок,
+ * последнее сообщение) в памяти, отдельный для каждого аккаунта.
+ * <p>
+ * Таблица peers изменяется только через {@link MessagesRepository}, поэтому записи
+ * обновляются патчами сразу после применения их к базе. {@link #MAX_AGE_MS} ограничивает
+ * время жизни записи на случай, если какое-то изменение пройдет мимо кэша.
+ */
+final class PeerStateCache {
+
+    private static final String TAG = PeerStateCache.class.getSimpleName();
+
+    private static final int MAX_SIZE_PER_ACCOUNT = 100;
+
+    private static final long MAX_AGE_MS = 10 * 60 * 1000;
+
+    private final SparseArray<AccountPeers> accounts = new SparseArray<>(1);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Текущее поколение кэша аккаунта, см. {@link OwnersCache#generation(int)}
+     */
+    synchronized long generation(int accountId) {
+        return getAccount(accountId).generation;
+    }
+
+    /**
+     * @return копия закэшированного состояния или null
+     */
+    synchronized SimpleDialogEntity get(int accountId, int peerId) {
+        Entry entry = getAccount(accountId).get(peerId, SystemClock.elapsedRealtime());
+
+        if (entry == null) {
+            logLookup(1, 1);
+            return null;
+        }
+
+        logLookup(1, 0);
+        return copy(entry.entity);
+    }
+
+    /**
+     * Ищет состояния диалогов в кэше
+     *
+     * @param found сюда добавляются найденные
+     * @return идентификаторы диалогов, которых нет в кэше
+     */
+    synchronized List<Integer> findStates(int accountId, Collection<Integer> peerIds, List<PeerStateEntity> found) {
+        AccountPeers peers = getAccount(accountId);
+        List<Integer> missing = new ArrayList<>(0);
+        long now = SystemClock.elapsedRealtime();
+
+        for (int peerId : peerIds) {
+            Entry entry = peers.get(peerId, now);
+
+            if (entry == null) {
+                missing.add(peerId);
+            } else {
+                found.add(new PeerStateEntity(peerId)
+                        .setUnreadCount(entry.entity.getUnreadCount())
+                        .setInRead(entry.entity.getInRead())
+                        .setOutRead(entry.entity.getOutRead())
+                        .setLastMessageId(entry.entity.getLastMessageId()));
+            }
+        }
+
+        logLookup(peerIds.size(), missing.size());
+        return missing;
+    }
+
+    /**
+     * Сохраняет свежие данные (только что полученные из сети и записанные в базу)
+     */
+    synchronized void put(int accountId, SimpleDialogEntity entity) {
+        getAccount(accountId).put(copy(entity), SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Сохраняет данные, прочитанные из базы, если с начала чтения кэш не изменялся
+     */
+    synchronized void put(int accountId, SimpleDialogEntity entity, long generation) {
+        if (getAccount(accountId).generation == generation) {
+            put(accountId, entity);
+        }
+    }
+
+    synchronized void putAll(int accountId, Collection<SimpleDialogEntity> entities) {
+        for (SimpleDialogEntity entity : entities) {
+            put(accountId, entity);
+        }
+    }
+
+    /**
+     * Применяет к закэшированным записям патчи, уже записанные в базу
+     */
+    synchronized void applyPatches(int accountId, Collection<PeerPatch> patches) {
+        AccountPeers peers = getAccount(accountId);
+        peers.generation++;
+
+        for (PeerPatch patch : patches) {
+            Entry entry = peers.entries.get(patch.getId());
+            if (entry == null) {
+                continue;
+            }
+
+            SimpleDialogEntity entity = entry.entity;
+
+            if (nonNull(patch.getInRead())) {
+                entity.setInRead(patch.getInRead().getId());
+            }
+
+            if (nonNull(patch.getOutRead())) {
+                entity.setOutRead(patch.getOutRead().getId());
+            }
+
+            if (nonNull(patch.getUnread())) {
+                entity.setUnreadCount(patch.getUnread().getCount());
+            }
+
+            if (nonNull(patch.getLastMessage())) {
+                entity.setLastMessageId(patch.getLastMessage().getId());
+            }
+
+            if (nonNull(patch.getPin())) {
+                entity.setPinned(patch.getPin().getPinned());
+            }
+
+            if (nonNull(patch.getTitle())) {
+                entity.setTitle(patch.getTitle().getTitle());
+            }
+        }
+    }
+
+    /**
+     * Удаляет диалог, удаленный из базы
+     */
+    synchronized void remove(int accountId, int peerId) {
+        AccountPeers peers = getAccount(accountId);
+        peers.generation++;
+        peers.entries.remove(peerId);
+    }
+
+    synchronized void invalidate(int accountId) {
+        AccountPeers peers = getAccount(accountId);
+        peers.generation++;
+        peers.entries.clear();
+    }
+
+    private void logLookup(int requested, int missed) {
+        long hits = hitCount.addAndGet(requested - missed);
+        long misses = missCount.addAndGet(missed);
+
+        if (missed > 0) {
+            Logger.d(TAG, "Not in memory: " + missed + " of " + requested + ", total hits: " + hits + ", misses: " + misses);
+        }
+    }
+
+    private AccountPeers getAccount(int accountId) {
+        AccountPeers peers = accounts.get(accountId);
+        if (peers == null) {
+            peers = new AccountPeers();
+            accounts.put(accountId, peers);
+        }
+
+        return peers;
+    }
+
+    private static SimpleDialogEntity copy(SimpleDialogEntity entity) {
+        return new SimpleDialogEntity(entity.getPeerId())
+                .setTitle(entity.getTitle())
+                .setUnreadCount(entity.getUnreadCount())
+                .setPhoto50(entity.getPhoto50())
+                .setPhoto100(entity.getPhoto100())
+                .setPhoto200(entity.getPhoto200())
+                .setInRead(entity.getInRead())
+                .setOutRead(entity.getOutRead())
+                .setPinned(entity.getPinned())
+                .setLastMessageId(entity.getLastMessageId())
+                .setAcl(entity.getAcl())
+                .setGroupChannel(entity.isGroupChannel());
+    }
+
+    private static final class Entry {
+
+        final SimpleDialogEntity entity;
+
+        final long cachedAt;
+
+        Entry(SimpleDialogEntity entity, long cachedAt) {
+            this.entity = entity;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static final class AccountPeers {
+
+        /**
+         * В порядке доступа, первым идет давно не использовавшийся диалог
+         */
+        final Map<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        long generation;
+
+        Entry get(int peerId, long now) {
+            Entry entry = entries.get(peerId);
+
+            if (entry != null && now - entry.cachedAt > MAX_AGE_MS) {
+                entries.remove(peerId);
+                return null;
+            }
+
+            return entry;
+        }
+
+        void put(SimpleDialogEntity entity, long now) {
+            entries.put(entity.getPeerId(), new Entry(entity, now));
+
+            if (entries.size() > MAX_SIZE_PER_ACCOUNT) {
+                Iterator<Integer> iterator = entries.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+}
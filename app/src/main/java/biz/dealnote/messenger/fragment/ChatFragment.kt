@@ -16,6 +16,7 @@ import android.widget.RadioButton
 import android.widget.TextView
 import androidx.annotation.AttrRes
 import androidx.appcompat.app.AppCompatActivity
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import biz.dealnote.messenger.*
 import biz.dealnote.messenger.activity.*
@@ -640,6 +641,29 @@ class ChatFragment : PlaceSupportMvpFragment<ChatPrensenter, IChatView>(), IChat
         }
     }
 
+    override fun notifyItemInserted(position: Int) {
+        adapter?.run {
+            notifyItemInserted(position + headersCount)
+        }
+    }
+
+    override fun notifyItemChanged(position: Int) {
+        adapter?.run {
+            notifyItemChanged(position + headersCount)
+        }
+    }
+
+    override fun notifyMessagesUpdated(result: DiffUtil.DiffResult) {
+        adapter?.run {
+            dispatchUpdates(result)
+            notifyReadStateChanged()
+        }
+    }
+
+    override fun notifyReadStateChanged() {
+        adapter?.notifyReadStateChanged()
+    }
+
     override fun configOptionMenu(canLeaveChat: Boolean, canChangeTitle: Boolean, canShowMembers: Boolean,
                                   encryptionStatusVisible: Boolean, encryprionEnabled: Boolean, encryptionPlusEnabled: Boolean, keyExchangeVisible: Boolean) {
         optionMenuSettings.put(LEAVE_CHAT_VISIBLE, canLeaveChat)
@@ -17,6 +17,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
@@ -347,6 +348,38 @@ public class DialogsFragment extends BaseMvpFragment<DialogsPresenter, IDialogsV
         }
     }
 
+    @Override
+    public void notifyDataUpdated(@NonNull DiffUtil.DiffResult result) {
+        if (nonNull(mAdapter)) {
+            result.dispatchUpdatesTo(mAdapter);
+            mAdapter.notifyHeadersChanged();
+        }
+    }
+
+    @Override
+    public void notifyItemChanged(int position) {
+        if (nonNull(mAdapter)) {
+            mAdapter.notifyItemChanged(position);
+        }
+    }
+
+    @Override
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        if (nonNull(mAdapter)) {
+            mAdapter.notifyItemMoved(fromPosition, toPosition);
+            mAdapter.notifyItemChanged(toPosition);
+            mAdapter.notifyHeadersChanged();
+        }
+    }
+
+    @Override
+    public void notifyItemRemoved(int position) {
+        if (nonNull(mAdapter)) {
+            mAdapter.notifyItemRemoved(position);
+            mAdapter.notifyHeadersChanged();
+        }
+    }
+
     @Override
     public void showRefreshing(boolean refreshing) {
         if (nonNull(mSwipeRefreshLayout)) {
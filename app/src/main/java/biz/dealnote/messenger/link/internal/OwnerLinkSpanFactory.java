@@ -11,6 +11,9 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import biz.dealnote.messenger.R;
 import biz.dealnote.messenger.util.Utils;
 
 import static biz.dealnote.messenger.util.Utils.isEmpty;
@@ -26,6 +29,11 @@ public class OwnerLinkSpanFactory {
         topicCommentPattern = Pattern.compile("\\[(id|club)(\\d*):bp(-\\d*)_(\\d*)\\|([^]]+)]");
     }
 
+    /**
+     * @param listener обработчик нажатий; если null, он берется из View, на котором нажали
+     *                 (см. {@link #setActionListener(View, ActionListener)}) - так можно
+     *                 строить текст заранее и использовать его в нескольких списках
+     */
     public static Spannable withSpans(String input, boolean owners, boolean topics, final ActionListener listener) {
         if (isEmpty(input)) {
             return null;
@@ -55,13 +63,14 @@ public class OwnerLinkSpanFactory {
                 ClickableSpan clickableSpan = new ClickableSpan() {
                     @Override
                     public void onClick(View widget) {
-                        if(listener != null){
+                        ActionListener target = listener != null ? listener : getActionListener(widget);
+                        if(target != null){
                             if(link instanceof TopicLink){
-                                listener.onTopicLinkClicked((TopicLink) link);
+                                target.onTopicLinkClicked((TopicLink) link);
                             }
 
                             if(link instanceof OwnerLink){
-                                listener.onOwnerClick(((OwnerLink) link).ownerId);
+                                target.onOwnerClick(((OwnerLink) link).ownerId);
                             }
                         }
                     }
@@ -76,6 +85,19 @@ public class OwnerLinkSpanFactory {
         return Spannable.Factory.getInstance().newSpannable(input);
     }
 
+    /**
+     * Назначает обработчик нажатий на ссылки в тексте, построенном без обработчика
+     */
+    public static void setActionListener(@NonNull View view, @Nullable ActionListener listener) {
+        view.setTag(R.id.owner_link_action_listener, listener);
+    }
+
+    @Nullable
+    private static ActionListener getActionListener(View widget) {
+        Object tag = widget.getTag(R.id.owner_link_action_listener);
+        return tag instanceof ActionListener ? (ActionListener) tag : null;
+    }
+
     public interface ActionListener {
         void onTopicLinkClicked(TopicLink link);
         void onOwnerClick(int ownerId);
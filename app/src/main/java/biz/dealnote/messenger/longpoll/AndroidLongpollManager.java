@@ -3,19 +3,24 @@ package biz.dealnote.messenger.longpoll;
 import android.content.Context;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.SparseArray;
 
 import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import androidx.annotation.NonNull;
 import biz.dealnote.messenger.Injection;
 import biz.dealnote.messenger.api.interfaces.INetworker;
+import biz.dealnote.messenger.api.model.VKApiMessage;
 import biz.dealnote.messenger.api.model.longpoll.VkApiGroupLongpollUpdates;
 import biz.dealnote.messenger.api.model.longpoll.VkApiLongpollUpdates;
 import biz.dealnote.messenger.realtime.IRealtimeMessagesProcessor;
 import biz.dealnote.messenger.util.Logger;
 import biz.dealnote.messenger.util.RxUtils;
+import biz.dealnote.messenger.util.SerialExecutor;
 import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
 import io.reactivex.disposables.CompositeDisposable;
@@ -33,11 +38,19 @@ public class AndroidLongpollManager implements ILongpollManager, UserLongpoll.Ca
     private final PublishProcessor<Integer> keepAlivePublisher;
     private final PublishProcessor<VkApiLongpollUpdates> actionsPublisher;
     private final IRealtimeMessagesProcessor messagesProcessor;
+    private final LongpollStateStore stateStore;
     private final Object lock = new Object();
 
     private final static String TAG = AndroidLongpollManager.class.getSimpleName();
 
-    private static final Scheduler MONO_SCHEDULER = Schedulers.from(Executors.newFixedThreadPool(1));
+    /**
+     * Общий пул для сохранения событий. Поверх него у каждого аккаунта своя очередь:
+     * события одного аккаунта сохраняются строго по порядку, а медленная запись
+     * в базу одного аккаунта не задерживает остальные
+     */
+    private static final Executor SAVE_EXECUTOR = Executors.newFixedThreadPool(3);
+
+    private final SparseArray<Lane> lanes = new SparseArray<>(1);
 
     AndroidLongpollManager(Context context, INetworker networker, IRealtimeMessagesProcessor messagesProcessor) {
         this.app = context.getApplicationContext();
@@ -46,6 +59,7 @@ public class AndroidLongpollManager implements ILongpollManager, UserLongpoll.Ca
         this.keepAlivePublisher = PublishProcessor.create();
         this.actionsPublisher = PublishProcessor.create();
         this.map = new SparseArray<>(1);
+        this.stateStore = new LongpollStateStore(context);
     }
 
     @Override
@@ -60,7 +74,7 @@ public class AndroidLongpollManager implements ILongpollManager, UserLongpoll.Ca
 
     private ILongpoll createLongpoll(int accountId) {
         //return accountId > 0 ? new UserLongpoll(networker, accountId, this) : new GroupLongpoll(networker, Math.abs(accountId), this);
-        return new UserLongpoll(networker, accountId, this);
+        return new UserLongpoll(networker, stateStore, accountId, this);
     }
 
     @Override
@@ -111,15 +125,65 @@ public class AndroidLongpollManager implements ILongpollManager, UserLongpoll.Ca
             messagesProcessor.process(accountId, updates.getAddMessageUpdates());
         }
 
+        save(accountId, updates);
+    }
+
+    @Override
+    public void onHistory(int accountId, @NonNull VkApiLongpollUpdates updates, @NonNull List<VKApiMessage> messages) {
+        Logger.d(TAG, "history, accountId: " + accountId + ", messages: " + messages.size());
+
+        if (nonEmpty(messages)) {
+            messagesProcessor.processMessages(accountId, messages);
+        }
+
+        if (updates.getUpdatesCount() > 0) {
+            save(accountId, updates);
+        }
+    }
+
+    private void save(int accountId, VkApiLongpollUpdates updates) {
+        final Lane lane = getLane(accountId);
+        final long receivedAt = SystemClock.elapsedRealtime();
+
         compositeDisposable.add(new LongPollEventSaver()
                 .save(accountId, updates)
-                .subscribeOn(MONO_SCHEDULER)
+                .subscribeOn(lane.scheduler)
+                .doOnComplete(() -> lane.lastSaveLatency = SystemClock.elapsedRealtime() - receivedAt)
                 .observeOn(Injection.provideMainThreadScheduler())
-                .subscribe(() -> onUpdatesSaved(accountId, updates), RxUtils.ignore()));
+                .subscribe(() -> onUpdatesSaved(lane, receivedAt, updates), RxUtils.ignore()));
     }
 
-    private void onUpdatesSaved(int accountId, VkApiLongpollUpdates updates) {
+    private void onUpdatesSaved(Lane lane, long receivedAt, VkApiLongpollUpdates updates) {
         actionsPublisher.onNext(updates);
+
+        lane.lastPublishLatency = SystemClock.elapsedRealtime() - receivedAt;
+
+        Logger.d(TAG, "published, accountId: " + lane.accountId
+                + ", saved in: " + lane.lastSaveLatency + " ms"
+                + ", published in: " + lane.lastPublishLatency + " ms"
+                + ", pending: " + lane.executor.getPendingCount());
+    }
+
+    private Lane getLane(int accountId) {
+        synchronized (lanes) {
+            Lane lane = lanes.get(accountId);
+            if (lane == null) {
+                lane = new Lane(accountId);
+                lanes.put(accountId, lane);
+            }
+
+            return lane;
+        }
+    }
+
+    @Override
+    public long getLastSaveLatency(int accountId) {
+        return getLane(accountId).lastSaveLatency;
+    }
+
+    @Override
+    public long getLastPublishLatency(int accountId) {
+        return getLane(accountId).lastPublishLatency;
     }
 
     @Override
@@ -127,6 +191,28 @@ public class AndroidLongpollManager implements ILongpollManager, UserLongpoll.Ca
 
     }
 
+    /**
+     * Очередь сохранения событий аккаунта и ее задержки
+     */
+    private static final class Lane {
+
+        final int accountId;
+
+        final SerialExecutor executor;
+
+        final Scheduler scheduler;
+
+        volatile long lastSaveLatency;
+
+        volatile long lastPublishLatency;
+
+        Lane(int accountId) {
+            this.accountId = accountId;
+            this.executor = new SerialExecutor(SAVE_EXECUTOR);
+            this.scheduler = Schedulers.from(executor);
+        }
+    }
+
     private static final class LongpollEntry {
 
         final ILongpoll longpoll;
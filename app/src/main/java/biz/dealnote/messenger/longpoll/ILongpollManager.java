@@ -11,4 +11,14 @@ public interface ILongpollManager {
     Flowable<Integer> observeKeepAlive();
 
     void keepAlive(int accountId);
+
+    /**
+     * @return время от получения последней пачки событий аккаунта до ее сохранения в базу, мс
+     */
+    long getLastSaveLatency(int accountId);
+
+    /**
+     * @return время от получения последней пачки событий аккаунта до ее публикации в {@link #observe()}, мс
+     */
+    long getLastPublishLatency(int accountId);
 }
\ No newline at end of file
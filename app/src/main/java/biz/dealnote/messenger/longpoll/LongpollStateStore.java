@@ -0,0 +1,54 @@
+package biz.dealnote.messenger.longpoll;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Сохраненная позиция longpoll (ts и pts) для каждого аккаунта. Переживает
+ * перезапуск процесса и переподключение, чтобы пропущенные за это время события
+ * можно было получить через messages.getLongPollHistory
+ */
+final class LongpollStateStore {
+
+    private static final String PREFS_NAME = "longpoll_state";
+
+    private final SharedPreferences preferences;
+
+    LongpollStateStore(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String tsKeyFor(int accountId) {
+        return "ts" + accountId;
+    }
+
+    private static String ptsKeyFor(int accountId) {
+        return "pts" + accountId;
+    }
+
+    /**
+     * @return 0, если позиция не сохранена
+     */
+    long getTs(int accountId) {
+        return preferences.getLong(tsKeyFor(accountId), 0);
+    }
+
+    /**
+     * @return 0, если позиция не сохранена
+     */
+    long getPts(int accountId) {
+        return preferences.getLong(ptsKeyFor(accountId), 0);
+    }
+
+    void put(int accountId, long ts, long pts) {
+        SharedPreferences.Editor editor = preferences.edit()
+                .putLong(tsKeyFor(accountId), ts);
+
+        // pts приходит не в каждом ответе, старое значение затирать нельзя
+        if (pts > 0) {
+            editor.putLong(ptsKeyFor(accountId), pts);
+        }
+
+        editor.apply();
+    }
+}
@@ -1,16 +1,22 @@
 package biz.dealnote.messenger.longpoll;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import biz.dealnote.messenger.Injection;
 import biz.dealnote.messenger.api.interfaces.INetworker;
+import biz.dealnote.messenger.api.model.VKApiMessage;
 import biz.dealnote.messenger.api.model.VkApiLongpollServer;
+import biz.dealnote.messenger.api.model.longpoll.AbsLongpollEvent;
 import biz.dealnote.messenger.api.model.longpoll.AddMessageUpdate;
 import biz.dealnote.messenger.api.model.longpoll.VkApiLongpollUpdates;
+import biz.dealnote.messenger.api.model.response.LongpollHistoryResponse;
 import biz.dealnote.messenger.util.Logger;
 import biz.dealnote.messenger.util.PersistentLogger;
 import biz.dealnote.messenger.util.RxUtils;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
 
 import static biz.dealnote.messenger.util.Objects.nonNull;
@@ -21,17 +27,36 @@ class UserLongpoll implements ILongpoll {
     private static final String TAG = "Longpoll_TAG";
     private static final int DELAY_ON_ERROR = 10 * 1000;
 
+    private static final int HISTORY_EVENTS_LIMIT = 1000;
+    private static final int HISTORY_MESSAGES_LIMIT = 200;
+
+    /**
+     * Сколько раз подряд можно догружать историю, если событий оказалось больше лимита
+     */
+    private static final int HISTORY_MAX_PAGES = 5;
+
     private final int accountId;
     private String key;
     private String server;
     private Long ts;
+
+    /**
+     * Позиция в истории событий, с которой при переподключении догружаются пропущенные события
+     */
+    private long pts;
     private Callback callback;
     private final INetworker networker;
+    private final LongpollStateStore stateStore;
 
-    UserLongpoll(INetworker networker, int accountId, Callback callback) {
+    UserLongpoll(INetworker networker, LongpollStateStore stateStore, int accountId, Callback callback) {
         this.accountId = accountId;
         this.callback = callback;
         this.networker = networker;
+        this.stateStore = stateStore;
+        this.pts = stateStore.getPts(accountId);
+
+        long savedTs = stateStore.getTs(accountId);
+        this.ts = savedTs > 0 ? savedTs : null;
     }
 
     @Override
@@ -39,10 +64,13 @@ class UserLongpoll implements ILongpoll {
         return accountId;
     }
 
+    /**
+     * ts и pts не сбрасываются: после получения нового сервера по ним
+     * догружаются события, пропущенные за время ошибки
+     */
     private void resetServerAttrs() {
         this.server = null;
         this.key = null;
-        this.ts = null;
     }
 
     @Override
@@ -78,13 +106,89 @@ class UserLongpoll implements ILongpoll {
     private void onServerInfoReceived(VkApiLongpollServer info) {
         Logger.d(TAG, "onResponse, info: " + info);
 
-        this.ts = info.ts;
         this.key = info.key;
         this.server = info.server;
 
+        if (pts > 0 && info.pts > pts) {
+            long fromTs = nonNull(ts) ? ts : info.ts;
+
+            setDisposable(getHistory(fromTs, pts, 1)
+                    .compose(RxUtils.applySingleIOToMainSchedulers())
+                    .subscribe(pages -> onHistoryReceived(info, pages), throwable -> onHistoryGetError(info, throwable)));
+            return;
+        }
+
+        startFrom(info);
+    }
+
+    private void startFrom(VkApiLongpollServer info) {
+        this.ts = info.ts;
+        this.pts = info.pts;
+        stateStore.put(accountId, info.ts, info.pts);
+
         get();
     }
 
+    private Single<List<LongpollHistoryResponse>> getHistory(long ts, long pts, int page) {
+        return networker.vkDefault(accountId)
+                .messages()
+                .getLongPollHistory(ts, pts, null, false, null, HISTORY_EVENTS_LIMIT, HISTORY_MESSAGES_LIMIT, null)
+                .flatMap(response -> {
+                    boolean hasMore = response.more == 1 && nonNull(response.newPts) && response.newPts > pts;
+
+                    if (!hasMore || page >= HISTORY_MAX_PAGES) {
+                        List<LongpollHistoryResponse> pages = new ArrayList<>(page);
+                        pages.add(response);
+                        return Single.just(pages);
+                    }
+
+                    return getHistory(ts, response.newPts, page + 1)
+                            .map(next -> {
+                                next.add(0, response);
+                                return next;
+                            });
+                });
+    }
+
+    /**
+     * Пропущенные события передаются одной пачкой: новые сообщения уже загружены
+     * целиком (messages.items), остальные события сохраняются как обычные обновления
+     */
+    private void onHistoryReceived(VkApiLongpollServer info, List<LongpollHistoryResponse> pages) {
+        VkApiLongpollUpdates updates = new VkApiLongpollUpdates();
+        List<VKApiMessage> messages = new ArrayList<>();
+
+        for (LongpollHistoryResponse page : pages) {
+            if (nonEmpty(page.history)) {
+                for (AbsLongpollEvent event : page.history) {
+                    if (nonNull(event) && event.action != AbsLongpollEvent.ACTION_MESSAGE_ADDED) {
+                        updates.putUpdate(event);
+                    }
+                }
+            }
+
+            if (nonNull(page.messages) && nonEmpty(page.messages.items)) {
+                messages.addAll(page.messages.items);
+            }
+        }
+
+        Logger.d(TAG, "onHistoryReceived, aid: " + accountId + ", updates: " + updates + ", messages: " + messages.size());
+
+        updates.ts = info.ts;
+        updates.pts = info.pts;
+
+        if (updates.getUpdatesCount() > 0 || !messages.isEmpty()) {
+            callback.onHistory(accountId, updates, messages);
+        }
+
+        startFrom(info);
+    }
+
+    private void onHistoryGetError(VkApiLongpollServer info, Throwable throwable) {
+        PersistentLogger.logThrowable("Longpoll, HistoryGet", throwable);
+        startFrom(info);
+    }
+
     private void onServerGetError(Throwable throwable) {
         PersistentLogger.logThrowable("Longpoll, ServerGet", throwable);
         getWithDelay();
@@ -125,6 +229,12 @@ class UserLongpoll implements ILongpoll {
         } else {
             ts = updates.ts;
 
+            if (updates.pts > 0) {
+                pts = updates.pts;
+            }
+
+            stateStore.put(accountId, ts, pts);
+
             if (updates.getUpdatesCount() > 0) {
                 fixUpdates(updates);
 
@@ -160,11 +270,18 @@ class UserLongpoll implements ILongpoll {
     private static final int MODE =
             2 + //получать вложения;
                     8 + // возвращать расширенный набор событий;
-                    //32 + //возвращать pts (это требуется для работы метода messages.getLongPollHistory без ограничения в 256 последних событий);
+                    32 + //возвращать pts (это требуется для работы метода messages.getLongPollHistory без ограничения в 256 последних событий);
                     64 + //в событии с кодом 8 (друг стал онлайн) возвращать дополнительные данные в поле $extra (подробнее в разделе Структура событий);
                     128; //возвращать с сообщением параметр random_id (random_id может быть передан при отправке сообщения методом messages.send).
 
     public interface Callback {
         void onUpdates(int aid, VkApiLongpollUpdates updates);
+
+        /**
+         * События, пропущенные между сессиями longpoll
+         *
+         * @param messages новые сообщения (целиком), в updates их нет
+         */
+        void onHistory(int aid, VkApiLongpollUpdates updates, List<VKApiMessage> messages);
     }
 }
\ No newline at end of file
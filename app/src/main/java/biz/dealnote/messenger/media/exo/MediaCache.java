@@ -0,0 +1,107 @@
+package biz.dealnote.messenger.media.exo;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import biz.dealnote.messenger.util.Logger;
+
+import static biz.dealnote.messenger.util.Objects.nonNull;
+
+/**
+ * Общий дисковый кэш медиа для плееров на ExoPlayer (голосовые сообщения, GIF, аудиозаписи).
+ * Повторное воспроизведение или перемотка назад читают данные с диска, а не из сети.
+ * При превышении {@link #MAX_SIZE} удаляется давно не использовавшееся.
+ * <p>
+ * {@link SimpleCache} допускает только один экземпляр на каталог, поэтому кэш один на процесс.
+ * <p>
+ * Ссылки VK на медиа подписаны параметрами запроса (например, extra у аудио), которые меняются
+ * от сессии к сессии, поэтому ключ кэша - ссылка без запроса, см. {@link #CACHE_KEY_FACTORY}.
+ */
+public final class MediaCache {
+
+    private static final String TAG = MediaCache.class.getSimpleName();
+
+    private static final long MAX_SIZE = 128 * 1024 * 1024;
+
+    private static final String DIR_NAME = "exo_media";
+
+    private static volatile MediaCache instance;
+
+    /**
+     * Схема, хост и путь: сам файл определяется путем, а запрос содержит только подпись
+     */
+    private static final CacheKeyFactory CACHE_KEY_FACTORY = dataSpec -> {
+        if (nonNull(dataSpec.key)) {
+            return dataSpec.key;
+        }
+
+        Uri uri = dataSpec.uri;
+        return uri.buildUpon()
+                .clearQuery()
+                .fragment(null)
+                .build()
+                .toString();
+    };
+
+    public static MediaCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MediaCache.class) {
+                if (instance == null) {
+                    instance = new MediaCache(context.getApplicationContext());
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    private final Cache cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong bytesFromCache = new AtomicLong();
+
+    private final CacheDataSource.EventListener eventListener = new CacheDataSource.EventListener() {
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            long hits = hitCount.incrementAndGet();
+            long total = bytesFromCache.addAndGet(cachedBytesRead);
+            Logger.d(TAG, "Read from cache: " + cachedBytesRead + " bytes, hits: " + hits + ", saved total: " + total + ", cache size: " + cacheSizeBytes);
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+            Logger.d(TAG, "Cache ignored, reason: " + reason);
+        }
+    };
+
+    private MediaCache(Context app) {
+        this.cache = new SimpleCache(new File(app.getCacheDir(), DIR_NAME),
+                new LeastRecentlyUsedCacheEvictor(MAX_SIZE), new ExoDatabaseProvider(app));
+    }
+
+    /**
+     * @param upstream источник данных из сети (с настройками прокси)
+     * @return фабрика, которая сначала читает из кэша и сохраняет в кэш загруженное из сети
+     */
+    public DataSource.Factory createDataSourceFactory(DataSource.Factory upstream) {
+        return new CacheDataSourceFactory(cache, upstream, new FileDataSourceFactory(),
+                new CacheDataSinkFactory(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE),
+                CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, eventListener, CACHE_KEY_FACTORY);
+    }
+}
@@ -29,6 +29,7 @@ import biz.dealnote.messenger.Constants;
 import biz.dealnote.messenger.api.ProxyUtil;
 import biz.dealnote.messenger.media.exo.CustomHttpDataSourceFactory;
 import biz.dealnote.messenger.media.exo.ExoEventAdapter;
+import biz.dealnote.messenger.media.exo.MediaCache;
 import biz.dealnote.messenger.model.ProxyConfig;
 import biz.dealnote.messenger.model.VideoSize;
 import biz.dealnote.messenger.util.AssertUtils;
@@ -124,7 +125,8 @@ public class ExoGifPlayer implements IGifPlayer {
         // FOR SD CARD SOURCE:
         // MediaSource videoSource = new ExtractorMediaSource(mp4VideoUri, dataSourceFactory, extractorsFactory, null, null);
         // FOR LIVESTREAM LINK:
-        MediaSource mediaSource = new ExtractorMediaSource(Uri.parse(url), factory, extractorsFactory, null, null);
+        MediaSource mediaSource = new ExtractorMediaSource(Uri.parse(url),
+                MediaCache.getInstance(App.getInstance()).createDataSourceFactory(factory), extractorsFactory, null, null);
         internalPlayer.setRepeatMode(Player.REPEAT_MODE_ONE);
         internalPlayer.addListener(new ExoEventAdapter() {
             @Override
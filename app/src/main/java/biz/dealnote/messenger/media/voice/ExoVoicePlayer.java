@@ -30,6 +30,7 @@ import biz.dealnote.messenger.api.ProxyUtil;
 import biz.dealnote.messenger.media.exo.CustomHttpDataSourceFactory;
 import biz.dealnote.messenger.media.exo.ExoEventAdapter;
 import biz.dealnote.messenger.media.exo.ExoUtil;
+import biz.dealnote.messenger.media.exo.MediaCache;
 import biz.dealnote.messenger.model.ProxyConfig;
 import biz.dealnote.messenger.model.VoiceMessage;
 import biz.dealnote.messenger.util.Logger;
@@ -129,7 +130,7 @@ public class ExoVoicePlayer implements IVoicePlayer {
 
         String url = playingEntry.getAudio().getLinkMp3();
 
-        MediaSource mediaSource = new ExtractorMediaSource(Uri.parse(url), factory, extractorsFactory, null, null);
+        MediaSource mediaSource = new ExtractorMediaSource(Uri.parse(url), MediaCache.getInstance(app).createDataSourceFactory(factory), extractorsFactory, null, null);
         exoPlayer.setRepeatMode(Player.REPEAT_MODE_OFF);
         exoPlayer.addListener(new ExoEventAdapter() {
             @Override
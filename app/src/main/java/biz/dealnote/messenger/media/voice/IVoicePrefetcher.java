@@ -0,0 +1,24 @@
+package biz.dealnote.messenger.media.voice;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import biz.dealnote.messenger.model.VoiceMessage;
+
+/**
+ * Заблаговременная загрузка голосовых сообщений в кэш медиа,
+ * чтобы воспроизведение начиналось без ожидания сети
+ */
+public interface IVoicePrefetcher {
+
+    /**
+     * Загружает начало сообщений только что загруженной страницы (в пределах бюджета).
+     * Предыдущая незавершенная страница отменяется
+     */
+    void prefetch(@NonNull List<VoiceMessage> voiceMessages);
+
+    /**
+     * Загружает сообщение, которое будет воспроизводиться следующим
+     */
+    void prefetchNext(@NonNull VoiceMessage voiceMessage);
+}
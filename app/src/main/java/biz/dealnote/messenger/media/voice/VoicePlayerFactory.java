@@ -18,11 +18,14 @@ public class VoicePlayerFactory implements IVoicePlayerFactory {
     private final Context app;
     private final IProxySettings proxySettings;
     private final ISettings.IOtherSettings otherSettings;
+    private final ISettings.IMainSettings mainSettings;
 
-    public VoicePlayerFactory(Context context, IProxySettings proxySettings, ISettings.IOtherSettings otherSettings) {
+    public VoicePlayerFactory(Context context, IProxySettings proxySettings, ISettings.IOtherSettings otherSettings,
+                              ISettings.IMainSettings mainSettings) {
         this.app = context.getApplicationContext();
         this.proxySettings = proxySettings;
         this.otherSettings = otherSettings;
+        this.mainSettings = mainSettings;
     }
 
     @NonNull
@@ -30,10 +33,18 @@ public class VoicePlayerFactory implements IVoicePlayerFactory {
     public IVoicePlayer createPlayer() {
         ProxyConfig config = proxySettings.getActiveProxy();
 
-        if (isNull(config) && !otherSettings.isForceExoplayer()) {
+        if (isNull(config) && !otherSettings.isForceExoplayer() && !isPrefetchActive()) {
             return new DefaultVoicePlayer();
         } else {
             return new ExoVoicePlayer(app, config);
         }
     }
+
+    /**
+     * Предзагруженные сообщения лежат в кэше ExoPlayer, но предзагрузка
+     * работает только при безлимитном подключении
+     */
+    private boolean isPrefetchActive() {
+        return mainSettings.isVoicePrefetchEnabled() && VoicePrefetcher.isUnmeteredNetwork(app);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package biz.dealnote.messenger.media.voice;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import biz.dealnote.messenger.Constants;
+import biz.dealnote.messenger.api.ProxyUtil;
+import biz.dealnote.messenger.media.exo.CustomHttpDataSourceFactory;
+import biz.dealnote.messenger.media.exo.MediaCache;
+import biz.dealnote.messenger.model.ProxyConfig;
+import biz.dealnote.messenger.model.VoiceMessage;
+import biz.dealnote.messenger.settings.IProxySettings;
+import biz.dealnote.messenger.settings.ISettings;
+import biz.dealnote.messenger.util.Logger;
+
+import static biz.dealnote.messenger.util.Objects.isNull;
+import static biz.dealnote.messenger.util.Objects.nonNull;
+import static biz.dealnote.messenger.util.Utils.isEmpty;
+
+/**
+ * Загружает голосовые сообщения через {@link MediaCache}, откуда их затем читает {@link ExoVoicePlayer}.
+ * Работает только при безлимитном подключении, для страницы сообщений загружается
+ * первые {@link #PREFETCH_SECONDS} секунд каждого, но не больше {@link #PAGE_BUDGET_BYTES} в сумме.
+ */
+public class VoicePrefetcher implements IVoicePrefetcher {
+
+    private static final String TAG = VoicePrefetcher.class.getSimpleName();
+
+    private static final int PREFETCH_SECONDS = 5;
+
+    /**
+     * Оценка сверху для mp3 голосовых сообщений
+     */
+    private static final int BYTES_PER_SECOND = 16 * 1024;
+
+    private static final long PAGE_BUDGET_BYTES = 1024 * 1024;
+
+    private static final long NEXT_MAX_BYTES = 512 * 1024;
+
+    private static final int MAX_REMEMBERED = 200;
+
+    private final Context app;
+
+    private final IProxySettings proxySettings;
+
+    private final ISettings.IMainSettings mainSettings;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final AtomicInteger pageGeneration = new AtomicInteger();
+
+    /**
+     * Уже загруженные ссылки и объем загруженного
+     */
+    private final Map<String, Long> fetched = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    });
+
+    public VoicePrefetcher(Context context, IProxySettings proxySettings, ISettings.IMainSettings mainSettings) {
+        this.app = context.getApplicationContext();
+        this.proxySettings = proxySettings;
+        this.mainSettings = mainSettings;
+    }
+
+    @Override
+    public void prefetch(@NonNull List<VoiceMessage> voiceMessages) {
+        final int generation = pageGeneration.incrementAndGet();
+
+        if (voiceMessages.isEmpty() || !isAllowed()) {
+            return;
+        }
+
+        final List<VoiceMessage> copy = new ArrayList<>(voiceMessages);
+        executor.execute(() -> {
+            long budget = PAGE_BUDGET_BYTES;
+
+            for (VoiceMessage voiceMessage : copy) {
+                if (generation != pageGeneration.get()) {
+                    // пришла новая страница
+                    return;
+                }
+
+                long bytes = (long) Math.min(Math.max(voiceMessage.getDuration(), 1), PREFETCH_SECONDS) * BYTES_PER_SECOND;
+                if (bytes > budget) {
+                    break;
+                }
+
+                budget -= fetch(voiceMessage.getLinkMp3(), bytes);
+            }
+        });
+    }
+
+    @Override
+    public void prefetchNext(@NonNull VoiceMessage voiceMessage) {
+        if (!isAllowed()) {
+            return;
+        }
+
+        long bytes = Math.min((long) Math.max(voiceMessage.getDuration(), PREFETCH_SECONDS) * BYTES_PER_SECOND, NEXT_MAX_BYTES);
+        executor.execute(() -> fetch(voiceMessage.getLinkMp3(), bytes));
+    }
+
+    private boolean isAllowed() {
+        return mainSettings.isVoicePrefetchEnabled() && isUnmeteredNetwork(app);
+    }
+
+    static boolean isUnmeteredNetwork(Context context) {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (isNull(manager)) {
+            return false;
+        }
+
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        return nonNull(info) && info.isConnected() && !manager.isActiveNetworkMetered();
+    }
+
+    /**
+     * @return сколько байт прочитано (из сети или из кэша)
+     */
+    private long fetch(String url, long bytes) {
+        if (isEmpty(url)) {
+            return 0;
+        }
+
+        Long already = fetched.get(url);
+        if (nonNull(already) && already >= bytes) {
+            return 0;
+        }
+
+        DataSource source = createDataSourceFactory().createDataSource();
+        long total = 0;
+
+        try {
+            source.open(new DataSpec(Uri.parse(url), 0, bytes, null));
+
+            byte[] buffer = new byte[8192];
+            while (total < bytes) {
+                int read = source.read(buffer, 0, buffer.length);
+                if (read == C.RESULT_END_OF_INPUT) {
+                    break;
+                }
+
+                total += read;
+            }
+
+            fetched.put(url, bytes);
+        } catch (IOException e) {
+            Logger.d(TAG, "Unable to prefetch " + url + ", " + e.getMessage());
+        } finally {
+            try {
+                source.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        return total;
+    }
+
+    private DataSource.Factory createDataSourceFactory() {
+        ProxyConfig config = proxySettings.getActiveProxy();
+        Proxy proxy = isNull(config) ? null : new Proxy(Proxy.Type.HTTP, ProxyUtil.obtainAddress(config));
+
+        CustomHttpDataSourceFactory upstream = new CustomHttpDataSourceFactory(Constants.USER_AGENT(null), proxy);
+        return MediaCache.getInstance(app).createDataSourceFactory(upstream);
+    }
+}
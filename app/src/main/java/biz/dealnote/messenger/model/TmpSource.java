@@ -43,6 +43,20 @@ public final class TmpSource implements Parcelable {
         return sourceId;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TmpSource that = (TmpSource) o;
+        return ownerId == that.ownerId && sourceId == that.sourceId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ownerId + sourceId;
+    }
+
     @Override
     public int describeContents() {
         return 0;
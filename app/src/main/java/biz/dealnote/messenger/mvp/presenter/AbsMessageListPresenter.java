@@ -14,13 +14,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import biz.dealnote.messenger.Injection;
 import biz.dealnote.messenger.R;
+import biz.dealnote.messenger.adapter.MessagesAdapter;
 import biz.dealnote.messenger.media.voice.IVoicePlayer;
+import biz.dealnote.messenger.media.voice.IVoicePrefetcher;
 import biz.dealnote.messenger.media.voice.PrepareException;
 import biz.dealnote.messenger.model.LastReadId;
 import biz.dealnote.messenger.model.Message;
 import biz.dealnote.messenger.model.VoiceMessage;
 import biz.dealnote.messenger.mvp.presenter.base.PlaceSupportPresenter;
 import biz.dealnote.messenger.mvp.view.IBasicMessageListView;
+import biz.dealnote.messenger.util.ListDiffer;
 import biz.dealnote.messenger.util.Lookup;
 import biz.dealnote.messenger.util.Optional;
 import biz.dealnote.messenger.util.Utils;
@@ -38,13 +41,22 @@ public abstract class AbsMessageListPresenter<V extends IBasicMessageListView> e
         PlaceSupportPresenter<V> implements IVoicePlayer.IPlayerStatusListener {
 
     private final ArrayList<Message> mData;
+
+    /**
+     * Полная замена списка с расчетом разницы в фоне.
+     * Любое прямое изменение списка должно сопровождаться {@link ListDiffer#invalidate()}
+     * (это делает {@link #safeNotifyDataChanged()})
+     */
+    protected final ListDiffer<Message> dataDiffer;
     private IVoicePlayer mVoicePlayer;
     private Lookup mVoiceMessageLookup;
+    private final IVoicePrefetcher voicePrefetcher = Injection.provideVoicePrefetcher();
 
     AbsMessageListPresenter(int accountId, @Nullable Bundle savedInstanceState) {
         super(accountId, savedInstanceState);
 
         mData = new ArrayList<>();
+        dataDiffer = new ListDiffer<>(mData, MessagesAdapter.DIFF_CALLBACK);
 
         mVoicePlayer = Injection.provideVoicePlayerFactory().createPlayer();
         mVoicePlayer.setCallback(this);
@@ -111,6 +123,8 @@ public abstract class AbsMessageListPresenter<V extends IBasicMessageListView> e
     }
 
     protected void safeNotifyDataChanged() {
+        dataDiffer.invalidate();
+
         if (isGuiReady()) {
             getView().notifyDataChanged();
         }
@@ -193,6 +207,7 @@ public abstract class AbsMessageListPresenter<V extends IBasicMessageListView> e
         try {
             boolean messageChanged = mVoicePlayer.toggle(voiceMessageId, voiceMessage);
             if(messageChanged){
+                prefetchNextVoiceMessage(voiceMessage);
                 resolveVoiceMessagePlayingState();
             } else {
                 boolean paused = !mVoicePlayer.isSupposedToPlay();
@@ -206,6 +221,51 @@ public abstract class AbsMessageListPresenter<V extends IBasicMessageListView> e
         syncVoiceLookupState();
     }
 
+    /**
+     * Загружает в кэш начало голосовых сообщений только что загруженной страницы
+     */
+    protected void prefetchVoiceMessages(@NonNull List<Message> messages){
+        List<VoiceMessage> voiceMessages = new ArrayList<>(0);
+        for(Message message : messages){
+            if(message.isVoiceMessage()){
+                voiceMessages.addAll(message.getAttachments().getVoiceMessages());
+            }
+        }
+
+        voicePrefetcher.prefetch(voiceMessages);
+    }
+
+    /**
+     * Новые сообщения в начале списка, поэтому следующее голосовое ищем ближе к началу
+     */
+    private void prefetchNextVoiceMessage(@NonNull VoiceMessage playing){
+        int index = -1;
+        for(int i = 0; i < mData.size() && index == -1; i++){
+            Message message = mData.get(i);
+            if(message.isVoiceMessage() && containsVoice(message.getAttachments().getVoiceMessages(), playing)){
+                index = i;
+            }
+        }
+
+        for(int i = index - 1; i >= 0; i--){
+            Message message = mData.get(i);
+            if(message.isVoiceMessage()){
+                voicePrefetcher.prefetchNext(message.getAttachments().getVoiceMessages().get(0));
+                return;
+            }
+        }
+    }
+
+    private static boolean containsVoice(List<VoiceMessage> voiceMessages, VoiceMessage target){
+        for(VoiceMessage voiceMessage : voiceMessages){
+            if(voiceMessage.getId() == target.getId() && voiceMessage.getOwnerId() == target.getOwnerId()){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private void resolveVoiceMessagePlayingState(boolean anim){
         if(isGuiReady()){
             Optional<Integer> optionalVoiceMessageId = mVoicePlayer.getPlayingVoiceId();
@@ -247,6 +307,7 @@ public abstract class AbsMessageListPresenter<V extends IBasicMessageListView> e
     @Override
     public void onDestroyed() {
         super.onDestroyed();
+        dataDiffer.cancel();
         mVoicePlayer.setCallback(null);
         mVoicePlayer.release();
         mVoicePlayer = null;
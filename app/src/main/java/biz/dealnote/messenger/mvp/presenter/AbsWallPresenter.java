@@ -25,6 +25,7 @@ import biz.dealnote.messenger.util.Analytics;
 import biz.dealnote.messenger.util.Pair;
 import biz.dealnote.messenger.util.RxUtils;
 import biz.dealnote.messenger.util.Utils;
+import biz.dealnote.messenger.view.emoji.PreparedTextCache;
 import biz.dealnote.mvp.reflect.OnGuiCreated;
 import io.reactivex.disposables.CompositeDisposable;
 
@@ -167,10 +168,15 @@ public abstract class AbsWallPresenter<V extends IWallView> extends PlaceSupport
         final int accountId = super.getAccountId();
 
         cacheCompositeDisposable.add(walls.getCachedWall(accountId, ownerId, wallFilter)
+                .doOnSuccess(this::prepareTexts)
                 .compose(RxUtils.applySingleIOToMainSchedulers())
                 .subscribe(this::onCachedDataReceived, Analytics::logUnexpectedError));
     }
 
+    private void prepareTexts(List<Post> posts) {
+        PreparedTextCache.preparePosts(getApplicationContext(), posts);
+    }
+
     private void onCachedDataReceived(List<Post> posts) {
         this.wall.clear();
         this.wall.addAll(posts);
@@ -227,6 +233,7 @@ public abstract class AbsWallPresenter<V extends IWallView> extends PlaceSupport
         final boolean append = offset > 0;
 
         netCompositeDisposable.add(walls.getWall(accountId, ownerId, offset, COUNT, wallFilter)
+                .doOnSuccess(this::prepareTexts)
                 .compose(RxUtils.applySingleIOToMainSchedulers())
                 .subscribe(posts -> onActualDataReceived(nextOffset, posts, append), this::onActualDataGetError));
     }
@@ -37,6 +37,7 @@ import biz.dealnote.messenger.upload.*
 import biz.dealnote.messenger.util.*
 import biz.dealnote.messenger.util.RxUtils.*
 import biz.dealnote.messenger.util.Utils.*
+import biz.dealnote.messenger.view.emoji.PreparedTextCache
 import biz.dealnote.mvp.reflect.OnGuiCreated
 import io.reactivex.Flowable
 import io.reactivex.disposables.Disposables
@@ -278,7 +279,7 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         }
 
         if (requireListUpdate) {
-            view?.notifyDataChanged()
+            view?.notifyReadStateChanged()
         }
     }
 
@@ -427,13 +428,19 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
     private fun loadAllCachedData() {
         setCacheLoadingNow(true)
         cacheLoadingDisposable = messagesRepository.getCachedPeerMessages(messagesOwnerId, peer.id)
+                .doOnSuccess { prepareTexts(it) }
                 .fromIOToMain()
                 .subscribe({ onCachedDataReceived(it) }, { onCachedDataReceived(Collections.emptyList()) })
     }
 
+    private fun prepareTexts(messages: List<Message>) {
+        PreparedTextCache.prepareMessages(applicationContext, messages)
+    }
+
     private fun onCachedDataReceived(data: List<Message>) {
         setCacheLoadingNow(false)
         onAllDataLoaded(data, false)
+        prefetchVoiceMessages(data)
     }
 
     private fun onNetDataReceived(messages: List<Message>, startMessageId: Int?) {
@@ -444,6 +451,7 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
 
         setNetLoadingNow(false)
         onAllDataLoaded(messages, startMessageId != null)
+        prefetchVoiceMessages(messages)
     }
 
     private fun onAllDataLoaded(messages: List<Message>, appendToList: Boolean) {
@@ -465,15 +473,24 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
             }
         }
 
-        val startSize = data.size
-
         if (all && data.isNotEmpty()) {
-            data.clear()
-            data.addAll(messages)
-            view?.notifyDataChanged()
+            // разница со старым списком считается в фоне, на экране обновятся только изменившиеся сообщения
+            dataDiffer.submit(messages) { result ->
+                if (result == null) {
+                    safeNotifyDataChanged()
+                } else {
+                    view?.notifyMessagesUpdated(result)
+                }
+
+                resolveEmptyTextVisibility()
+            }
         } else {
-            data.addAll(messages)
-            view?.notifyMessagesUpAdded(startSize, messages.size)
+            dataDiffer.runWhenIdle {
+                val startSize = data.size
+                data.addAll(messages)
+                dataDiffer.invalidate()
+                view?.notifyMessagesUpAdded(startSize, messages.size)
+            }
         }
 
         resolveEmptyTextVisibility()
@@ -514,6 +531,7 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
 
         val peerId = this.peerId
         netLoadingDisposable = messagesRepository.getPeerMessages(messagesOwnerId, peerId, COUNT, null, startMessageId, true)
+                .doOnSuccess { prepareTexts(it) }
                 .fromIOToMain()
                 .subscribe({ messages -> onNetDataReceived(messages, startMessageId) }, { this.onMessagesGetError(it) })
     }
@@ -529,12 +547,13 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
     }
 
     private fun onMessagesRestoredSuccessfully(id: Int) {
-        data.find {
-            it.id == id
-        }?.run {
-            isDeleted = false
-            isDeletedForAll = false
-            view?.notifyDataChanged()
+        dataDiffer.runWhenIdle {
+            val index = indexOf(id)
+            if (index != -1) {
+                data[index].isDeleted = false
+                data[index].isDeletedForAll = false
+                notifyItemChanged(index)
+            }
         }
     }
 
@@ -641,8 +660,12 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
     }
 
     private fun onMessageSaveSuccess(message: Message) {
-        addMessageToList(message)
-        view?.notifyDataChanged()
+        dataDiffer.runWhenIdle {
+            // после перезагрузки списка сообщение уже может быть в нем
+            if (indexOf(message.id) == -1) {
+                notifyItemInserted(addMessageToList(message))
+            }
+        }
     }
 
     private fun startSendService() {
@@ -822,55 +845,81 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         }
     }
 
-    private fun addMessageToList(message: Message) {
-        Utils.addElementToList(message, data, MESSAGES_COMPARATOR)
+    private fun addMessageToList(message: Message): Int {
+        return Utils.addElementToList(message, data, MESSAGES_COMPARATOR)
+    }
+
+    private fun notifyItemInserted(index: Int) {
+        dataDiffer.invalidate()
+        view?.notifyItemInserted(index)
+    }
+
+    private fun notifyItemRemoved(index: Int) {
+        dataDiffer.invalidate()
+        view?.notifyItemRemoved(index)
+    }
+
+    private fun notifyItemChanged(index: Int) {
+        dataDiffer.invalidate()
+        view?.notifyItemChanged(index)
     }
 
     private fun onMessagesUpdate(updates: List<MessageUpdate>) {
+        // изменения, пришедшие во время перезагрузки списка, применяются уже к новому списку
+        dataDiffer.runWhenIdle { applyMessagesUpdate(updates) }
+    }
+
+    private fun applyMessagesUpdate(updates: List<MessageUpdate>) {
         for (update in updates) {
             val targetIndex = indexOf(update.messageId)
+            if (targetIndex == -1) {
+                continue
+            }
+
+            val statusUpdate = update.statusUpdate
+
+            if (statusUpdate != null) {
+                val vkid = statusUpdate.vkid
 
-            update.statusUpdate?.run {
                 if (vkid != null) {
                     // message was sent
                     val alreadyExist = indexOf(vkid) != -1
+                    val message = data.removeAt(targetIndex)
 
                     if (alreadyExist) {
-                        if (targetIndex != -1) {
-                            data.removeAt(targetIndex)
-                        }
+                        notifyItemRemoved(targetIndex)
                     } else {
-                        if (targetIndex != -1) {
-                            val message = data[targetIndex]
-                            message.status = status
-                            message.id = vkid
-
-                            data.removeAt(targetIndex)
-                            addMessageToList(message)
+                        message.status = statusUpdate.status
+                        message.id = vkid
+
+                        val newIndex = addMessageToList(message)
+                        if (newIndex == targetIndex) {
+                            notifyItemChanged(targetIndex)
+                        } else {
+                            notifyItemRemoved(targetIndex)
+                            notifyItemInserted(newIndex)
                         }
                     }
                 } else {
                     //message not sent
-                    if (targetIndex != -1) {
-                        val message = data[targetIndex]
-                        message.status = status
-                    }
+                    data[targetIndex].status = statusUpdate.status
+                    notifyItemChanged(targetIndex)
                 }
-            } ?: run {
-                if (targetIndex != -1) {
-                    update.deleteUpdate?.run {
-                        data[targetIndex].isDeleted = isDeleted
-                        data[targetIndex].isDeletedForAll = isDeletedForAll
-                    }
+            } else {
+                val message = data[targetIndex]
 
-                    update.importantUpdate?.run {
-                        data[targetIndex].isImportant = isImportant
-                    }
+                update.deleteUpdate?.run {
+                    message.isDeleted = isDeleted
+                    message.isDeletedForAll = isDeletedForAll
+                }
+
+                update.importantUpdate?.run {
+                    message.isImportant = isImportant
                 }
+
+                notifyItemChanged(targetIndex)
             }
         }
-
-        view?.notifyDataChanged()
     }
 
     private fun onRealtimeMessageReceived(message: Message) {
@@ -883,12 +932,17 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
             resolveToolbarTitle()
         }
 
+        dataDiffer.runWhenIdle { insertRealtimeMessage(message) }
+    }
+
+    private fun insertRealtimeMessage(message: Message) {
         val index = data.indexOfFirst {
             it.id == message.id
         }
 
         if (index != -1) {
             data.removeAt(index)
+            notifyItemRemoved(index)
         }
 
         if (message.isOut && message.randomId > 0) {
@@ -898,11 +952,11 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
 
             if (unsentIndex != -1) {
                 data.removeAt(unsentIndex)
+                notifyItemRemoved(unsentIndex)
             }
         }
 
-        addMessageToList(message)
-        view?.notifyDataChanged()
+        notifyItemInserted(addMessageToList(message))
     }
 
     private fun isChatWithUser(userId: Int): Boolean {
@@ -1080,7 +1134,7 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         if (!last.isOut && last.id > lastReadId.incoming) {
             lastReadId.incoming = last.id
 
-            view?.notifyDataChanged()
+            view?.notifyReadStateChanged()
 
             appendDisposable(messagesRepository.markAsRead(messagesOwnerId, peer.id, last.id)
                     .fromIOToMain()
@@ -1158,7 +1212,7 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         }
 
         if (hasChanged) {
-            view?.notifyDataChanged()
+            safeNotifyDataChanged()
         }
 
         if(canDeleteForAll.isNotEmpty()){
@@ -1194,10 +1248,12 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
     }
 
     fun fireErrorMessageDeleteClick(message: Message) {
-        val index = indexOf(message.id)
-        if (index != -1) {
-            data.removeAt(index)
-            view?.notifyItemRemoved(index)
+        dataDiffer.runWhenIdle {
+            val index = indexOf(message.id)
+            if (index != -1) {
+                data.removeAt(index)
+                notifyItemRemoved(index)
+            }
         }
 
         deleteMessageFromDbAsync(message)
@@ -1439,9 +1495,10 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         netLoadingDisposable.dispose()
         cacheLoadingDisposable.dispose()
         fetchConversationDisposable.dispose()
+        dataDiffer.cancel()
 
         super.getData().clear()
-        view?.notifyDataChanged()
+        safeNotifyDataChanged()
 
         updateSubtitle()
 
@@ -1555,13 +1612,15 @@ class ChatPrensenter(accountId: Int, private val messagesOwnerId: Int,
         resolveEditedMessageViews()
         resolvePrimaryButton()
 
-        val index = data.indexOfFirst {
-            it.id == message.id
-        }
+        dataDiffer.runWhenIdle {
+            val index = data.indexOfFirst {
+                it.id == message.id
+            }
 
-        if (index != -1) {
-            data[index] = message
-            view?.notifyDataChanged()
+            if (index != -1) {
+                data[index] = message
+                notifyItemChanged(index)
+            }
         }
     }
 
@@ -13,6 +13,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import biz.dealnote.messenger.Injection;
 import biz.dealnote.messenger.R;
+import biz.dealnote.messenger.adapter.DialogsAdapter;
 import biz.dealnote.messenger.domain.IMessagesRepository;
 import biz.dealnote.messenger.domain.InteractorFactory;
 import biz.dealnote.messenger.domain.Repository;
@@ -29,6 +30,7 @@ import biz.dealnote.messenger.mvp.view.IDialogsView;
 import biz.dealnote.messenger.settings.ISettings;
 import biz.dealnote.messenger.util.Analytics;
 import biz.dealnote.messenger.util.AssertUtils;
+import biz.dealnote.messenger.util.ListDiffer;
 import biz.dealnote.messenger.util.Optional;
 import biz.dealnote.messenger.util.RxUtils;
 import biz.dealnote.messenger.util.ShortcutUtils;
@@ -58,6 +60,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
     private int dialogsOwnerId;
 
     private final ArrayList<Dialog> dialogs;
+    private final ListDiffer<Dialog> dialogsDiffer;
     private boolean endOfContent;
 
     private final IMessagesRepository messagesInteractor;
@@ -68,6 +71,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
         setSupportAccountHotSwap(true);
 
         dialogs = new ArrayList<>();
+        dialogsDiffer = new ListDiffer<>(dialogs, DialogsAdapter.DIFF_CALLBACK);
 
         if (nonNull(savedInstanceState)) {
             dialogsOwnerId = savedInstanceState.getInt(SAVE_DIALOGS_OWNER_ID);
@@ -113,10 +117,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
         setNetLoadnigNow(false);
 
         endOfContent = false;
-        dialogs.clear();
-        dialogs.addAll(data);
-
-        safeNotifyDataSetChanged();
+        submitDialogs(data);
 
         try {
             appendDisposable(InteractorFactory.createStickersInteractor()
@@ -188,6 +189,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
 
         int startSize = dialogs.size();
         dialogs.addAll(data);
+        dialogsDiffer.invalidate();
 
         if (isGuiReady()) {
             getView().notifyDataAdded(startSize, data.size());
@@ -232,10 +234,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
     private void onCachedDataReceived(List<Dialog> data) {
         cacheNowLoading = false;
 
-        dialogs.clear();
-        dialogs.addAll(data);
-
-        safeNotifyDataSetChanged();
+        submitDialogs(data);
         resolveRefreshingView();
 
         requestAtLast();
@@ -278,40 +277,90 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
             return;
         }
 
+        // если сейчас подставляется новый список, обновление применится уже к нему
+        dialogsDiffer.runWhenIdle(() -> applyPeerUpdate(peerId, update, messageOptional));
+    }
+
+    private void applyPeerUpdate(int peerId, PeerUpdate update, Optional<Message> messageOptional) {
         int index = indexOf(dialogs, peerId);
-        if (index != -1) {
-            Dialog dialog = dialogs.get(index);
+        if (index == -1) {
+            return;
+        }
 
-            if (update.getReadIn() != null) {
-                dialog.setInRead(update.getReadIn().getMessageId());
-            }
+        Dialog dialog = dialogs.get(index);
 
-            if (update.getReadOut() != null) {
-                dialog.setOutRead(update.getReadOut().getMessageId());
-            }
+        if (update.getReadIn() != null) {
+            dialog.setInRead(update.getReadIn().getMessageId());
+        }
 
-            if (update.getUnread() != null) {
-                dialog.setUnreadCount(update.getUnread().getCount());
-            }
+        if (update.getReadOut() != null) {
+            dialog.setOutRead(update.getReadOut().getMessageId());
+        }
 
-            if (messageOptional.nonEmpty()) {
-                Message message = messageOptional.get();
-                dialog.setLastMessageId(message.getId());
-                dialog.setMessage(message);
+        if (update.getUnread() != null) {
+            dialog.setUnreadCount(update.getUnread().getCount());
+        }
 
-                if (dialog.isChat()) {
-                    dialog.setInterlocutor(message.getSender());
-                }
-            }
+        if (messageOptional.nonEmpty()) {
+            Message message = messageOptional.get();
+            dialog.setLastMessageId(message.getId());
+            dialog.setMessage(message);
 
-            if(update.getTitle() != null){
-                dialog.setTitle(update.getTitle().getTitle());
+            if (dialog.isChat()) {
+                dialog.setInterlocutor(message.getSender());
             }
+        }
 
-            Collections.sort(dialogs, COMPARATOR);
+        if(update.getTitle() != null){
+            dialog.setTitle(update.getTitle().getTitle());
         }
 
-        safeNotifyDataSetChanged();
+        dialogsDiffer.invalidate();
+
+        // остальной список уже отсортирован, достаточно переставить один диалог
+        dialogs.remove(index);
+        int target = findInsertPosition(dialogs, dialog);
+        dialogs.add(target, dialog);
+
+        if (target == index) {
+            callView(view -> view.notifyItemChanged(index));
+        } else {
+            callView(view -> view.notifyItemMoved(index, target));
+        }
+    }
+
+    /**
+     * Бинарный поиск позиции диалога в отсортированном по {@link #COMPARATOR} списке
+     */
+    private static int findInsertPosition(List<Dialog> sorted, Dialog dialog) {
+        int low = 0;
+        int high = sorted.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (COMPARATOR.compare(sorted.get(middle), dialog) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Полная замена списка (из кэша или первая страница из сети).
+     * Разница со старым списком считается в фоне, на экране обновляются только изменившиеся диалоги
+     */
+    private void submitDialogs(List<Dialog> data) {
+        dialogsDiffer.submit(data, result -> {
+            if (isNull(result)) {
+                safeNotifyDataSetChanged();
+            } else {
+                callView(view -> view.notifyDataUpdated(result));
+            }
+        });
     }
 
     private void onDialogDeleted(int accountId, int peerId) {
@@ -319,11 +368,14 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
             return;
         }
 
-        int index = indexOf(dialogs, peerId);
-        if (index != -1) {
-            dialogs.remove(index);
-            safeNotifyDataSetChanged();
-        }
+        dialogsDiffer.runWhenIdle(() -> {
+            int index = indexOf(dialogs, peerId);
+            if (index != -1) {
+                dialogs.remove(index);
+                dialogsDiffer.invalidate();
+                callView(view -> view.notifyItemRemoved(index));
+            }
+        });
     }
 
     private void safeNotifyDataSetChanged() {
@@ -334,6 +386,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
 
     @Override
     public void onDestroyed() {
+        dialogsDiffer.cancel();
         cacheLoadingDisposable.dispose();
         netDisposable.dispose();
         super.onDestroyed();
@@ -390,7 +443,7 @@ public class DialogsPresenter extends AccountDependencyPresenter<IDialogsView> {
     }
 
     private boolean canLoadMore() {
-        return !cacheNowLoading && !endOfContent && !netLoadnigNow && !dialogs.isEmpty();
+        return !cacheNowLoading && !endOfContent && !netLoadnigNow && !dialogsDiffer.isPending() && !dialogs.isEmpty();
     }
 
     public void fireScrollToEnd() {
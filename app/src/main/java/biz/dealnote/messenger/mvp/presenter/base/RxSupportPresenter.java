@@ -75,6 +75,13 @@ public abstract class RxSupportPresenter<V extends IMvpView> extends AbsPresente
         super.saveState(outState);
         outState.putInt(SAVE_INSTANCE_ID, instanceId);
         outState.putBoolean(SAVE_TEMP_DATA_USAGE, tempDataUsage);
+
+        if (tempDataUsage) {
+            // процесс может быть завершен, пока приложение в фоне
+            RxUtils.subscribeOnIOAndIgnore(Stores.getInstance()
+                    .tempStore()
+                    .persist(getInstanceId()));
+        }
     }
 
     protected int getInstanceId() {
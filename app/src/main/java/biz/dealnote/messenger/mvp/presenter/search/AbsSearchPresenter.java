@@ -90,6 +90,17 @@ public abstract class AbsSearchPresenter<V extends IBaseSearchView<T>, C extends
         final N nf = this.nextFrom;
 
         setLoadingNow(true);
+
+        if (isAtLast(nf)) {
+            Single<List<T>> cached = doCachedSearch(accountId, cloneCriteria);
+
+            if (nonNull(cached)) {
+                searchDisposable.add(cached
+                        .compose(RxUtils.applySingleIOToMainSchedulers())
+                        .subscribe(this::onCachedDataReceived, RxUtils.ignore()));
+            }
+        }
+
         searchDisposable.add(doSearch(accountId, cloneCriteria, nf)
                 .compose(RxUtils.applySingleIOToMainSchedulers())
                 .subscribe(pair -> onSearchDataReceived(cloneCriteria, nf, pair.getFirst(), pair.getSecond()),
@@ -102,6 +113,19 @@ public abstract class AbsSearchPresenter<V extends IBaseSearchView<T>, C extends
 
     abstract boolean isAtLast(N startFrom);
 
+    /**
+     * Результаты из кэша показываются, только пока нет никаких других
+     */
+    private void onCachedDataReceived(List<T> data) {
+        if (!loadingNow || !this.data.isEmpty() || data.isEmpty()) {
+            return;
+        }
+
+        this.data.addAll(data);
+        callView(IBaseSearchView::notifyDataSetChanged);
+        resolveEmptyText();
+    }
+
     private void onSearchDataReceived(C criteria, N startFrom, List<T> data, N nextFrom) {
         setLoadingNow(false);
 
@@ -186,6 +210,16 @@ public abstract class AbsSearchPresenter<V extends IBaseSearchView<T>, C extends
 
     abstract Single<Pair<List<T>, N>> doSearch(int accountId, C criteria, N startFrom);
 
+    /**
+     * Быстрый поиск без сети, его результат показывается до ответа {@link #doSearch(int, BaseSearchCriteria, AbsNextFrom)}
+     *
+     * @return null, если поиск по кэшу не поддерживается
+     */
+    @Nullable
+    Single<List<T>> doCachedSearch(int accountId, C criteria) {
+        return null;
+    }
+
     abstract C instantiateEmptyCriteria();
 
     @Override
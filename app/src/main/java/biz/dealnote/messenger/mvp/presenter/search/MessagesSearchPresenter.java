@@ -54,6 +54,11 @@ public class MessagesSearchPresenter extends AbsSearchPresenter<IMessagesSearchV
                 .map(messages -> Pair.Companion.create(messages, new IntNextFrom(offset + COUNT)));
     }
 
+    @Override
+    Single<List<Message>> doCachedSearch(int accountId, MessageSeachCriteria criteria) {
+        return messagesInteractor.searchCachedMessages(accountId, criteria.getPeerId(), COUNT, 0, criteria.getQuery());
+    }
+
     @Override
     MessageSeachCriteria instantiateEmptyCriteria() {
         return new MessageSeachCriteria("");
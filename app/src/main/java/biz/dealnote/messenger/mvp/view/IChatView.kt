@@ -1,6 +1,7 @@
 package biz.dealnote.messenger.mvp.view
 
 import android.net.Uri
+import androidx.recyclerview.widget.DiffUtil
 import biz.dealnote.messenger.crypt.KeyLocationPolicy
 import biz.dealnote.messenger.model.*
 import biz.dealnote.messenger.upload.UploadDestination
@@ -32,6 +33,10 @@ interface IChatView : IBasicMessageListView, IErrorView {
 
     fun showErrorSendDialog(message: Message)
     fun notifyItemRemoved(position: Int)
+    fun notifyItemInserted(position: Int)
+    fun notifyItemChanged(position: Int)
+    fun notifyMessagesUpdated(result: DiffUtil.DiffResult)
+    fun notifyReadStateChanged()
 
     fun configOptionMenu(canLeaveChat: Boolean, canChangeTitle: Boolean, canShowMembers: Boolean,
                          encryptionStatusVisible: Boolean, encryprionEnabled: Boolean, encryptionPlusEnabled: Boolean, keyExchangeVisible: Boolean)
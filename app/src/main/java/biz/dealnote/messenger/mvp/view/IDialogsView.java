@@ -2,8 +2,10 @@ package biz.dealnote.messenger.mvp.view;
 
 import java.util.List;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
+import androidx.recyclerview.widget.DiffUtil;
 import biz.dealnote.messenger.model.Dialog;
 import biz.dealnote.messenger.model.Owner;
 import biz.dealnote.messenger.model.User;
@@ -19,6 +21,10 @@ public interface IDialogsView extends IAccountDependencyView, IMvpView, IErrorVi
     void displayData(List<Dialog> data);
     void notifyDataSetChanged();
     void notifyDataAdded(int position, int count);
+    void notifyDataUpdated(@NonNull DiffUtil.DiffResult result);
+    void notifyItemChanged(int position);
+    void notifyItemMoved(int fromPosition, int toPosition);
+    void notifyItemRemoved(int position);
     void showRefreshing(boolean refreshing);
 
     void goToChat(int accountId, int messagesOwnerId, int peerId, String title, String avaurl);
@@ -49,6 +49,7 @@ import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
@@ -73,10 +74,8 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 
 import biz.dealnote.messenger.BuildConfig;
@@ -92,14 +91,15 @@ import biz.dealnote.messenger.domain.InteractorFactory;
 import biz.dealnote.messenger.media.exo.CustomHttpDataSourceFactory;
 import biz.dealnote.messenger.media.exo.ExoEventAdapter;
 import biz.dealnote.messenger.media.exo.ExoUtil;
+import biz.dealnote.messenger.media.exo.MediaCache;
 import biz.dealnote.messenger.model.Audio;
 import biz.dealnote.messenger.model.IdPair;
+import biz.dealnote.messenger.util.DisposableHolder;
 import biz.dealnote.messenger.util.Logger;
 import biz.dealnote.messenger.util.PhoenixToast;
 import biz.dealnote.messenger.util.RxUtils;
 import biz.dealnote.messenger.util.Utils;
-import io.reactivex.disposables.CompositeDisposable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.Single;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Interceptor;
@@ -107,6 +107,7 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+import static biz.dealnote.messenger.util.Objects.isNull;
 import static biz.dealnote.messenger.util.Objects.nonNull;
 import static biz.dealnote.messenger.util.Utils.firstNonEmptyString;
 import static biz.dealnote.messenger.util.Utils.isEmpty;
@@ -172,7 +173,6 @@ public class MusicPlaybackService extends Service {
 
     private static final int IDLE_DELAY = 60000;
     private static final int MAX_HISTORY_SIZE = 100;
-    private static final LinkedList<Integer> mHistory = new LinkedList<>();
 
     private static final Shuffler mShuffler = new Shuffler(MAX_HISTORY_SIZE);
 
@@ -201,6 +201,13 @@ public class MusicPlaybackService extends Service {
 
     private int mPlayPos = -1;
 
+    /**
+     * Позиция трека, который заранее загружается плеером, -1 - следующего нет
+     */
+    private int mNextPlayPos = -1;
+
+    private final ShuffleHistory mHistory = new ShuffleHistory(MAX_HISTORY_SIZE);
+
     private String CoverAudio;
     private String CoverAlbom;
 
@@ -485,25 +492,11 @@ public class MusicPlaybackService extends Service {
 
     public static final int MAX_QUEUE_SIZE = 200;
 
-    private static List<IdPair> listToIdPair(ArrayList<Audio> audios) {
-        List<IdPair> result = new ArrayList<>();
-        for (Audio item : audios) {
-            result.add(new IdPair(item.getId(), item.getOwnerId()));
-        }
-        return result;
-    }
-
+    /**
+     * Ссылки на аудиозаписи, которых нет в списке, плеер получает сам перед воспроизведением
+     * каждого трека (и следующего за ним), поэтому весь список здесь не запрашивается
+     */
     public static void startForPlayList(Context context, @NonNull ArrayList<Audio> audios, int position, boolean forceShuffle) {
-        String url = audios.get(0).getUrl();
-        IAudioInteractor interactor = InteractorFactory.createAudioInteractor();
-
-        if (interactor.isAudioPluginAvailable() && (isEmpty(url) || "https://vk.com/mp3/audio_api_unavailable.mp3".equals(url))) {
-            audios = (ArrayList<Audio>) interactor
-                    .getById(listToIdPair(audios))
-                    .subscribeOn(Schedulers.io())
-                    .blockingGet();
-        }
-
         Logger.d(TAG, "startForPlayList, count: " + audios.size() + ", position: " + position);
 
         ArrayList<Audio> target;
@@ -612,9 +605,54 @@ public class MusicPlaybackService extends Service {
 
             Audio current = mPlayList.get(mPlayPos);
             openFile(current, UpdateMeta);
+            setNextTrack();
         }
     }
 
+    /**
+     * Определяет следующий трек и передает его плееру, чтобы тот загрузил его заранее
+     * и перешел на него без паузы
+     */
+    private void setNextTrack() {
+        mNextPlayPos = Utils.safeIsEmpty(mPlayList) || mPlayPos < 0 ? -1 : getNextPosition(false);
+
+        Audio next = mNextPlayPos >= 0 && mNextPlayPos != mPlayPos ? mPlayList.get(mNextPlayPos) : null;
+        mPlayer.setNextDataSource(next);
+    }
+
+    /**
+     * Плеер сам перешел на заранее загруженный следующий трек
+     */
+    private void onTrackWentToNext() {
+        synchronized (this) {
+            if (mNextPlayPos < 0) {
+                return;
+            }
+
+            moveToPosition(mNextPlayPos);
+            updateCover(getCurrentTrack());
+            setNextTrack();
+        }
+
+        notifyChange(META_CHANGED);
+    }
+
+    /**
+     * Переход на другую позицию очереди, в режиме перемешивания текущая попадает в историю
+     */
+    private void moveToPosition(int pos) {
+        if (mShuffleMode == SHUFFLE && mPlayPos >= 0 && pos != mPlayPos) {
+            if (mHistory.contains(pos)) {
+                // все треки уже прослушаны, начался новый круг
+                mHistory.clear();
+            }
+
+            mHistory.add(mPlayPos);
+        }
+
+        mPlayPos = pos;
+    }
+
     /**
      * @param force True to force the player onto the track next, false
      *              otherwise.
@@ -626,29 +664,7 @@ public class MusicPlaybackService extends Service {
         }
 
         if (mShuffleMode == SHUFFLE) {
-            if (mPlayPos >= 0) {
-                mHistory.add(mPlayPos);
-            }
-
-            if (mHistory.size() > MAX_HISTORY_SIZE) {
-                mHistory.remove(0);
-            }
-
-            Stack<Integer> notPlayedTracksPositions = new Stack<>();
-            boolean allWerePlayed = mPlayList.size() - mHistory.size() == 0;
-            if (!allWerePlayed) {
-                for (int i = 0; i < mPlayList.size(); i++) {
-                    if (!mHistory.contains(i)) {
-                        notPlayedTracksPositions.push(i);
-                    }
-                }
-            } else {
-                for (int i = 0; i < mPlayList.size(); i++) {
-                    notPlayedTracksPositions.push(i);
-                }
-                mHistory.clear();
-            }
-            return notPlayedTracksPositions.get(mShuffler.nextInt(notPlayedTracksPositions.size()));
+            return getNextShufflePosition();
         }
 
         if (mPlayPos >= Utils.safeCountOf(mPlayList) - 1) {
@@ -664,6 +680,33 @@ public class MusicPlaybackService extends Service {
         }
     }
 
+    /**
+     * Случайный еще не прослушанный трек. История не изменяется, это происходит
+     * при самом переходе ({@link #moveToPosition(int)}), поэтому позицию можно вычислить заранее
+     */
+    private int getNextShufflePosition() {
+        final int count = mPlayList.size();
+        final int[] candidates = new int[count];
+        int size = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i != mPlayPos && !mHistory.contains(i)) {
+                candidates[size++] = i;
+            }
+        }
+
+        if (size == 0) {
+            // все треки уже прослушаны
+            for (int i = 0; i < count; i++) {
+                if (i != mPlayPos || count == 1) {
+                    candidates[size++] = i;
+                }
+            }
+        }
+
+        return candidates[mShuffler.nextInt(size)];
+    }
+
     /**
      * Notify the change-receivers that something has changed.
      */
@@ -801,21 +844,27 @@ public class MusicPlaybackService extends Service {
                 stop(Boolean.TRUE);
                 return;
             }
+            mPlayer.setDataSource(audio);
             if(UpdateMeta) {
-                CoverAudio = null;
-                CoverAlbom = null;
-            }
-            mPlayer.setDataSource(audio.getOwnerId(), audio.getId(), audio.getUrl());
-            if(UpdateMeta) {
-                try {
-                    GetCoverURL(audio);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                updateCover(audio);
             }
         }
     }
 
+    private void updateCover(Audio audio) {
+        CoverAudio = null;
+        CoverAlbom = null;
+        if (audio == null) {
+            return;
+        }
+
+        try {
+            GetCoverURL(audio);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Returns the audio session ID
      *
@@ -1073,7 +1122,9 @@ public class MusicPlaybackService extends Service {
                 return;
             }
 
-            final int pos = getNextPosition(force);
+            // следующий трек уже вычислен и, возможно, загружен заранее
+            final int pos = mNextPlayPos >= 0 && !(force && mRepeatMode == REPEAT_CURRENT)
+                    ? mNextPlayPos : getNextPosition(force);
             Logger.d(TAG, String.valueOf(pos));
 
             if (pos < 0) {
@@ -1087,9 +1138,18 @@ public class MusicPlaybackService extends Service {
                 return;
             }
 
-            mPlayPos = pos;
+            if (pos == mNextPlayPos && mPlayer.skipToNext()) {
+                moveToPosition(pos);
+                updateCover(getCurrentTrack());
+                setNextTrack();
+                play();
+
+                notifyChange(META_CHANGED);
+                return;
+            }
+
+            moveToPosition(pos);
             stop(false);
-            mPlayPos = pos;
 
             playCurrentTrack(true);
 
@@ -1106,12 +1166,12 @@ public class MusicPlaybackService extends Service {
         synchronized (this) {
             if (mShuffleMode == SHUFFLE) {
                 // Go to previously-played track and remove it from the history
-                final int histsize = mHistory.size();
-                if (histsize == 0) {
+                final int previous = mHistory.pollLast();
+                if (previous < 0) {
                     return;
                 }
 
-                mPlayPos = mHistory.remove(histsize - 1);
+                mPlayPos = previous;
             } else {
                 if (mPlayPos > 0) {
                     mPlayPos--;
@@ -1130,6 +1190,7 @@ public class MusicPlaybackService extends Service {
     public void setRepeatMode(final int repeatmode) {
         synchronized (this) {
             mRepeatMode = repeatmode;
+            setNextTrack();
             notifyChange(REPEATMODE_CHANGED);
         }
     }
@@ -1141,6 +1202,7 @@ public class MusicPlaybackService extends Service {
             }
 
             mShuffleMode = shufflemode;
+            setNextTrack();
             notifyChange(SHUFFLEMODE_CHANGED);
         }
     }
@@ -1300,6 +1362,8 @@ public class MusicPlaybackService extends Service {
 
     private static final class MultiPlayer{
 
+        private static final String UNAVAILABLE_URL = "https://vk.com/mp3/audio_api_unavailable.mp3";
+
         final WeakReference<MusicPlaybackService> mService;
 
         SimpleExoPlayer mCurrentMediaPlayer;
@@ -1312,49 +1376,35 @@ public class MusicPlaybackService extends Service {
 
         final IAudioInteractor audioInteractor;
 
-        final CompositeDisposable compositeDisposable = new CompositeDisposable();
+        /**
+         * Текущий трек и, если он уже известен, следующий. ExoPlayer буферизует следующий
+         * после загрузки текущего и переходит на него без паузы
+         */
+        ConcatenatingMediaSource mPlaylist;
 
         /**
-         * Constructor of <code>MultiPlayer</code>
+         * Трек, который нужно загрузить заранее, null - не загружать
          */
-        MultiPlayer(final MusicPlaybackService service) {
-            mService = new WeakReference<>(service);
-            audioInteractor = InteractorFactory.createAudioInteractor();
-            mCurrentMediaPlayer = new SimpleExoPlayer.Builder(Injection.provideApplicationContext()).build();
-            //mCurrentMediaPlayer.setWakeMode(mService.get(), PowerManager.PARTIAL_WAKE_LOCK);
-        }
+        Audio mNextAudio;
 
         /**
-         * @param remoteUrl The path of the file, or the http/rtsp URL of the stream
-         *                  you want to play
-         *                  return True if the <code>player</code> has been prepared and is
-         *                  ready to play, false otherwise
+         * Следующий трек, который не нужно загружать заранее (при его загрузке могла произойти ошибка)
          */
-        void setDataSource(final String remoteUrl) {
-            preparing = true;
-            final String url = firstNonEmptyString(remoteUrl, "https://vk.com/mp3/audio_api_unavailable.mp3");
+        Audio mSkipPreload;
 
-            Proxy proxy = null;
-            if (nonNull(Injection.provideProxySettings().getActiveProxy())) {
-                proxy = new Proxy(Proxy.Type.HTTP, ProxyUtil.obtainAddress(Injection.provideProxySettings().getActiveProxy()));
-                if (Injection.provideProxySettings().getActiveProxy().isAuthEnabled()) {
-                    Authenticator authenticator = new Authenticator() {
-                        public PasswordAuthentication getPasswordAuthentication() {
-                            return new PasswordAuthentication(Injection.provideProxySettings().getActiveProxy().getUser(), Injection.provideProxySettings().getActiveProxy().getPass().toCharArray());
-                        }
-                    };
+        final DisposableHolder<Void> currentUrlHolder = new DisposableHolder<>();
 
-                    Authenticator.setDefault(authenticator);
-                } else {
-                    Authenticator.setDefault(null);
-                }
-            }
+        final DisposableHolder<Void> nextUrlHolder = new DisposableHolder<>();
 
-            String userAgent = Constants.USER_AGENT(null);
-            CustomHttpDataSourceFactory factory = new CustomHttpDataSourceFactory(userAgent, proxy);
-            ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
-            MediaSource mediaSource = new ExtractorMediaSource.Factory(factory).setExtractorsFactory(extractorsFactory).createMediaSource(Uri.parse(url));
+        /**
+         * Constructor of <code>MultiPlayer</code>
+         */
+        MultiPlayer(final MusicPlaybackService service) {
+            mService = new WeakReference<>(service);
+            audioInteractor = InteractorFactory.createAudioInteractor();
+            mCurrentMediaPlayer = new SimpleExoPlayer.Builder(Injection.provideApplicationContext()).build();
             mCurrentMediaPlayer.setRepeatMode(Player.REPEAT_MODE_OFF);
+            //mCurrentMediaPlayer.setWakeMode(mService.get(), PowerManager.PARTIAL_WAKE_LOCK);
 
             mCurrentMediaPlayer.addListener(new ExoEventAdapter() {
                 @Override
@@ -1375,35 +1425,177 @@ public class MusicPlaybackService extends Service {
                     }
                 }
 
+                @Override
+                public void onPositionDiscontinuity(int reason) {
+                    if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && nonNull(mPlaylist)
+                            && mPlaylist.getSize() > 1 && mCurrentMediaPlayer.getCurrentWindowIndex() > 0) {
+                        mPlaylist.removeMediaSource(0);
+                        mNextAudio = null;
+                        mService.get().onTrackWentToNext();
+                    }
+                }
+
                 @Override
                 public void onPlayerError(ExoPlaybackException error) {
+                    mSkipPreload = mNextAudio;
+
                     long playbackPos = mCurrentMediaPlayer.getCurrentPosition();
                     mService.get().playCurrentTrack(false);
                     mCurrentMediaPlayer.seekTo(playbackPos);
                     mService.get().notifyChange(META_CHANGED);
                 }
             });
-            mCurrentMediaPlayer.prepare(mediaSource);
+        }
+
+        private MediaSource createMediaSource(final String remoteUrl) {
+            final String url = firstNonEmptyString(remoteUrl, UNAVAILABLE_URL);
+
+            Proxy proxy = null;
+            if (nonNull(Injection.provideProxySettings().getActiveProxy())) {
+                proxy = new Proxy(Proxy.Type.HTTP, ProxyUtil.obtainAddress(Injection.provideProxySettings().getActiveProxy()));
+                if (Injection.provideProxySettings().getActiveProxy().isAuthEnabled()) {
+                    Authenticator authenticator = new Authenticator() {
+                        public PasswordAuthentication getPasswordAuthentication() {
+                            return new PasswordAuthentication(Injection.provideProxySettings().getActiveProxy().getUser(), Injection.provideProxySettings().getActiveProxy().getPass().toCharArray());
+                        }
+                    };
+
+                    Authenticator.setDefault(authenticator);
+                } else {
+                    Authenticator.setDefault(null);
+                }
+            }
+
+            String userAgent = Constants.USER_AGENT(null);
+            CustomHttpDataSourceFactory factory = new CustomHttpDataSourceFactory(userAgent, proxy);
+            ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
+            return new ExtractorMediaSource.Factory(MediaCache.getInstance(Injection.provideApplicationContext()).createDataSourceFactory(factory))
+                    .setExtractorsFactory(extractorsFactory)
+                    .createMediaSource(Uri.parse(url));
+        }
+
+        /**
+         * @param remoteUrl The path of the file, or the http/rtsp URL of the stream
+         *                  you want to play
+         *                  return True if the <code>player</code> has been prepared and is
+         *                  ready to play, false otherwise
+         */
+        void setDataSource(final String remoteUrl) {
+            preparing = true;
+
+            mPlaylist = new ConcatenatingMediaSource();
+            mPlaylist.addMediaSource(createMediaSource(remoteUrl));
+            mCurrentMediaPlayer.prepare(mPlaylist);
 
             final Intent intent = new Intent(AudioEffect.ACTION_OPEN_AUDIO_EFFECT_CONTROL_SESSION);
             intent.putExtra(AudioEffect.EXTRA_AUDIO_SESSION, getAudioSessionId());
             intent.putExtra(AudioEffect.EXTRA_PACKAGE_NAME, mService.get().getPackageName());
             mService.get().sendBroadcast(intent);
             mService.get().notifyChange(PLAYSTATE_CHANGED);
+
+            if (nonNull(mNextAudio)) {
+                loadNext(mNextAudio);
+            }
+        }
+
+        void setDataSource(final Audio audio) {
+            mPlaylist = null;
+            nextUrlHolder.dispose();
+
+            if (hasNoUrl(audio)) {
+                currentUrlHolder.append(resolveUrl(audio)
+                        .subscribe(this::setDataSource, ignored -> setDataSource(audio.getUrl())));
+            } else {
+                currentUrlHolder.dispose();
+                setDataSource(audio.getUrl());
+            }
+        }
+
+        /**
+         * Задает трек, который будет играть после текущего. Ссылка на него запрашивается
+         * только сейчас, а данные загружаются в кэш после того, как загружен текущий
+         *
+         * @param audio следующий трек или null, если загружать заранее нечего
+         */
+        void setNextDataSource(Audio audio) {
+            if (nonNull(audio) && audio == mSkipPreload) {
+                audio = null;
+            } else {
+                mSkipPreload = null;
+            }
+
+            boolean alreadyLoading = nonNull(mPlaylist) && (mPlaylist.getSize() > 1 || nextUrlHolder.isActive());
+            if (audio == mNextAudio && alreadyLoading) {
+                return;
+            }
+
+            mNextAudio = audio;
+            nextUrlHolder.dispose();
+
+            if (isNull(mPlaylist)) {
+                // текущий трек еще не начал загружаться, следующий добавится вместе с ним
+                return;
+            }
+
+            if (mPlaylist.getSize() > 1) {
+                mPlaylist.removeMediaSourceRange(1, mPlaylist.getSize());
+            }
+
+            if (nonNull(audio)) {
+                loadNext(audio);
+            }
         }
 
-        void setDataSource(int ownerId, int audioId, String url) {
-            if (isEmpty(url) || "https://vk.com/mp3/audio_api_unavailable.mp3".equals(url)) {
+        /**
+         * Переход на заранее загруженный следующий трек без повторной подготовки плеера
+         *
+         * @return false, если следующий трек еще не добавлен
+         */
+        boolean skipToNext() {
+            if (preparing || isNull(mPlaylist) || mPlaylist.getSize() < 2) {
+                return false;
+            }
+
+            mCurrentMediaPlayer.seekTo(1, 0);
+            mPlaylist.removeMediaSource(0);
+            mNextAudio = null;
+            return true;
+        }
 
-                compositeDisposable.add(audioInteractor.getById(Collections.singletonList(new IdPair(audioId, ownerId)))
-                        .compose(RxUtils.applySingleIOToMainSchedulers())
-                        .map(e -> e.get(0).getUrl())
-                        .subscribe(this::setDataSource, ignored -> setDataSource(url)));
+        private void loadNext(Audio audio) {
+            if (hasNoUrl(audio)) {
+                nextUrlHolder.append(resolveUrl(audio)
+                        .subscribe(url -> appendNext(audio, url), ignored -> {
+                            // следующий трек будет загружен обычным образом, когда до него дойдет очередь
+                        }));
             } else {
-                setDataSource(url);
+                appendNext(audio, audio.getUrl());
+            }
+        }
+
+        private void appendNext(Audio audio, String url) {
+            if (audio == mNextAudio && nonNull(mPlaylist) && mPlaylist.getSize() == 1) {
+                mPlaylist.addMediaSource(createMediaSource(url));
             }
         }
 
+        private static boolean hasNoUrl(Audio audio) {
+            return isEmpty(audio.getUrl()) || UNAVAILABLE_URL.equals(audio.getUrl());
+        }
+
+        /**
+         * Запрашивает ссылку на одну аудиозапись и сохраняет ее в объекте из очереди
+         */
+        private Single<String> resolveUrl(Audio audio) {
+            return audioInteractor.getById(Collections.singletonList(new IdPair(audio.getId(), audio.getOwnerId())))
+                    .compose(RxUtils.applySingleIOToMainSchedulers())
+                    .map(e -> {
+                        String url = e.get(0).getUrl();
+                        audio.setUrl(url);
+                        return url;
+                    });
+        }
+
         /**
          * Sets the handler
          *
@@ -1428,13 +1620,16 @@ public class MusicPlaybackService extends Service {
         public void stop() {
             mIsInitialized = false;
             preparing = false;
+            mPlaylist = null;
+            mNextAudio = null;
+            currentUrlHolder.dispose();
+            nextUrlHolder.dispose();
             mCurrentMediaPlayer.stop(true);
         }
 
         public void release() {
             stop();
             mCurrentMediaPlayer.release();
-            compositeDisposable.dispose();
         }
 
         public void pause() {
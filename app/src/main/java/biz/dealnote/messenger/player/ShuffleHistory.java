@@ -0,0 +1,61 @@
+package biz.dealnote.messenger.player;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Позиции уже прослушанных в режиме перемешивания треков в порядке воспроизведения.
+ * Проверка "был ли трек" выполняется по множеству, а не перебором списка,
+ * порядок нужен для возврата к предыдущему треку.
+ */
+final class ShuffleHistory {
+
+    private final int maxSize;
+
+    private final ArrayDeque<Integer> order = new ArrayDeque<>();
+
+    private final Set<Integer> positions = new HashSet<>();
+
+    ShuffleHistory(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    void add(int position) {
+        if (!positions.add(position)) {
+            order.removeFirstOccurrence(position);
+        }
+
+        order.addLast(position);
+
+        if (order.size() > maxSize) {
+            positions.remove(order.removeFirst());
+        }
+    }
+
+    boolean contains(int position) {
+        return positions.contains(position);
+    }
+
+    int size() {
+        return order.size();
+    }
+
+    /**
+     * @return последняя добавленная позиция (удаляется из истории) или -1, если история пуста
+     */
+    int pollLast() {
+        Integer position = order.pollLast();
+        if (position == null) {
+            return -1;
+        }
+
+        positions.remove(position);
+        return position;
+    }
+
+    void clear() {
+        order.clear();
+        positions.clear();
+    }
+}
@@ -1,5 +1,11 @@
 package biz.dealnote.messenger.realtime;
 
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import biz.dealnote.messenger.api.model.VKApiMessage;
 import biz.dealnote.messenger.api.model.longpoll.AddMessageUpdate;
 import biz.dealnote.messenger.longpoll.FullAndNonFullUpdates;
 
@@ -15,12 +21,19 @@ public final class Entry {
     private final int accountId;
     private final boolean ignoreIfExists;
     private final FullAndNonFullUpdates updates;
+    private final long createdAt;
+
+    /**
+     * Сообщения, уже полученные с api целиком (например, из messages.getLongPollHistory)
+     */
+    private List<VKApiMessage> dtos;
 
     public Entry(int accountId, int id, boolean ignoreIfExists) {
         this.id = id;
         this.accountId = accountId;
         this.ignoreIfExists = ignoreIfExists;
         this.updates = new FullAndNonFullUpdates();
+        this.createdAt = SystemClock.elapsedRealtime();
     }
 
     public boolean has(int id){
@@ -40,11 +53,19 @@ public final class Entry {
             }
         }
 
+        if(dtos != null){
+            for(VKApiMessage dto : dtos){
+                if(dto.id == id){
+                    return true;
+                }
+            }
+        }
+
         return false;
     }
 
     public int count(){
-        return safeCountOf(updates.getFullMessages()) + safeCountOf(updates.getNonFull());
+        return safeCountOf(updates.getFullMessages()) + safeCountOf(updates.getNonFull()) + safeCountOf(dtos);
     }
 
     public boolean isIgnoreIfExists() {
@@ -63,6 +84,18 @@ public final class Entry {
         updates.prepareNonFull().add(messageId);
     }
 
+    public void append(VKApiMessage dto){
+        if(dtos == null){
+            dtos = new ArrayList<>(1);
+        }
+
+        dtos.add(dto);
+    }
+
+    public List<VKApiMessage> getDtos() {
+        return dtos;
+    }
+
     public int getId() {
         return id;
     }
@@ -74,4 +107,11 @@ public final class Entry {
     public FullAndNonFullUpdates getUpdates() {
         return updates;
     }
+
+    /**
+     * @return время постановки в очередь, {@link SystemClock#elapsedRealtime()}
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package biz.dealnote.messenger.realtime;
 
 import java.util.List;
 
+import biz.dealnote.messenger.api.model.VKApiMessage;
 import biz.dealnote.messenger.api.model.longpoll.AddMessageUpdate;
 import biz.dealnote.messenger.util.Pair;
 import io.reactivex.Observable;
@@ -18,7 +19,23 @@ public interface IRealtimeMessagesProcessor {
 
     int process(int accountId, int messageId, boolean ignoreIfExists) throws QueueContainsException;
 
+    /**
+     * Обработка сообщений, уже полученных с api целиком (без повторного запроса).
+     * Сообщения, которые уже есть в локальной базе, пропускаются
+     */
+    int processMessages(int accountId, List<VKApiMessage> messages);
+
     void registerNotificationsInterceptor(int interceptorId, Pair<Integer, Integer> aidPeerPair);
 
     void unregisterNotificationsInterceptor(int interceptorId);
+
+    /**
+     * @return количество ожидающих обработки пачек сообщений
+     */
+    int getQueueDepth();
+
+    /**
+     * @return время от постановки в очередь до публикации результата для последней обработанной пачки, мс
+     */
+    long getLastLatency();
 }
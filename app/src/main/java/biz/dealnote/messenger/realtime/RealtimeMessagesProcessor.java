@@ -1,15 +1,18 @@
 package biz.dealnote.messenger.realtime;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import biz.dealnote.messenger.Injection;
@@ -53,6 +56,16 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
     private static final String TAG = "RealtimeMessagesProcessor";
     private static final AtomicInteger ID_GENERATOR = new AtomicInteger();
 
+    /**
+     * Сколько по умолчанию ждать остальные сообщения пачки после первого
+     */
+    private static final long DEFAULT_MAX_BATCH_DELAY_MS = 100;
+
+    /**
+     * Максимальное количество идентификаторов в messages.getById
+     */
+    private static final int MAX_GET_BY_ID_COUNT = 100;
+
     private final PublishSubject<TmpResult> publishSubject;
     private final IStorages repositories;
     private final INetworker networker;
@@ -61,11 +74,20 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
     private final Context app;
 
     private final SparseArray<Pair<Integer, Integer>> notificationsInterceptors;
-    private volatile Entry current;
+    private volatile List<Entry> current;
     private final IOwnersRepository ownersRepository;
     private final IMessagesRepository messagesInteractor;
+    private final long maxBatchDelayMs;
 
     RealtimeMessagesProcessor() {
+        this(DEFAULT_MAX_BATCH_DELAY_MS);
+    }
+
+    /**
+     * @param maxBatchDelayMs сколько ждать другие сообщения аккаунта, прежде чем начать обработку пачки
+     */
+    RealtimeMessagesProcessor(long maxBatchDelayMs) {
+        this.maxBatchDelayMs = maxBatchDelayMs;
         this.app = Injection.provideApplicationContext();
         this.repositories = Injection.provideStores();
         this.networker = Injection.provideNetworkInterfaces();
@@ -94,12 +116,29 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
         return id;
     }
 
+    @Override
+    public int processMessages(int accountId, List<VKApiMessage> messages) {
+        int id = ID_GENERATOR.incrementAndGet();
+        Entry entry = new Entry(accountId, id, true);
+        for (VKApiMessage message : messages) {
+            entry.append(message);
+        }
+
+        addToQueue(entry);
+        startIfNotStarted();
+        return id;
+    }
+
     private boolean hasInQueueOrCurrent(int id) {
         synchronized (stateLock) {
-            final Entry c = this.current;
+            final List<Entry> c = this.current;
 
-            if (nonNull(c) && c.has(id)) {
-                return true;
+            if (nonNull(c)) {
+                for (Entry e : c) {
+                    if (e.has(id)) {
+                        return true;
+                    }
+                }
             }
 
             for (Entry q : queue) {
@@ -159,14 +198,41 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
         }
     }
 
-    private boolean prepareForStartFirst() {
+    @Override
+    public int getQueueDepth() {
+        synchronized (stateLock) {
+            return queue.size();
+        }
+    }
+
+    @Override
+    public long getLastLatency() {
+        return lastEnryProcessTime;
+    }
+
+    /**
+     * Забирает из очереди все записи аккаунта первой записи, они будут обработаны одной пачкой
+     */
+    private List<Entry> prepareForStartFirst() {
         synchronized (stateLock) {
             if (nonNull(current) || queue.isEmpty()) {
-                return false;
+                return null;
+            }
+
+            final int accountId = queue.get(0).getAccountId();
+            final List<Entry> batch = new ArrayList<>(queue.size());
+
+            Iterator<Entry> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.getAccountId() == accountId) {
+                    batch.add(entry);
+                    iterator.remove();
+                }
             }
 
-            this.current = queue.remove(0);
-            return true;
+            this.current = batch;
+            return batch;
         }
     }
 
@@ -176,20 +242,37 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
         }
     }
 
+    private boolean waitingForBatch;
+
     private void startIfNotStarted() {
-        if (!prepareForStartFirst()) {
-            return;
+        synchronized (stateLock) {
+            if (waitingForBatch || nonNull(current) || queue.isEmpty()) {
+                return;
+            }
+
+            waitingForBatch = true;
         }
 
-        final Entry entry;
+        // даем longpoll и push докинуть сообщения, чтобы обработать их одной пачкой
+        Completable.timer(maxBatchDelayMs, TimeUnit.MILLISECONDS, NotificationScheduler.INSTANCE)
+                .subscribe(this::startBatch, this::onProcessError);
+    }
+
+    private void startBatch() {
+        final List<Entry> batch;
+
         synchronized (stateLock) {
-            entry = this.current;
+            waitingForBatch = false;
+            batch = prepareForStartFirst();
+        }
+
+        if (isNull(batch)) {
+            return;
         }
 
         final long start = System.currentTimeMillis();
-        final boolean ignoreIfExists = entry.isIgnoreIfExists();
 
-        init(Single.just(entry))
+        init(batch)
                 // ищем недостающие сообщения в локальной базе
                 .flatMap(result -> repositories
                         .messages()
@@ -197,9 +280,7 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
                         .map(result::setMissingIds))
                 .flatMap(result -> {
                     // отсеиваем сообщения, которые уже есть в локальной базе (если требуется)
-                    if (ignoreIfExists) {
-                        removeIf(result.getData(), TmpResult.Msg::isAlreadyExists);
-                    }
+                    removeIf(result.getData(), msg -> msg.isAlreadyExists() && msg.isIgnoreIfExists());
 
                     if (result.getData().isEmpty()) {
                         return Single.just(result);
@@ -210,7 +291,36 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
                             .compose(getAndStore());
                 })
                 .compose(NotificationScheduler.fromNotificationThreadToMain())
-                .subscribe(result -> onResultReceived(start, result), this::onProcessError);
+                .subscribe(result -> onResultReceived(start, oldestCreatedAt(batch), batch.size(), result), this::onProcessError);
+    }
+
+    private static long oldestCreatedAt(List<Entry> batch) {
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : batch) {
+            oldest = Math.min(oldest, entry.getCreatedAt());
+        }
+
+        return oldest;
+    }
+
+    private Single<List<VKApiMessage>> getByIdChunked(int accountId, List<Integer> ids) {
+        if (ids.size() <= MAX_GET_BY_ID_COUNT) {
+            return networker.vkDefault(accountId)
+                    .messages()
+                    .getById(ids);
+        }
+
+        List<Single<List<VKApiMessage>>> singles = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += MAX_GET_BY_ID_COUNT) {
+            List<Integer> chunk = ids.subList(i, Math.min(ids.size(), i + MAX_GET_BY_ID_COUNT));
+            singles.add(networker.vkDefault(accountId)
+                    .messages()
+                    .getById(new ArrayList<>(chunk)));
+        }
+
+        return Single.concat(singles)
+                .concatMapIterable(dtos -> dtos)
+                .toList();
     }
 
     private SingleTransformer<TmpResult, TmpResult> getAndStore() {
@@ -222,9 +332,7 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
                         return Single.just(result);
                     }
 
-                    return networker.vkDefault(result.getAccountId())
-                            .messages()
-                            .getById(needGetFromNet)
+                    return getByIdChunked(result.getAccountId(), needGetFromNet)
                             .map(result::appendDtos);
                 })
                 .map(result -> {
@@ -282,12 +390,14 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
         return completable;
     }*/
 
-    private long lastEnryProcessTime;
+    private volatile long lastEnryProcessTime;
 
-    private void onResultReceived(long startTime, TmpResult result) {
-        this.lastEnryProcessTime = System.currentTimeMillis() - startTime;
+    private void onResultReceived(long startTime, long enqueuedAt, int entriesCount, TmpResult result) {
+        this.lastEnryProcessTime = SystemClock.elapsedRealtime() - enqueuedAt;
 
-        Logger.d(TAG, "SUCCESS, data: " + result + ", time: " + lastEnryProcessTime);
+        Logger.d(TAG, "SUCCESS, data: " + result + ", entries: " + entriesCount
+                + ", time: " + (System.currentTimeMillis() - startTime) + ", latency: " + lastEnryProcessTime
+                + ", queue: " + getQueueDepth());
 
         sendNotifications(result);
 
@@ -318,6 +428,10 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
 
         PersistentLogger.logThrowable(RealtimeMessagesProcessor.class.getSimpleName(), throwable);
 
+        synchronized (stateLock) {
+            waitingForBatch = false;
+        }
+
         resetCurrent();
         startIfNotStarted();
     }
@@ -414,23 +528,44 @@ class RealtimeMessagesProcessor implements IRealtimeMessagesProcessor {
         return vkOwnIds;
     }
 
-    private static Single<TmpResult> init(Single<Entry> single) {
-        return single.map(entry -> {
-            TmpResult result = new TmpResult(entry.getId(), entry.getAccountId(), entry.count());
-            FullAndNonFullUpdates updates = entry.getUpdates();
+    private static Single<TmpResult> init(List<Entry> batch) {
+        return Single.fromCallable(() -> {
+            final Entry first = batch.get(0);
 
-            if (updates.hasFullMessages()) {
-                for (AddMessageUpdate update : updates.getFullMessages()) {
-                    result.add(update.getMessageId())
-                            .setDto(Dto2Model.transform(entry.getAccountId(), update));
-                }
+            int capacity = 0;
+            for (Entry entry : batch) {
+                capacity += entry.count();
             }
 
-            if (updates.hasNonFullMessages()) {
-                for (Integer id : updates.getNonFull()) {
-                    result.add(id);
+            TmpResult result = new TmpResult(first.getId(), first.getAccountId(), capacity);
+
+            for (Entry entry : batch) {
+                FullAndNonFullUpdates updates = entry.getUpdates();
+
+                if (updates.hasFullMessages()) {
+                    for (AddMessageUpdate update : updates.getFullMessages()) {
+                        result.prepare(update.getMessageId())
+                                .appendIgnoreIfExists(entry.isIgnoreIfExists())
+                                .setDto(Dto2Model.transform(entry.getAccountId(), update));
+                    }
+                }
+
+                if (updates.hasNonFullMessages()) {
+                    for (Integer id : updates.getNonFull()) {
+                        result.prepare(id)
+                                .appendIgnoreIfExists(entry.isIgnoreIfExists());
+                    }
+                }
+
+                if (nonEmpty(entry.getDtos())) {
+                    for (VKApiMessage dto : entry.getDtos()) {
+                        result.prepare(dto.id)
+                                .appendIgnoreIfExists(entry.isIgnoreIfExists())
+                                .setDto(dto);
+                    }
                 }
             }
+
             return result;
         });
     }
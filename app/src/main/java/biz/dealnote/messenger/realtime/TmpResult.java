@@ -115,6 +115,8 @@ public class TmpResult {
 
         private boolean alreadyExists;
 
+        private boolean ignoreIfExists = true;
+
         private Message message;
 
         private VKApiMessage dto;
@@ -150,6 +152,18 @@ public class TmpResult {
             return alreadyExists;
         }
 
+        /**
+         * Сообщение пропускается, только если все источники (longpoll, push) разрешили пропуск уже сохраненного
+         */
+        Msg appendIgnoreIfExists(boolean ignoreIfExists) {
+            this.ignoreIfExists = this.ignoreIfExists && ignoreIfExists;
+            return this;
+        }
+
+        boolean isIgnoreIfExists() {
+            return ignoreIfExists;
+        }
+
         @Override
         public int getId() {
             return id;
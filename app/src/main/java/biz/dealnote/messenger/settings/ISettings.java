@@ -106,9 +106,13 @@ public interface ISettings {
 
         boolean isCustomTabEnabled();
 
+        boolean isVoicePrefetchEnabled();
+
         @Nullable
         Integer getUploadImageSize();
 
+        int getUploadImageQuality();
+
         @PhotoSize
         int getPrefPreviewImageSize();
 
@@ -17,9 +17,11 @@ import biz.dealnote.messenger.util.Optional;
 class MainSettings implements ISettings.IMainSettings {
 
     private static final String KEY_IMAGE_SIZE = "image_size";
+    private static final String KEY_IMAGE_QUALITY = "upload_image_quality";
     private static final String KEY_RUN_COUNT = "run_count";
     private static final String KEY_DOUBLE_PRESS_TO_EXIT = "double_press_to_exit";
     private static final String KEY_CUSTOM_TABS = "custom_tabs";
+    private static final String KEY_VOICE_PREFETCH = "voice_prefetch";
 
     private final Context app;
 
@@ -56,6 +58,15 @@ class MainSettings implements ISettings.IMainSettings {
         }
     }
 
+    @Override
+    public int getUploadImageQuality() {
+        try {
+            return Integer.parseInt(getDefaultPreferences().getString(KEY_IMAGE_QUALITY, "95"));
+        } catch (Exception e) {
+            return 95;
+        }
+    }
+
     @Override
     public int getPrefPreviewImageSize() {
         if (prefferedPhotoPreviewSize.isEmpty()) {
@@ -101,4 +112,9 @@ class MainSettings implements ISettings.IMainSettings {
     public boolean isCustomTabEnabled() {
         return getDefaultPreferences().getBoolean(KEY_CUSTOM_TABS, true);
     }
+
+    @Override
+    public boolean isVoicePrefetchEnabled() {
+        return getDefaultPreferences().getBoolean(KEY_VOICE_PREFETCH, false);
+    }
 }
\ No newline at end of file
@@ -43,6 +43,7 @@ import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.processors.PublishProcessor;
 import io.reactivex.schedulers.Schedulers;
 
@@ -57,6 +58,16 @@ public class UploadManagerImpl implements IUploadManager {
     private static final int PROGRESS_LOOKUP_DELAY = 500;
     private static final String NOTIFICATION_CHANNEL_ID = "upload_files";
 
+    /**
+     * Сколько загрузок выполняется одновременно
+     */
+    private static final int MAX_PARALLEL_UPLOADS = 3;
+
+    /**
+     * Сколько времени можно использовать полученный ранее сервер загрузки
+     */
+    private static final long SERVER_MAX_AGE = TimeUnit.MINUTES.toMillis(15);
+
     private final Context context;
     private final INetworker networker;
     private final IStorages storages;
@@ -72,8 +83,13 @@ public class UploadManagerImpl implements IUploadManager {
 
     private final Flowable<Long> timer;
     private final CompositeDisposable notificationUpdateDisposable = new CompositeDisposable();
-    private final Map<String, UploadServer> serverMap = Collections.synchronizedMap(new HashMap<>());
-    private volatile Upload current;
+    private final Map<String, CachedServer> serverMap = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * Выполняющиеся загрузки, в порядке запуска
+     */
+    private final List<Upload> current = new ArrayList<>(MAX_PARALLEL_UPLOADS);
+    private final Map<Integer, Disposable> currentDisposables = new HashMap<>(MAX_PARALLEL_UPLOADS);
     private CompositeDisposable compositeDisposable = new CompositeDisposable();
     private CompositeDisposable otherDisposables = new CompositeDisposable();
 
@@ -84,7 +100,7 @@ public class UploadManagerImpl implements IUploadManager {
         this.storages = storages;
         this.attachmentsRepository = attachmentsRepository;
         this.walls = walls;
-        this.scheduler = Schedulers.from(Executors.newSingleThreadExecutor());
+        this.scheduler = Schedulers.from(Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS));
         this.timer = Flowable.interval(PROGRESS_LOOKUP_DELAY, PROGRESS_LOOKUP_DELAY, TimeUnit.MILLISECONDS).onBackpressureBuffer();
     }
 
@@ -98,36 +114,51 @@ public class UploadManagerImpl implements IUploadManager {
                 .setSize(intent.getSize());
     }
 
+    /**
+     * Чем меньше значение, тем раньше начнется загрузка. Вложения сообщений
+     * ждет собеседник, поэтому они загружаются в первую очередь, альбомы - в последнюю
+     */
+    private static int getPriority(Upload upload) {
+        switch (upload.getDestination().getMethod()) {
+            case Method.PHOTO_TO_MESSAGE:
+                return 0;
+            case Method.PHOTO_TO_ALBUM:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
     private static String createServerKey(Upload upload) {
         UploadDestination dest = upload.getDestination();
 
         StringBuilder builder = new StringBuilder();
-        builder.append(Extra.ACCOUNT_ID).append(upload.getAccountId());
-        builder.append(Extra.METHOD).append(dest.getMethod());
+        builder.append(Extra.ACCOUNT_ID).append('=').append(upload.getAccountId());
+        builder.append(';').append(Extra.METHOD).append('=').append(dest.getMethod());
 
         switch (upload.getDestination().getMethod()) {
             case Method.DOCUMENT:
                 if (dest.getOwnerId() < 0) {
-                    builder.append(Extra.GROUP_ID).append(Math.abs(dest.getOwnerId()));
+                    builder.append(';').append(Extra.GROUP_ID).append('=').append(Math.abs(dest.getOwnerId()));
                 }
                 break;
             case Method.PHOTO_TO_ALBUM:
-                builder.append(Extra.ALBUM_ID).append(dest.getId());
+                builder.append(';').append(Extra.ALBUM_ID).append('=').append(dest.getId());
                 if (dest.getOwnerId() < 0) {
-                    builder.append(Extra.GROUP_ID).append(Math.abs(dest.getOwnerId()));
+                    builder.append(';').append(Extra.GROUP_ID).append('=').append(Math.abs(dest.getOwnerId()));
                 }
                 break;
             case Method.PHOTO_TO_COMMENT:
             case Method.PHOTO_TO_WALL:
                 if (dest.getOwnerId() < 0) {
-                    builder.append(Extra.GROUP_ID).append(Math.abs(dest.getOwnerId()));
+                    builder.append(';').append(Extra.GROUP_ID).append('=').append(Math.abs(dest.getOwnerId()));
                 }
                 break;
             case Method.PHOTO_TO_MESSAGE:
                 //do nothink
                 break;
             case Method.PHOTO_TO_PROFILE:
-                builder.append(Extra.OWNER_ID).append(dest.getOwnerId());
+                builder.append(';').append(Extra.OWNER_ID).append('=').append(dest.getOwnerId());
                 break;
         }
 
@@ -152,6 +183,10 @@ public class UploadManagerImpl implements IUploadManager {
     }
 
     private void startWithNotification() {
+        if (notificationUpdateDisposable.size() > 0) {
+            return;
+        }
+
         updateNotification(Collections.emptyList());
 
         notificationUpdateDisposable.add(observeProgress()
@@ -163,7 +198,17 @@ public class UploadManagerImpl implements IUploadManager {
 
     private void updateNotification(List<IProgressUpdate> updates) {
         if (nonEmpty(updates)) {
-            int progress = updates.get(0).getProgress();
+            int progress = 0;
+            for (IProgressUpdate update : updates) {
+                progress += update.getProgress();
+            }
+
+            progress = progress / updates.size();
+
+            final int remaining;
+            synchronized (this) {
+                remaining = countQueued() + current.size();
+            }
 
             final NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             if (isNull(notificationManager)) {
@@ -186,8 +231,11 @@ public class UploadManagerImpl implements IUploadManager {
             builder.setContentTitle(context.getString(R.string.files_uploading_notification_title))
                     .setSmallIcon(R.drawable.ic_notification_upload)
                     .setOngoing(true)
-                    .setProgress(100, progress, false)
-                    .build();
+                    .setProgress(100, progress, false);
+
+            if (remaining > 1) {
+                builder.setContentText(context.getString(R.string.files_uploading_notification_remaining, remaining));
+            }
 
             notificationManager.notify(NotificationHelper.NOTIFICATION_UPLOAD, builder.build());
         }
@@ -223,51 +271,99 @@ public class UploadManagerImpl implements IUploadManager {
                 .subscribe(this::startIfNotStartedInternal));
     }
 
-    private Upload findFirstQueue() {
-        Upload first = null;
+    /**
+     * Следующая загрузка из очереди с наивысшим приоритетом (при равном - добавленная раньше)
+     */
+    private Upload findNextQueued() {
+        Upload next = null;
+        for (Upload u : queue) {
+            if (u.getStatus() == Upload.STATUS_QUEUE && (next == null || getPriority(u) < getPriority(next))) {
+                next = u;
+            }
+        }
+        return next;
+    }
+
+    private int countQueued() {
+        int count = 0;
         for (Upload u : queue) {
             if (u.getStatus() == Upload.STATUS_QUEUE) {
-                first = u;
-                break;
+                count++;
             }
         }
-        return first;
+        return count;
     }
 
     private void startIfNotStartedInternal() {
         synchronized (this) {
-            final Upload first = findFirstQueue();
-            if (current != null) return;
+            while (current.size() < MAX_PARALLEL_UPLOADS) {
+                final Upload next = findNextQueued();
+                if (next == null) {
+                    break;
+                }
 
-            if (first == null) {
+                start(next);
+            }
+
+            if (current.isEmpty()) {
                 stopNotification();
-                return;
+                UploadUtils.cleanTempFiles(context);
             }
+        }
+    }
+
+    private void start(Upload upload) {
+        startWithNotification();
+
+        current.add(upload);
+
+        upload.setStatus(Upload.STATUS_UPLOADING).setErrorText(null);
+        statusProcessor.onNext(upload);
+
+        final IUploadable<?> uploadable = createUploadable(upload);
+        final UploadServer server = getCachedServer(createServerKey(upload));
+
+        currentDisposables.put(upload.getId(), uploadable.doUpload(upload, server, new WeakProgressPublisgher(upload))
+                .subscribeOn(scheduler)
+                .observeOn(scheduler)
+                .subscribe(result -> onUploadComplete(upload, result), t -> onUploadFail(upload, server, t)));
+    }
 
-            startWithNotification();
+    private UploadServer getCachedServer(String key) {
+        CachedServer cached = serverMap.get(key);
+        if (isNull(cached)) {
+            return null;
+        }
 
-            this.current = first;
+        if (System.currentTimeMillis() - cached.time > SERVER_MAX_AGE) {
+            serverMap.remove(key);
+            return null;
+        }
 
-            first.setStatus(Upload.STATUS_UPLOADING).setErrorText(null);
-            statusProcessor.onNext(first);
+        return cached.server;
+    }
 
-            final IUploadable<?> uploadable = createUploadable(first);
-            final UploadServer server = serverMap.get(createServerKey(first));
+    /**
+     * @return true, если загрузка выполнялась (и еще не была отменена)
+     */
+    private boolean removeFromCurrent(Upload upload) {
+        currentDisposables.remove(upload.getId());
+        return current.remove(upload);
+    }
 
-            compositeDisposable.add(uploadable.doUpload(first, server, new WeakProgressPublisgher(first))
-                    .subscribeOn(scheduler)
-                    .observeOn(scheduler)
-                    .subscribe(result -> onUploadComplete(first, result), t -> onUploadFail(first, t)));
+    private void cancelCurrent(Upload upload) {
+        Disposable disposable = currentDisposables.remove(upload.getId());
+        if (nonNull(disposable)) {
+            disposable.dispose();
         }
+
+        current.remove(upload);
     }
 
     private void onUploadComplete(Upload upload, UploadResult<?> result) {
         synchronized (this) {
             queue.remove(upload);
-
-            if (current == upload) {
-                current = null;
-            }
+            removeFromCurrent(upload);
 
             //final int accountId = upload.getAccountId();
             //final UploadDestination destination = upload.getDestination();
@@ -275,18 +371,29 @@ public class UploadManagerImpl implements IUploadManager {
             //    sendMessageIfWaitForUpload(accountId, destination.getId());
             //}
 
-            serverMap.put(createServerKey(upload), result.getServer());
+            String key = createServerKey(upload);
+            CachedServer cached = serverMap.get(key);
+            if (isNull(cached) || cached.server != result.getServer()) {
+                serverMap.put(key, new CachedServer(result.getServer()));
+            }
 
             completeProcessor.onNext(Pair.Companion.create(upload, result));
             startIfNotStartedInternal();
         }
     }
 
-    private void onUploadFail(Upload upload, Throwable t) {
+    private void onUploadFail(Upload upload, UploadServer usedServer, Throwable t) {
         synchronized (this) {
-            if (current == upload) {
-                current = null;
+            if (nonNull(usedServer)) {
+                // возможно, сервер уже недействителен, следующая загрузка получит новый
+                String key = createServerKey(upload);
+                CachedServer cached = serverMap.get(key);
+                if (nonNull(cached) && cached.server == usedServer) {
+                    serverMap.remove(key);
+                }
+            }
 
+            if (removeFromCurrent(upload)) {
                 Throwable cause = getCauseIfRuntime(t);
                 final String message = firstNonEmptyString(cause.getMessage(), cause.toString());
                 compositeDisposable.add(Completable.complete()
@@ -306,9 +413,9 @@ public class UploadManagerImpl implements IUploadManager {
     @Override
     public void cancel(int id) {
         synchronized (this) {
-            if (current != null && current.getId() == id) {
-                compositeDisposable.clear();
-                current = null;
+            int currentIndex = Utils.findIndexById(current, id);
+            if (currentIndex != -1) {
+                cancelCurrent(current.get(currentIndex));
             }
 
             int index = Utils.findIndexById(queue, id);
@@ -324,9 +431,10 @@ public class UploadManagerImpl implements IUploadManager {
     @Override
     public void cancelAll(int accountId, @NonNull UploadDestination destination) {
         synchronized (this) {
-            if (current != null && accountId == current.getAccountId() && destination.compareTo(current.getDestination())) {
-                compositeDisposable.clear();
-                current = null;
+            for (Upload upload : new ArrayList<>(current)) {
+                if (accountId == upload.getAccountId() && destination.compareTo(upload.getDestination())) {
+                    cancelCurrent(upload);
+                }
             }
 
             List<Upload> target = new ArrayList<>();
@@ -355,7 +463,7 @@ public class UploadManagerImpl implements IUploadManager {
     @Override
     public Optional<Upload> getCurrent() {
         synchronized (this) {
-            return Optional.wrap(current);
+            return Optional.wrap(current.isEmpty() ? null : current.get(0));
         }
     }
 
@@ -390,12 +498,12 @@ public class UploadManagerImpl implements IUploadManager {
     public Flowable<List<IProgressUpdate>> observeProgress() {
         return timer.map(ignored -> {
             synchronized (UploadManagerImpl.this) {
-                if (current == null) {
-                    return Collections.emptyList();
+                List<IProgressUpdate> updates = new ArrayList<>(current.size());
+                for (Upload upload : current) {
+                    updates.add(new ProgressUpdate(upload.getId(), upload.getProgress()));
                 }
 
-                IProgressUpdate update = new ProgressUpdate(current.getId(), current.getProgress());
-                return Collections.singletonList(update);
+                return updates;
             }
         });
     }
@@ -437,6 +545,18 @@ public class UploadManagerImpl implements IUploadManager {
         }
     }
 
+    private static final class CachedServer {
+
+        final UploadServer server;
+
+        final long time;
+
+        CachedServer(UploadServer server) {
+            this.server = server;
+            this.time = System.currentTimeMillis();
+        }
+    }
+
     private static final class ProgressUpdate implements IProgressUpdate {
 
         final int id;
@@ -7,6 +7,7 @@ import android.net.Uri;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -14,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import biz.dealnote.messenger.model.LocalPhoto;
+import biz.dealnote.messenger.settings.Settings;
 import biz.dealnote.messenger.util.IOUtils;
 
 public final class UploadUtils {
@@ -22,46 +24,173 @@ public final class UploadUtils {
 
     }
 
+    private static final String TEMP_DIR = "uploads";
+
     public static InputStream openStream(Context context, Uri uri, int size) throws IOException {
-        InputStream originalStream;
+        return openStream(context, uri, size, Settings.get().main().getUploadImageQuality());
+    }
 
-        File filef = new File(uri.getPath());
-        if (filef.isFile()) {
-            originalStream = new FileInputStream(filef);
-        } else {
-            originalStream = context.getContentResolver().openInputStream(uri);
+    /**
+     * Открывает изображение для загрузки. Если его нужно уменьшить, сначала читаются
+     * только размеры, затем изображение декодируется с подвыборкой (inSampleSize)
+     * и уже после этого масштабируется до точного размера. Результат пишется
+     * в отдельный временный файл, который удаляется при закрытии потока,
+     * поэтому несколько загрузок могут выполняться одновременно
+     *
+     * @param size    максимальная сторона изображения или {@link Upload#IMAGE_SIZE_FULL}
+     * @param quality качество JPEG (0-100)
+     */
+    public static InputStream openStream(Context context, Uri uri, int size, int quality) throws IOException {
+        if (size == Upload.IMAGE_SIZE_FULL) {
+            return openOriginalStream(context, uri);
         }
 
-        if (size == Upload.IMAGE_SIZE_FULL) {
-            return originalStream;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, uri, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to decode image bounds, uri: " + uri);
         }
 
-        Bitmap bitmap = BitmapFactory.decodeStream(originalStream);
-        File tempFile = new File(context.getExternalCacheDir() + File.separator + "scale.jpg");
+        if (options.outWidth <= size && options.outHeight <= size) {
+            return openOriginalStream(context, uri);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+
+        Bitmap bitmap = decode(context, uri, options);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image, uri: " + uri);
+        }
 
-        FileOutputStream ostream = null;
         Bitmap target = null;
+        FileOutputStream ostream = null;
+        File tempFile = null;
 
         try {
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    throw new IOException("Unable to delete old image file");
-                }
-            }
+            tempFile = createTempFile(context);
+            ostream = new FileOutputStream(tempFile);
+            target = scaleDown(bitmap, size, true);
 
-            if (!tempFile.createNewFile()) {
-                throw new IOException("Unable to create new file");
+            if (!target.compress(Bitmap.CompressFormat.JPEG, quality, ostream)) {
+                throw new IOException("Unable to compress image");
             }
 
-            ostream = new FileOutputStream(tempFile);
-            target = scaleDown(bitmap, size, true);
-            target.compress(Bitmap.CompressFormat.JPEG, 100, ostream);
-            return new FileInputStream(tempFile);
+            ostream.close();
+            ostream = null;
+
+            InputStream result = new TempFileInputStream(tempFile);
+            tempFile = null;
+            return result;
         } finally {
-            IOUtils.recycleBitmapQuietly(bitmap);
-            IOUtils.recycleBitmapQuietly(target);
             IOUtils.closeStreamQuietly(ostream);
-            IOUtils.closeStreamQuietly(originalStream);
+            IOUtils.recycleBitmapQuietly(bitmap);
+
+            if (target != bitmap) {
+                IOUtils.recycleBitmapQuietly(target);
+            }
+
+            if (tempFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static InputStream openOriginalStream(Context context, Uri uri) throws IOException {
+        File filef = new File(uri.getPath());
+        if (filef.isFile()) {
+            return new FileInputStream(filef);
+        }
+
+        InputStream stream = context.getContentResolver().openInputStream(uri);
+        if (stream == null) {
+            throw new IOException("Unable to open stream, uri: " + uri);
+        }
+
+        return stream;
+    }
+
+    private static Bitmap decode(Context context, Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream stream = openOriginalStream(context, uri);
+
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            IOUtils.closeStreamQuietly(stream);
+        }
+    }
+
+    /**
+     * Наибольшая степень двойки, при которой обе стороны остаются не меньше требуемого размера
+     * (точное уменьшение делается потом в {@link #scaleDown(Bitmap, float, boolean)})
+     */
+    private static int calculateInSampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    private static File createTempFile(Context context) throws IOException {
+        File root = context.getExternalCacheDir();
+        if (root == null) {
+            root = context.getCacheDir();
+        }
+
+        File dir = new File(root, TEMP_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+
+        return File.createTempFile("scale", ".jpg", dir);
+    }
+
+    /**
+     * Удаляет временные файлы, оставшиеся от прерванных загрузок
+     */
+    public static void cleanTempFiles(Context context) {
+        File[] roots = {context.getExternalCacheDir(), context.getCacheDir()};
+
+        for (File root : roots) {
+            if (root == null) {
+                continue;
+            }
+
+            File[] files = new File(root, TEMP_DIR).listFiles();
+            if (files == null) {
+                continue;
+            }
+
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static final class TempFileInputStream extends FileInputStream {
+
+        private final File file;
+
+        TempFileInputStream(File file) throws FileNotFoundException {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
         }
     }
 
@@ -0,0 +1,145 @@
+package biz.dealnote.messenger.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import biz.dealnote.messenger.Injection;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Замена содержимого списка, который отображается в RecyclerView, с вычислением
+ * разницы (DiffUtil) в фоновом потоке. Пока разница считается, список не меняется,
+ * новое содержимое подставляется в главном потоке вместе с результатом.
+ * <p>
+ * Если за время расчета список или его элементы были изменены напрямую
+ * (об этом нужно сообщить через {@link #invalidate()}), результат уже не соответствует
+ * тому, что на экране, и вместо него передается null - нужно полное обновление.
+ * Изменения, которые должны пережить замену (например, обновления из longpoll),
+ * нужно выполнять через {@link #runWhenIdle(Runnable)}
+ */
+public class ListDiffer<T> {
+
+    private final List<T> data;
+
+    private final DiffUtil.ItemCallback<T> itemCallback;
+
+    private final DisposableHolder<Void> pending = new DisposableHolder<>();
+
+    private final List<Runnable> deferred = new ArrayList<>(0);
+
+    private int generation;
+
+    public ListDiffer(@NonNull List<T> data, @NonNull DiffUtil.ItemCallback<T> itemCallback) {
+        this.data = data;
+        this.itemCallback = itemCallback;
+    }
+
+    /**
+     * Список или его элементы изменены в обход {@link #submit(List, Action)}
+     */
+    @MainThread
+    public void invalidate() {
+        generation++;
+    }
+
+    @MainThread
+    public boolean isPending() {
+        return pending.isActive();
+    }
+
+    /**
+     * Выполняет прямое изменение списка. Пока разница считается, изменение откладывается
+     * до подстановки нового содержимого, иначе оно пропало бы вместе со старым списком
+     */
+    @MainThread
+    public void runWhenIdle(@NonNull Runnable action) {
+        if (isPending()) {
+            deferred.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * @param callback вызывается в главном потоке после замены содержимого,
+     *                 получает null, если нужно полное обновление
+     */
+    @MainThread
+    public void submit(@NonNull List<T> newData, @NonNull Action<DiffUtil.DiffResult> callback) {
+        final int startGeneration = ++generation;
+        final List<T> oldData = new ArrayList<>(data);
+
+        pending.append(Single.fromCallable(() -> DiffUtil.calculateDiff(new Callback<>(oldData, newData, itemCallback)))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(Injection.provideMainThreadScheduler())
+                .subscribe(result -> apply(newData, startGeneration == generation ? result : null, callback),
+                        ignored -> apply(newData, null, callback)));
+    }
+
+    private void apply(List<T> newData, @Nullable DiffUtil.DiffResult result, Action<DiffUtil.DiffResult> callback) {
+        data.clear();
+        data.addAll(newData);
+        callback.call(result);
+
+        if (!deferred.isEmpty()) {
+            List<Runnable> actions = new ArrayList<>(deferred);
+            deferred.clear();
+
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    @MainThread
+    public void cancel() {
+        pending.dispose();
+        deferred.clear();
+    }
+
+    private static final class Callback<T> extends DiffUtil.Callback {
+
+        private final List<T> oldData;
+
+        private final List<T> newData;
+
+        private final DiffUtil.ItemCallback<T> itemCallback;
+
+        Callback(List<T> oldData, List<T> newData, DiffUtil.ItemCallback<T> itemCallback) {
+            this.oldData = oldData;
+            this.newData = newData;
+            this.itemCallback = itemCallback;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldData.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newData.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return itemCallback.areItemsTheSame(oldData.get(oldItemPosition), newData.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return itemCallback.areContentsTheSame(oldData.get(oldItemPosition), newData.get(newItemPosition));
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return itemCallback.getChangePayload(oldData.get(oldItemPosition), newData.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package biz.dealnote.messenger.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Выполняет задачи строго по очереди (по одной), но на потоках общего пула.
+ * Несколько таких очередей поверх одного пула работают параллельно друг с другом
+ */
+public final class SerialExecutor implements Executor {
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    private final Executor executor;
+
+    private Runnable active;
+
+    public SerialExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(@NonNull Runnable task) {
+        tasks.offer(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * @return количество задач, ожидающих выполнения
+     */
+    public synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+}
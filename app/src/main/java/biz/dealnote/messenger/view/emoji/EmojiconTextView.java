@@ -145,8 +145,19 @@ public class EmojiconTextView extends WrapWidthTextView implements ClickableFore
 
     @Override
     public void setText(CharSequence originalText, BufferType type) {
-        if (originalText != null && originalText.length() > 0) {
-            Spannable spannable = SpannableStringBuilder.valueOf(originalText);
+        if (originalText instanceof PreparedText && ((PreparedText) originalText).isPreparedFor(mEmojiconSize)) {
+            // смайлы и ссылки уже расставлены в фоновом потоке
+            Spannable spannable = new SpannableStringBuilder(originalText);
+
+            if (mDisplayHashTags) {
+                setColorsToAllHashTags(spannable);
+            }
+
+            super.setText(spannable, type);
+        } else if (originalText != null && originalText.length() > 0) {
+            // подготовленный текст общий для всех списков, его нельзя изменять
+            Spannable spannable = originalText instanceof PreparedText
+                    ? new SpannableStringBuilder(originalText) : SpannableStringBuilder.valueOf(originalText);
 
             if (mDisplayHashTags) {
                 setColorsToAllHashTags(spannable);
@@ -167,13 +178,20 @@ public class EmojiconTextView extends WrapWidthTextView implements ClickableFore
     }
 
     public void linkifyUrl(Spannable spannable) {
+        linkifyUrls(spannable);
+    }
+
+    /**
+     * Не зависит от конкретного View, поэтому может вызываться в фоновом потоке
+     */
+    static void linkifyUrls(Spannable spannable) {
         Matcher m = URL_PATTERN.matcher(spannable);
         while (m.find()) {
             String url = spannable.toString().substring(m.start(), m.end());
             ClickableSpan urlSpan = new ClickableSpan() {
                 @Override
                 public void onClick(View widget) {
-                    LinkHelper.openLinkInBrowser(getContext(), url);
+                    LinkHelper.openLinkInBrowser(widget.getContext(), url);
                 }
             };
             spannable.setSpan(urlSpan, m.start(), m.end(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
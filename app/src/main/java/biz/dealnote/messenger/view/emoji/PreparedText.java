@@ -0,0 +1,41 @@
+package biz.dealnote.messenger.view.emoji;
+
+import android.text.SpannableStringBuilder;
+
+import biz.dealnote.messenger.settings.Settings;
+
+/**
+ * Текст с уже расставленными ссылками на владельцев, смайлами и ссылками на сайты.
+ * Строится в фоновом потоке через {@link PreparedTextCache}, при отображении
+ * {@link EmojiconTextView} не обрабатывает его повторно.
+ * <p>
+ * Объект может одновременно использоваться несколькими списками,
+ * поэтому напрямую его не изменяют - {@link EmojiconTextView} работает с копией.
+ * По той же причине ссылки не хранят обработчик нажатий, он берется из View
+ * ({@link biz.dealnote.messenger.link.internal.OwnerLinkSpanFactory#setActionListener}).
+ */
+public final class PreparedText extends SpannableStringBuilder {
+
+    private final int emojiSize;
+
+    private final boolean systemEmoji;
+
+    private final boolean urls;
+
+    PreparedText(CharSequence text, int emojiSize, boolean systemEmoji, boolean urls) {
+        super(text);
+        this.emojiSize = emojiSize;
+        this.systemEmoji = systemEmoji;
+        this.urls = urls;
+    }
+
+    /**
+     * @return true, если текст подготовлен для смайлов такого размера и с текущими настройками
+     */
+    boolean isPreparedFor(int emojiSize) {
+        boolean systemEmoji = Settings.get().ui().isSystemEmoji();
+        return this.systemEmoji == systemEmoji
+                && (systemEmoji || this.emojiSize == emojiSize)
+                && this.urls == Settings.get().main().isCustomTabEnabled();
+    }
+}
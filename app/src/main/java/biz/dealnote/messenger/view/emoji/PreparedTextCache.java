@@ -0,0 +1,199 @@
+package biz.dealnote.messenger.view.emoji;
+
+import android.content.Context;
+import android.text.Spannable;
+import android.util.LruCache;
+import android.util.TypedValue;
+
+import java.util.List;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import biz.dealnote.messenger.link.internal.OwnerLinkSpanFactory;
+import biz.dealnote.messenger.model.CryptStatus;
+import biz.dealnote.messenger.model.Message;
+import biz.dealnote.messenger.model.Post;
+import biz.dealnote.messenger.settings.Settings;
+import biz.dealnote.messenger.util.AppTextUtils;
+
+import static biz.dealnote.messenger.util.Utils.isEmpty;
+import static biz.dealnote.messenger.util.Utils.nonEmpty;
+
+/**
+ * Кэш подготовленных текстов сообщений и записей на стене.
+ * <p>
+ * Поиск ссылок на владельцев (регулярные выражения), расстановка смайлов и ссылок на сайты
+ * выполняются при загрузке данных в фоновом потоке, при отображении элемента списка
+ * готовый текст берется из кэша. Ключ - идентификатор сообщения (записи) вместе с самим текстом,
+ * поэтому после редактирования или расшифровки текст будет подготовлен заново.
+ */
+public final class PreparedTextCache {
+
+    private PreparedTextCache() {
+    }
+
+    /**
+     * Совпадает с emojiconSize в разметке сообщений и записей
+     */
+    private static final float EMOJI_SIZE_SP = 20;
+
+    private static final int MAX_SIZE = 300;
+
+    private static final int TYPE_MESSAGE = 1;
+
+    private static final int TYPE_POST = 2;
+
+    private static final LruCache<Key, PreparedText> CACHE = new LruCache<>(MAX_SIZE);
+
+    @WorkerThread
+    public static void prepareMessages(@NonNull Context context, @NonNull List<Message> messages) {
+        int emojiSize = emojiSize(context);
+
+        for (Message message : messages) {
+            String text = getDisplayedBody(message);
+            if (nonEmpty(text)) {
+                prepare(context, new Key(TYPE_MESSAGE, message.getPeerId(), message.getId(), text), emojiSize);
+            }
+        }
+    }
+
+    /**
+     * Подготавливает сокращенный текст записей и их репостов (так они показываются на стене)
+     */
+    @WorkerThread
+    public static void preparePosts(@NonNull Context context, @NonNull List<Post> posts) {
+        int emojiSize = emojiSize(context);
+
+        for (Post post : posts) {
+            preparePost(context, post, emojiSize);
+
+            if (nonEmpty(post.getCopyHierarchy())) {
+                for (Post copy : post.getCopyHierarchy()) {
+                    preparePost(context, copy, emojiSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ссылки в тексте берут обработчик нажатий из View,
+     * см. {@link OwnerLinkSpanFactory#setActionListener(android.view.View, OwnerLinkSpanFactory.ActionListener)}
+     */
+    @MainThread
+    @Nullable
+    public static Spannable obtainMessageText(@NonNull Context context, @NonNull Message message, @Nullable String text) {
+        if (isEmpty(text)) {
+            return null;
+        }
+
+        return obtain(context, new Key(TYPE_MESSAGE, message.getPeerId(), message.getId(), text));
+    }
+
+    @MainThread
+    @Nullable
+    public static Spannable obtainPostText(@NonNull Context context, @NonNull Post post, @Nullable String text) {
+        if (isEmpty(text)) {
+            return null;
+        }
+
+        return obtain(context, new Key(TYPE_POST, post.getOwnerId(), post.getVkid(), text));
+    }
+
+    /**
+     * @return текст сообщения в том виде, в котором он показывается в списке
+     */
+    public static String getDisplayedBody(@NonNull Message message) {
+        return message.getCryptStatus() == CryptStatus.DECRYPTED ? message.getDecryptedBody() : message.getBody();
+    }
+
+    private static void preparePost(Context context, Post post, int emojiSize) {
+        String text = AppTextUtils.reduceStringForPost(post.getText());
+        if (nonEmpty(text)) {
+            prepare(context, new Key(TYPE_POST, post.getOwnerId(), post.getVkid(), text), emojiSize);
+        }
+    }
+
+    private static void prepare(Context context, Key key, int emojiSize) {
+        PreparedText existing = CACHE.get(key);
+        if (existing == null || !existing.isPreparedFor(emojiSize)) {
+            CACHE.put(key, build(context, key.text, emojiSize));
+        }
+    }
+
+    private static PreparedText obtain(Context context, Key key) {
+        int emojiSize = emojiSize(context);
+
+        PreparedText prepared = CACHE.get(key);
+        if (prepared == null || !prepared.isPreparedFor(emojiSize)) {
+            // не успели подготовить заранее (например, сообщение пришло через longpoll)
+            prepared = build(context, key.text, emojiSize);
+            CACHE.put(key, prepared);
+        }
+
+        return prepared;
+    }
+
+    private static PreparedText build(Context context, String text, int emojiSize) {
+        Spannable withLinks = OwnerLinkSpanFactory.withSpans(text, true, false, null);
+
+        boolean systemEmoji = Settings.get().ui().isSystemEmoji();
+        boolean urls = Settings.get().main().isCustomTabEnabled();
+
+        PreparedText result = new PreparedText(withLinks, emojiSize, systemEmoji, urls);
+
+        if (!systemEmoji) {
+            EmojiconHandler.addEmojis(context.getApplicationContext(), result, emojiSize);
+        }
+
+        if (urls) {
+            EmojiconTextView.linkifyUrls(result);
+        }
+
+        return result;
+    }
+
+    private static int emojiSize(Context context) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, EMOJI_SIZE_SP, context.getResources().getDisplayMetrics());
+    }
+
+    private static final class Key {
+
+        final int type;
+
+        final int ownerId;
+
+        final int id;
+
+        final String text;
+
+        Key(int type, int ownerId, int id, String text) {
+            this.type = type;
+            this.ownerId = ownerId;
+            this.id = id;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return type == key.type
+                    && ownerId == key.ownerId
+                    && id == key.id
+                    && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type;
+            result = 31 * result + ownerId;
+            result = 31 * result + id;
+            result = 31 * result + text.hashCode();
+            return result;
+        }
+    }
+}
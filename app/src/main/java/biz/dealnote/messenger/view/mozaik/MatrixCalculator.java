@@ -1,11 +1,39 @@
 package biz.dealnote.messenger.view.mozaik;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Created by admin on 16.01.2017.
  * JavaRushHomeWork
+ * <p>
+ * Разбивает фотографии (по порядку) на строки так, чтобы максимальное отклонение
+ * суммы весов строки от среднего было минимальным
  */
 public class MatrixCalculator {
 
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * Допуск при сравнении отклонений, чтобы из равноценных вариантов
+     * выбирался тот же, что и при полном переборе
+     */
+    private static final double EPSILON = 1e-4;
+
+    /**
+     * До этого количества фотографий вариантов разбиения единицы и полный перебор
+     * быстрее (см. MatrixCalculatorBenchmark)
+     */
+    private static final int EXHAUSTIVE_MAX_COUNT = 4;
+
+    private static final Map<Key, int[][]> CACHE = new LinkedHashMap<Key, int[][]>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[][]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     private final Libra libra;
     private final int count;
 
@@ -36,8 +64,213 @@ public class MatrixCalculator {
     }
 
     public int[][] calculate(int rows) {
-        Result result = checkAllVariants(rows);
-        return result.matrix;
+        float[] weights = readWeights();
+        Key key = new Key(weights, rows);
+
+        int[][] cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(key);
+        }
+
+        if (cached != null) {
+            return cloneArray(cached);
+        }
+
+        int[][] matrix = compute(weights, rows);
+
+        synchronized (CACHE) {
+            CACHE.put(key, matrix);
+        }
+
+        return cloneArray(matrix);
+    }
+
+    /**
+     * Расчет без кэша (для сравнения с полным перебором в MatrixCalculatorBenchmark)
+     */
+    int[][] calculateUncached(int rows) {
+        return compute(readWeights(), rows);
+    }
+
+    /**
+     * Прежний алгоритм - полный перебор всех вариантов, без кэша
+     */
+    int[][] calculateExhaustive(int rows) {
+        return checkAllVariants(rows).matrix;
+    }
+
+    private float[] readWeights() {
+        float[] weights = new float[count];
+        for (int i = 0; i < count; i++) {
+            weights[i] = libra.getWeight(i);
+        }
+
+        return weights;
+    }
+
+    private int[][] compute(float[] weights, int rows) {
+        boolean hasZeroWeights = false;
+        for (float weight : weights) {
+            hasZeroWeights = hasZeroWeights || weight <= 0;
+        }
+
+        if (rows > count || hasZeroWeights) {
+            // пустые строки не участвуют в подсчете среднего, поэтому
+            // в этих случаях остается полный перебор
+            return checkAllVariants(rows).matrix;
+        }
+
+        if (count <= EXHAUSTIVE_MAX_COUNT) {
+            return checkAllVariants(rows).matrix;
+        }
+
+        return solve(weights, rows);
+    }
+
+    /**
+     * Точное решение динамическим программированием по суммам префиксов.
+     * Все строки непустые, поэтому среднее всегда равно сумме всех весов, деленной
+     * на количество строк, и не зависит от разбиения.
+     * best[k][i] - минимальное максимальное отклонение при разбиении фотографий
+     * с i до конца на k строк. Из равноценных вариантов выбирается тот же, что и при
+     * полном переборе - первым в нем встречается вариант с более длинными первыми строками
+     */
+    private int[][] solve(float[] weights, int rows) {
+        double[] prefix = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+            prefix[i + 1] = prefix[i] + weights[i];
+        }
+
+        double average = prefix[count] / rows;
+        double[][] best = new double[rows + 1][count + 1];
+
+        for (int i = 0; i < count; i++) {
+            best[1][i] = Math.abs(prefix[count] - prefix[i] - average);
+        }
+
+        for (int k = 2; k <= rows; k++) {
+            for (int i = count - k; i >= 0; i--) {
+                double min = Double.MAX_VALUE;
+
+                // строка [i, j), остальные k - 1 строк начинаются с j
+                for (int j = i + 1; j <= count - k + 1; j++) {
+                    double diff = Math.abs(prefix[j] - prefix[i] - average);
+                    if (diff >= min) {
+                        if (prefix[j] - prefix[i] > average) {
+                            // дальше строка только длиннее
+                            break;
+                        }
+
+                        continue;
+                    }
+
+                    min = Math.min(min, Math.max(diff, best[k - 1][j]));
+                }
+
+                best[k][i] = min;
+            }
+        }
+
+        // все варианты, близкие к оптимальному, перебираются в том же порядке, что и при
+        // полном переборе, и сравниваются с той же точностью (float), что и раньше
+        Search search = new Search(weights, prefix, average, best, best[rows][0] + EPSILON);
+        search.collect(0, rows, new int[rows]);
+        return search.result;
+    }
+
+    private static final class Search {
+
+        final float[] weights;
+
+        final double[] prefix;
+
+        final double average;
+
+        final double[][] best;
+
+        final double target;
+
+        float minDiff = Float.MAX_VALUE;
+
+        int[][] result;
+
+        Search(float[] weights, double[] prefix, double average, double[][] best, double target) {
+            this.weights = weights;
+            this.prefix = prefix;
+            this.average = average;
+            this.best = best;
+            this.target = target;
+        }
+
+        /**
+         * @param start первая фотография текущей строки
+         * @param k     сколько строк осталось заполнить
+         * @param ends  концы уже заполненных строк (не включительно)
+         */
+        void collect(int start, int k, int[] ends) {
+            int count = weights.length;
+            int row = ends.length - k;
+
+            if (k == 1) {
+                ends[row] = count;
+                analize(ends);
+                return;
+            }
+
+            // первой рассматривается самая длинная строка
+            for (int end = count - k + 1; end > start; end--) {
+                double diff = Math.abs(prefix[end] - prefix[start] - average);
+
+                if (diff <= target && best[k - 1][end] <= target) {
+                    ends[row] = end;
+                    collect(end, k - 1, ends);
+                }
+            }
+        }
+
+        private void analize(int[] ends) {
+            float[] sums = new float[ends.length];
+
+            int start = 0;
+            for (int r = 0; r < ends.length; r++) {
+                float sum = 0;
+                for (int i = start; i < ends[r]; i++) {
+                    sum = sum + weights[i];
+                }
+
+                sums[r] = sum;
+                start = ends[r];
+            }
+
+            float average = getAverage(sums);
+            float maxDiff = 0;
+
+            for (float sum : sums) {
+                maxDiff = Math.max(maxDiff, Math.abs(sum - average));
+            }
+
+            if (maxDiff < minDiff || result == null) {
+                minDiff = maxDiff;
+                result = toMatrix(ends, weights.length);
+            }
+        }
+
+        private static int[][] toMatrix(int[] ends, int count) {
+            int[][] matrix = new int[ends.length][count];
+
+            int start = 0;
+            for (int r = 0; r < ends.length; r++) {
+                Arrays.fill(matrix[r], -1);
+
+                for (int i = start; i < ends[r]; i++) {
+                    matrix[r][i - start] = i;
+                }
+
+                start = ends[r];
+            }
+
+            return matrix;
+        }
     }
 
     private static float getMaxDiff(Libra libra, int[][] variant) {
@@ -248,4 +481,32 @@ public class MatrixCalculator {
 
         return -1;
     }
+
+    private static final class Key {
+
+        final float[] weights;
+
+        final int rows;
+
+        final int hash;
+
+        Key(float[] weights, int rows) {
+            this.weights = weights;
+            this.rows = rows;
+            this.hash = 31 * Arrays.hashCode(weights) + rows;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return rows == key.rows && Arrays.equals(weights, key.weights);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
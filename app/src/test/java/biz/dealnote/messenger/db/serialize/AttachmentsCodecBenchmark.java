@@ -0,0 +1,107 @@
+package biz.dealnote.messenger.db.serialize;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import biz.dealnote.messenger.db.model.entity.AttachmentsEntity;
+import biz.dealnote.messenger.db.model.entity.Entity;
+
+/**
+ * Сравнение {@link AttachmentsCodec} с прежним хранением вложений в Gson JSON:
+ * время записи и чтения и размер данных.
+ * <p>
+ * Запуск без Android (нужны исходники db/model и gson в classpath), например:
+ * <pre>
+ * java -cp out:gson.jar biz.dealnote.messenger.db.serialize.AttachmentsCodecBenchmark
+ * </pre>
+ */
+public class AttachmentsCodecBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private static final int ITERATIONS = 50000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(AttachmentsEntity.class, new AttachmentsDboAdapter())
+            .create();
+
+    private static final AttachmentsCodec CODEC = new AttachmentsCodec(GSON);
+
+    public static void main(String[] args) {
+        System.out.println("              case | gson enc, us | codec enc, us | gson dec, us | codec dec, us | gson, bytes | codec, bytes");
+
+        run("message (6 items)", AttachmentsSamples.messageAttachments());
+        run("photo", Collections.singletonList(AttachmentsSamples.photo(457239017)));
+        run("post with repost", Collections.singletonList(AttachmentsSamples.basePost(1, 1)
+                .setAttachments(AttachmentsSamples.messageAttachments())
+                .setCopyHierarchy(Collections.singletonList(AttachmentsSamples.basePost(2, 2)
+                        .setAttachments(AttachmentsSamples.messageAttachments())))));
+    }
+
+    private static void run(String name, List<Entity> entities) {
+        AttachmentsEntity wrapper = new AttachmentsEntity(entities);
+        String json = GSON.toJson(wrapper);
+        byte[] binary = CODEC.encodeList(entities);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            gsonEncode(wrapper);
+            codecEncode(entities);
+            gsonDecode(json);
+            codecDecode(binary);
+        }
+
+        long gsonEncode = 0;
+        long codecEncode = 0;
+        long gsonDecode = 0;
+        long codecDecode = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            gsonEncode += gsonEncode(wrapper);
+            codecEncode += codecEncode(entities);
+            gsonDecode += gsonDecode(json);
+            codecDecode += codecDecode(binary);
+        }
+
+        System.out.println(String.format(Locale.US, "%18s | %12.2f | %13.2f | %12.2f | %13.2f | %11d | %12d",
+                name,
+                perCall(gsonEncode), perCall(codecEncode),
+                perCall(gsonDecode), perCall(codecDecode),
+                json.getBytes(UTF_8).length, binary.length));
+    }
+
+    private static double perCall(long nanos) {
+        return nanos / 1000d / ITERATIONS;
+    }
+
+    private static long gsonEncode(AttachmentsEntity wrapper) {
+        long start = System.nanoTime();
+        // в базу строка пишется в UTF-8
+        byte[] bytes = GSON.toJson(wrapper).getBytes(UTF_8);
+        return System.nanoTime() - start + (bytes.length == 0 ? 1 : 0);
+    }
+
+    private static long codecEncode(List<Entity> entities) {
+        long start = System.nanoTime();
+        byte[] bytes = CODEC.encodeList(entities);
+        return System.nanoTime() - start + (bytes.length == 0 ? 1 : 0);
+    }
+
+    private static long gsonDecode(String json) {
+        long start = System.nanoTime();
+        List<Entity> entities = GSON.fromJson(json, AttachmentsEntity.class).getEntities();
+        return System.nanoTime() - start + (entities.isEmpty() ? 1 : 0);
+    }
+
+    private static long codecDecode(byte[] binary) {
+        long start = System.nanoTime();
+        List<Entity> entities = CODEC.decodeList(binary);
+        return System.nanoTime() - start + (entities.isEmpty() ? 1 : 0);
+    }
+}
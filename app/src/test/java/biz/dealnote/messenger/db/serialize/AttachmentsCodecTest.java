@@ -0,0 +1,216 @@
+package biz.dealnote.messenger.db.serialize;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import biz.dealnote.messenger.db.model.AttachmentsTypes;
+import biz.dealnote.messenger.db.model.entity.AttachmentsEntity;
+import biz.dealnote.messenger.db.model.entity.DocumentEntity;
+import biz.dealnote.messenger.db.model.entity.Entity;
+import biz.dealnote.messenger.db.model.entity.LinkEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoSizeEntity;
+import biz.dealnote.messenger.db.model.entity.PostEntity;
+import biz.dealnote.messenger.db.model.entity.PrivacyEntity;
+import biz.dealnote.messenger.db.model.entity.StickerEntity;
+import biz.dealnote.messenger.db.model.entity.VideoEntity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Каждое вложение после encode -> decode должно совпадать с исходным во всех полях.
+ * Поля сравниваются через JSON (Gson обходит все поля рефлексией), поэтому пропущенное
+ * или записанное не по порядку поле в {@link AttachmentsCodec} здесь обнаружится
+ */
+public class AttachmentsCodecTest {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(AttachmentsEntity.class, new AttachmentsDboAdapter())
+            .serializeNulls()
+            .create();
+
+    private final AttachmentsCodec codec = new AttachmentsCodec(GSON);
+
+    @Test
+    public void photo() {
+        assertRoundTrip(AttachmentsSamples.photo(457239017));
+    }
+
+    @Test
+    public void photoWithNulls() {
+        assertRoundTrip(new PhotoEntity(1, 2));
+        assertRoundTrip(new PhotoEntity(1, 2).setSizes(new PhotoSizeEntity()));
+    }
+
+    @Test
+    public void video() {
+        assertRoundTrip(AttachmentsSamples.video());
+    }
+
+    @Test
+    public void videoWithNulls() {
+        assertRoundTrip(new VideoEntity(1, 2));
+        assertRoundTrip(new VideoEntity(1, 2)
+                .setPrivacyView(new PrivacyEntity(null, null))
+                .setPrivacyComment(new PrivacyEntity("all", Collections.emptyList())));
+    }
+
+    @Test
+    public void document() {
+        assertRoundTrip(AttachmentsSamples.document());
+    }
+
+    @Test
+    public void documentWithNulls() {
+        assertRoundTrip(new DocumentEntity(1, 2));
+    }
+
+    @Test
+    public void audio() {
+        assertRoundTrip(AttachmentsSamples.audio(456239017));
+    }
+
+    @Test
+    public void sticker() {
+        assertRoundTrip(AttachmentsSamples.sticker());
+    }
+
+    @Test
+    public void stickerWithNullAndEmptyImages() {
+        assertRoundTrip(new StickerEntity(1));
+        assertRoundTrip(new StickerEntity(1)
+                .setImages(Collections.emptyList())
+                .setImagesWithBackground(Collections.emptyList()));
+    }
+
+    @Test
+    public void link() {
+        assertRoundTrip(AttachmentsSamples.link());
+        assertRoundTrip(new LinkEntity(null));
+    }
+
+    @Test
+    public void post() {
+        assertRoundTrip(AttachmentsSamples.post());
+    }
+
+    @Test
+    public void postWithNulls() {
+        assertRoundTrip(new PostEntity(1, 2));
+        assertRoundTrip(new PostEntity(1, 2).setCopyHierarchy(Collections.emptyList()));
+    }
+
+    @Test
+    public void postWithNestedCopies() {
+        PostEntity original = AttachmentsSamples.basePost(1, 1)
+                .setAttachments(Collections.singletonList(AttachmentsSamples.photo(1)));
+
+        PostEntity repost = AttachmentsSamples.basePost(2, 2)
+                .setAttachments(Collections.singletonList(AttachmentsSamples.post()));
+
+        assertRoundTrip(AttachmentsSamples.basePost(3, 3)
+                .setCopyHierarchy(Arrays.asList(repost, original)));
+    }
+
+    /**
+     * Редкие типы хранятся внутри бинарного формата как JSON
+     */
+    @Test
+    public void jsonEncodedTypes() {
+        assertRoundTrip(AttachmentsSamples.poll());
+        assertRoundTrip(AttachmentsSamples.page());
+        assertRoundTrip(AttachmentsSamples.topic());
+        assertRoundTrip(AttachmentsSamples.audioMessage());
+        assertRoundTrip(AttachmentsSamples.gift());
+    }
+
+    @Test
+    public void list() {
+        List<Entity> entities = new ArrayList<>(AttachmentsSamples.messageAttachments());
+        entities.add(AttachmentsSamples.post());
+        entities.add(AttachmentsSamples.poll());
+
+        assertListRoundTrip(entities);
+        assertListRoundTrip(Collections.emptyList());
+    }
+
+    @Test
+    public void legacyJson() {
+        for (Entity entity : allTypes()) {
+            String json = GSON.toJson(entity);
+            Entity decoded = codec.decodeJson(AttachmentsTypes.typeForInstance(entity), json);
+
+            assertSame(entity.getClass(), decoded.getClass());
+            assertEquals(json, GSON.toJson(decoded));
+        }
+    }
+
+    @Test
+    public void legacyJsonList() {
+        List<Entity> entities = allTypes();
+        String json = GSON.toJson(new AttachmentsEntity(entities));
+
+        List<Entity> decoded = codec.decodeJsonList(json);
+
+        assertNotNull(decoded);
+        assertEquals(toJson(entities), toJson(decoded));
+        assertEquals(0, codec.decodeJsonList("[]").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersion() {
+        byte[] data = codec.encode(AttachmentsSamples.audio(1));
+        data[0] = 99;
+        codec.decode(data);
+    }
+
+    @Test
+    public void nullStringsStayNull() {
+        LinkEntity decoded = (LinkEntity) codec.decode(codec.encode(new LinkEntity("")));
+
+        assertEquals("", decoded.getUrl());
+        assertNull(decoded.getTitle());
+    }
+
+    private static List<Entity> allTypes() {
+        return Arrays.asList(
+                AttachmentsSamples.photo(1),
+                AttachmentsSamples.video(),
+                AttachmentsSamples.document(),
+                AttachmentsSamples.audio(2),
+                AttachmentsSamples.sticker(),
+                AttachmentsSamples.link(),
+                AttachmentsSamples.post(),
+                AttachmentsSamples.poll(),
+                AttachmentsSamples.page(),
+                AttachmentsSamples.topic(),
+                AttachmentsSamples.audioMessage(),
+                AttachmentsSamples.gift());
+    }
+
+    private void assertRoundTrip(Entity entity) {
+        Entity decoded = codec.decode(codec.encode(entity));
+
+        assertSame(entity.getClass(), decoded.getClass());
+        assertEquals(GSON.toJson(entity), GSON.toJson(decoded));
+    }
+
+    private void assertListRoundTrip(List<Entity> entities) {
+        List<Entity> decoded = codec.decodeList(codec.encodeList(entities));
+        assertEquals(toJson(entities), toJson(decoded));
+    }
+
+    private static String toJson(List<Entity> entities) {
+        return GSON.toJson(new AttachmentsEntity(entities));
+    }
+}
@@ -0,0 +1,287 @@
+package biz.dealnote.messenger.db.serialize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import biz.dealnote.messenger.db.model.entity.AudioEntity;
+import biz.dealnote.messenger.db.model.entity.AudioMessageEntity;
+import biz.dealnote.messenger.db.model.entity.DocumentEntity;
+import biz.dealnote.messenger.db.model.entity.Entity;
+import biz.dealnote.messenger.db.model.entity.GiftItemEntity;
+import biz.dealnote.messenger.db.model.entity.LinkEntity;
+import biz.dealnote.messenger.db.model.entity.PageEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoEntity;
+import biz.dealnote.messenger.db.model.entity.PhotoSizeEntity;
+import biz.dealnote.messenger.db.model.entity.PollEntity;
+import biz.dealnote.messenger.db.model.entity.PostEntity;
+import biz.dealnote.messenger.db.model.entity.PrivacyEntity;
+import biz.dealnote.messenger.db.model.entity.StickerEntity;
+import biz.dealnote.messenger.db.model.entity.TopicEntity;
+import biz.dealnote.messenger.db.model.entity.VideoEntity;
+
+/**
+ * Заполненные вложения всех типов для {@link AttachmentsCodecTest} и {@link AttachmentsCodecBenchmark}
+ */
+final class AttachmentsSamples {
+
+    private AttachmentsSamples() {
+    }
+
+    static PhotoEntity photo(int id) {
+        return new PhotoEntity(id, -72495085)
+                .setAlbumId(-7)
+                .setWidth(1280)
+                .setHeight(960)
+                .setText("Фото с прогулки 😀")
+                .setDate(1577836800L)
+                .setUserLikes(true)
+                .setLikesCount(42)
+                .setCanComment(true)
+                .setCommentsCount(3)
+                .setTagsCount(1)
+                .setAccessKey("a1b2c3d4e5")
+                .setPostId(1234)
+                .setDeleted(false)
+                .setSizes(sizes());
+    }
+
+    static PhotoSizeEntity sizes() {
+        return new PhotoSizeEntity()
+                .setS(size(75, 56, "s"))
+                .setM(size(130, 97, "m"))
+                .setX(size(604, 453, "x"))
+                .setO(size(130, 97, "o"))
+                .setP(size(200, 150, "p"))
+                .setQ(size(320, 240, "q"))
+                .setR(size(510, 383, "r"))
+                .setY(size(807, 605, "y"))
+                .setZ(size(1280, 960, "z"))
+                .setW(null);
+    }
+
+    private static PhotoSizeEntity.Size size(int w, int h, String type) {
+        return new PhotoSizeEntity.Size()
+                .setW(w)
+                .setH(h)
+                .setUrl("https://sun9-1.userapi.com/c855/v855/" + type + "_a1b2c3.jpg");
+    }
+
+    static VideoEntity video() {
+        return new VideoEntity(456239017, 1)
+                .setAlbumId(3)
+                .setTitle("Видео")
+                .setDescription("Описание\nв две строки")
+                .setLink("https://vk.com/video1_456239017")
+                .setDate(1577836800L)
+                .setAddingDate(1577836900L)
+                .setViews(100500)
+                .setPlayer("https://vk.com/video_ext.php?oid=1&id=456239017")
+                .setPhoto130("https://sun9-2.userapi.com/130.jpg")
+                .setPhoto320("https://sun9-2.userapi.com/320.jpg")
+                .setPhoto800(null)
+                .setAccessKey("key")
+                .setCommentsCount(12)
+                .setUserLikes(false)
+                .setLikesCount(77)
+                .setMp4link240("https://cs1.vk.me/240.mp4")
+                .setMp4link360("https://cs1.vk.me/360.mp4")
+                .setMp4link480(null)
+                .setMp4link720("https://cs1.vk.me/720.mp4")
+                .setMp4link1080(null)
+                .setExternalLink(null)
+                .setHls("https://cs1.vk.me/video.m3u8")
+                .setLive(null)
+                .setPlatform("YouTube")
+                .setRepeat(true)
+                .setDuration(3600)
+                .setPrivacyView(new PrivacyEntity("some", Arrays.asList(
+                        new PrivacyEntity.Entry(1, 100, true),
+                        new PrivacyEntity.Entry(2, 5, false))))
+                .setPrivacyComment(new PrivacyEntity("nobody", Collections.emptyList()))
+                .setCanEdit(true)
+                .setCanAdd(false)
+                .setCanComment(true)
+                .setCanRepost(true);
+    }
+
+    static DocumentEntity document() {
+        return new DocumentEntity(437111, 1)
+                .setTitle("animation.gif")
+                .setSize(5L * 1024 * 1024 * 1024)
+                .setExt("gif")
+                .setUrl("https://vk.com/doc1_437111")
+                .setDate(1577836800L)
+                .setType(3)
+                .setAccessKey("dockey")
+                .setPhoto(sizes())
+                .setGraffiti(new DocumentEntity.GraffitiDbo("https://vk.com/graffiti.png", 720, 720))
+                .setVideo(new DocumentEntity.VideoPreviewDbo("https://vk.com/preview.mp4", 480, 270, 1048576L));
+    }
+
+    static AudioEntity audio(int id) {
+        return new AudioEntity(id, 2000)
+                .setArtist("Кино")
+                .setTitle("Группа крови")
+                .setDuration(287)
+                .setUrl("https://cs1-50v4.vkuseraudio.net/p1/a1b2.mp3?extra=signed")
+                .setLyricsId(0)
+                .setAlbumId(15)
+                .setGenre(18)
+                .setAccessKey("audiokey")
+                .setDeleted(false);
+    }
+
+    static StickerEntity sticker() {
+        return new StickerEntity(9014)
+                .setImages(Arrays.asList(
+                        new StickerEntity.Img("https://vk.com/sticker/1-9014-64", 64, 64),
+                        new StickerEntity.Img("https://vk.com/sticker/1-9014-128", 128, 128)))
+                .setImagesWithBackground(Collections.singletonList(
+                        new StickerEntity.Img("https://vk.com/sticker/1-9014-128b", 128, 128)))
+                .setAnimationUrl("https://vk.com/sticker/1-9014.json");
+    }
+
+    static LinkEntity link() {
+        return new LinkEntity("https://habr.com/ru/post/1/")
+                .setTitle("Статья")
+                .setCaption("habr.com")
+                .setDescription("Описание ссылки")
+                .setPhoto(photo(457239999));
+    }
+
+    static PollEntity poll() {
+        return new PollEntity(353119, -1)
+                .setQuestion("Вопрос?")
+                .setCreationTime(1577836800L)
+                .setVoteCount(1000)
+                .setMyAnswerIds(new int[]{2})
+                .setAnonymous(true)
+                .setMultiple(false)
+                .setClosed(false)
+                .setAuthorId(-1)
+                .setCanVote(false)
+                .setCanEdit(false)
+                .setCanReport(true)
+                .setCanShare(true)
+                .setEndDate(0)
+                .setBoard(false)
+                .setAnswers(Arrays.asList(
+                        new PollEntity.Answer(1, "Да", 600, 60.0),
+                        new PollEntity.Answer(2, "Нет", 400, 40.0)));
+    }
+
+    static PageEntity page() {
+        return new PageEntity(51234, -1)
+                .setCreatorId(1)
+                .setTitle("Вики-страница")
+                .setSource("https://vk.com/page-1_51234")
+                .setEditionTime(1577836900L)
+                .setCreationTime(1577836800L)
+                .setParent(null)
+                .setParent2(null)
+                .setViews(10)
+                .setViewUrl("https://m.vk.com/page-1_51234");
+    }
+
+    static TopicEntity topic() {
+        return new TopicEntity(29001, -1)
+                .setTitle("Обсуждение")
+                .setCreatedTime(1577836800L)
+                .setCreatorId(1)
+                .setLastUpdateTime(1577836900L)
+                .setUpdatedBy(2)
+                .setClosed(false)
+                .setFixed(true)
+                .setCommentsCount(50)
+                .setFirstComment("Первый")
+                .setLastComment("Последний")
+                .setPoll(poll());
+    }
+
+    static AudioMessageEntity audioMessage() {
+        return new AudioMessageEntity(470001, 1)
+                .setDuration(12)
+                .setWaveform(new byte[]{0, 5, 12, 31, 7, 0})
+                .setLinkOgg("https://psv4.userapi.com/voice.ogg")
+                .setLinkMp3("https://psv4.userapi.com/voice.mp3")
+                .setAccessKey("voicekey");
+    }
+
+    static GiftItemEntity gift() {
+        return new GiftItemEntity(700)
+                .setThumb256("https://vk.com/images/gift/700/256.png")
+                .setThumb96("https://vk.com/images/gift/700/96.png")
+                .setThumb48(null);
+    }
+
+    /**
+     * Запись с вложениями всех типов (в том числе вложенных) и репостом
+     */
+    static PostEntity post() {
+        PostEntity copy = basePost(15, -1)
+                .setText("Исходная запись")
+                .setAttachments(Arrays.asList(photo(457239100), link()));
+
+        return basePost(3312, 1)
+                .setText(longText())
+                .setSource(new PostEntity.SourceDbo(2, "android", 1, "https://vk.com"))
+                .setAttachments(Arrays.asList(photo(457239101), video(), document(), audio(456239101),
+                        sticker(), link(), poll(), page(), topic(), audioMessage(), gift()))
+                .setCopyHierarchy(Collections.singletonList(copy));
+    }
+
+    static PostEntity basePost(int id, int ownerId) {
+        return new PostEntity(id, ownerId)
+                .setDbid(17)
+                .setFromId(ownerId)
+                .setDate(1577836800L)
+                .setReplyOwnerId(0)
+                .setReplyPostId(0)
+                .setFriendsOnly(false)
+                .setCommentsCount(5)
+                .setCanPostComment(true)
+                .setLikesCount(99)
+                .setUserLikes(true)
+                .setCanLike(true)
+                .setCanEdit(false)
+                .setCanPublish(true)
+                .setRepostCount(4)
+                .setUserReposted(false)
+                .setPostType(1)
+                .setAttachmentsCount(2)
+                .setSignedId(0)
+                .setCreatedBy(1)
+                .setCanPin(false)
+                .setPinned(true)
+                .setDeleted(false)
+                .setViews(1500);
+    }
+
+    /**
+     * Длиннее 64 Кб в UTF-8 (предел DataOutputStream.writeUTF)
+     */
+    static String longText() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 40000) {
+            text.append("Текст записи ");
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Типичные вложения сообщения: несколько фото, аудио и ссылка
+     */
+    static List<Entity> messageAttachments() {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            entities.add(photo(457239000 + i));
+        }
+
+        entities.add(audio(456239000));
+        entities.add(link());
+        return entities;
+    }
+}
@@ -0,0 +1,109 @@
+package biz.dealnote.messenger.view.mozaik;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Сравнение прежнего полного перебора и нового расчета {@link MatrixCalculator}
+ * (оба без кэша) для 2-10 фотографий и всех возможных количеств строк.
+ * Заодно проверяется, что оба алгоритма выбирают одинаковое разбиение.
+ * <p>
+ * Запуск без Android: MatrixCalculator использует только java.util
+ * <pre>
+ * javac -encoding UTF-8 -d out app/src/main/java/biz/dealnote/messenger/view/mozaik/MatrixCalculator.java \
+ *     app/src/test/java/biz/dealnote/messenger/view/mozaik/MatrixCalculatorBenchmark.java
+ * java -cp out biz.dealnote.messenger.view.mozaik.MatrixCalculatorBenchmark
+ * </pre>
+ */
+public class MatrixCalculatorBenchmark {
+
+    private static final int MIN_COUNT = 2;
+
+    private static final int MAX_COUNT = 10;
+
+    /**
+     * Наборов пропорций на каждое количество фотографий
+     */
+    private static final int SAMPLES = 50;
+
+    private static final int WARMUP_ROUNDS = 50;
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+
+        System.out.println(" count | exhaustive, us | new, us | speedup | mismatches");
+
+        for (int count = MIN_COUNT; count <= MAX_COUNT; count++) {
+            float[][] samples = new float[SAMPLES][count];
+            for (float[] weights : samples) {
+                for (int i = 0; i < count; i++) {
+                    // пропорции фотографий: от вертикальных до панорам
+                    weights[i] = 0.5f + random.nextFloat() * 1.5f;
+                }
+            }
+
+            int mismatches = 0;
+            for (float[] weights : samples) {
+                for (int rows = 1; rows <= count; rows++) {
+                    MatrixCalculator calculator = create(weights);
+                    if (!Arrays.deepEquals(calculator.calculateExhaustive(rows), calculator.calculateUncached(rows))) {
+                        mismatches++;
+                    }
+                }
+            }
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(samples, true);
+                run(samples, false);
+            }
+
+            long exhaustive = 0;
+            long dp = 0;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                exhaustive += run(samples, true);
+                dp += run(samples, false);
+            }
+
+            int calls = ROUNDS * SAMPLES * count;
+            double exhaustiveUs = exhaustive / 1000d / calls;
+            double dpUs = dp / 1000d / calls;
+
+            System.out.println(String.format(Locale.US, " %5d | %14.2f | %7.2f | %6.1fx | %d",
+                    count, exhaustiveUs, dpUs, exhaustiveUs / dpUs, mismatches));
+        }
+    }
+
+    /**
+     * @return суммарное время расчетов в наносекундах
+     */
+    private static long run(float[][] samples, boolean exhaustive) {
+        long start = System.nanoTime();
+        long checksum = 0;
+
+        for (float[] weights : samples) {
+            MatrixCalculator calculator = create(weights);
+
+            for (int rows = 1; rows <= weights.length; rows++) {
+                int[][] matrix = exhaustive ? calculator.calculateExhaustive(rows) : calculator.calculateUncached(rows);
+                checksum += matrix[0][0];
+            }
+        }
+
+        long time = System.nanoTime() - start;
+
+        if (checksum == Long.MIN_VALUE) {
+            // не дает JIT выбросить расчет
+            System.out.println(checksum);
+        }
+
+        return time;
+    }
+
+    private static MatrixCalculator create(float[] weights) {
+        return new MatrixCalculator(weights.length, index -> weights[index]);
+    }
+}